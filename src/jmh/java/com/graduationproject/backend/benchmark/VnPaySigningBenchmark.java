@@ -0,0 +1,164 @@
+package com.graduationproject.backend.benchmark;
+
+import com.graduationproject.backend.util.VnPaySigner;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh đường ký/xác thực VNPay cũ (Mac mới mỗi lần, String.format, HashMap + sort)
+ * với {@link VnPaySigner}.
+ *
+ * Chạy:
+ *   mvn -Pbenchmark test-compile dependency:build-classpath -Dmdep.outputFile=target/bench.cp
+ *   java -cp target/test-classes:target/classes:$(cat target/bench.cp) org.openjdk.jmh.Main VnPaySigningBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VnPaySigningBenchmark {
+
+    private static final String SECRET = "BENCHMARKHASHSECRET0123456789ABC";
+    private static final String[] PAYMENT_PARAM_NAMES = {
+            "vnp_Amount", "vnp_Command", "vnp_CreateDate", "vnp_CurrCode", "vnp_ExpireDate", "vnp_IpAddr",
+            "vnp_Locale", "vnp_OrderInfo", "vnp_OrderType", "vnp_ReturnUrl", "vnp_TmnCode", "vnp_TxnRef", "vnp_Version"
+    };
+
+    private VnPaySigner signer;
+    private String[] paymentValues;
+    private Map<String, String> returnParams;
+    private String returnSecureHash;
+
+    @Setup
+    public void setup() {
+        signer = new VnPaySigner(SECRET);
+        paymentValues = new String[]{
+                "125000000", "pay", "20250101120000", "VND", "20250101121500", "127.0.0.1",
+                "vn", "Thanh toan don hang 123456", "other", "http://localhost:8080/api/orders/vnpay_return",
+                "DEMOTMN1", "123456", "2.1.0"
+        };
+
+        returnParams = new HashMap<>();
+        returnParams.put("vnp_Amount", "125000000");
+        returnParams.put("vnp_BankCode", "NCB");
+        returnParams.put("vnp_BankTranNo", "VNP14123456");
+        returnParams.put("vnp_CardType", "ATM");
+        returnParams.put("vnp_OrderInfo", "Thanh toan don hang 123456");
+        returnParams.put("vnp_PayDate", "20250101120500");
+        returnParams.put("vnp_ResponseCode", "00");
+        returnParams.put("vnp_TmnCode", "DEMOTMN1");
+        returnParams.put("vnp_TransactionNo", "14123456");
+        returnParams.put("vnp_TransactionStatus", "00");
+        returnParams.put("vnp_TxnRef", "123456");
+        returnSecureHash = signer.sign(signer.buildHashData(sortedKeys(returnParams), sortedValues(returnParams), new StringBuilder()));
+    }
+
+    @Benchmark
+    public String createPaymentUrlLegacy() {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < PAYMENT_PARAM_NAMES.length; i++) {
+            params.put(PAYMENT_PARAM_NAMES[i], paymentValues[i]);
+        }
+        List<String> fieldNames = new ArrayList<>(params.keySet());
+        Collections.sort(fieldNames);
+        StringBuilder hashData = new StringBuilder();
+        StringBuilder query = new StringBuilder();
+        Iterator<String> itr = fieldNames.iterator();
+        while (itr.hasNext()) {
+            String fieldName = itr.next();
+            String fieldValue = params.get(fieldName);
+            if (fieldValue != null && !fieldValue.isEmpty()) {
+                hashData.append(fieldName).append('=');
+                try {
+                    String encodedValue = URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII.toString());
+                    hashData.append(encodedValue);
+                    query.append(URLEncoder.encode(fieldName, StandardCharsets.US_ASCII.toString())).append('=').append(encodedValue);
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (itr.hasNext()) {
+                    query.append('&');
+                    hashData.append('&');
+                }
+            }
+        }
+        return query + "&vnp_SecureHash=" + legacyHmacSHA512(SECRET, hashData.toString());
+    }
+
+    @Benchmark
+    public String createPaymentUrlLean() {
+        StringBuilder url = new StringBuilder(512);
+        signer.buildHashData(PAYMENT_PARAM_NAMES, paymentValues, url);
+        String secureHash = signer.sign(url);
+        return url.append("&vnp_SecureHash=").append(secureHash).toString();
+    }
+
+    @Benchmark
+    public boolean validateLegacy() {
+        Map<String, String> params = new HashMap<>(returnParams);
+        List<String> fieldNames = new ArrayList<>(params.keySet());
+        Collections.sort(fieldNames);
+        StringBuilder hashData = new StringBuilder();
+        Iterator<String> itr = fieldNames.iterator();
+        while (itr.hasNext()) {
+            String fieldName = itr.next();
+            String fieldValue = params.get(fieldName);
+            if (fieldValue != null && !fieldValue.isEmpty()) {
+                hashData.append(fieldName).append('=');
+                try {
+                    hashData.append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII.toString()));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (itr.hasNext()) {
+                    hashData.append('&');
+                }
+            }
+        }
+        return legacyHmacSHA512(SECRET, hashData.toString()).equalsIgnoreCase(returnSecureHash);
+    }
+
+    @Benchmark
+    public boolean validateLean() {
+        return signer.verify(returnParams, returnSecureHash);
+    }
+
+    private static String legacyHmacSHA512(String key, String data) {
+        try {
+            Mac hmac = Mac.getInstance("HmacSHA512");
+            hmac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+            byte[] hash = hmac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : hash) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String[] sortedKeys(Map<String, String> params) {
+        String[] keys = params.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static String[] sortedValues(Map<String, String> params) {
+        String[] keys = sortedKeys(params);
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = params.get(keys[i]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,27 @@
+package com.graduationproject.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class PaymentNotificationConfig {
+
+    // Pool worker xử lý IPN VNPay, tách khỏi thread HTTP. Hàng đợi có giới hạn:
+    // khi đầy, thông báo vẫn nằm trong DB (RECEIVED) và được job quét lại đưa vào sau
+    @Bean(name = "paymentNotificationExecutor")
+    public ThreadPoolTaskExecutor paymentNotificationExecutor(
+            @Value("${app.vnpay.ipn.workers:4}") int workers,
+            @Value("${app.vnpay.ipn.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("vnpay-ipn-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
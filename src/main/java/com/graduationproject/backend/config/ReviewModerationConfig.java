@@ -0,0 +1,34 @@
+package com.graduationproject.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ReviewModerationConfig {
+
+    // Pool tính lại số liệu đánh giá song song theo sản phẩm sau khi kiểm duyệt hàng loạt.
+    // Mỗi tác vụ giữ một kết nối DB nên số worker nên nhỏ hơn nhiều so với pool kết nối
+    @Bean(name = "reviewAggregateExecutor")
+    public ThreadPoolTaskExecutor reviewAggregateExecutor(
+            @Value("${app.reviews.moderation.recompute-workers:4}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("review-aggregate-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Dựng chỉ mục tìm kiếm đánh giá lần đầu ngoài luồng khởi động
+    @Bean(name = "reviewSearchIndexExecutor")
+    public SimpleAsyncTaskExecutor reviewSearchIndexExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("review-search-index-");
+        executor.setConcurrencyLimit(1);
+        return executor;
+    }
+}
@@ -0,0 +1,37 @@
+package com.graduationproject.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// Bật @Scheduled cho các job nền (dọn đơn hàng hết hạn, ...)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Scheduler mặc định của mọi @Scheduled: nhiều luồng để một job chạy lâu (dọn giỏ, kiểm tra bảng tổng hợp,
+    // làm mới khối bán hàng, lưu trữ đơn, ...) không làm trễ các job khác
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${app.scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+
+    // Luồng riêng cho job ghi giỏ hàng write-behind: không bao giờ phải chờ job khác nên giỏ dirty
+    // được ghi đúng chu kỳ app.cart.store.flush-interval-ms
+    @Bean(name = "cartFlushScheduler")
+    public ThreadPoolTaskScheduler cartFlushScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("cart-flush-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+}
@@ -62,6 +62,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/users/login", "/api/users/register").permitAll()
                         .requestMatchers("/api/password/forgot", "/api/password/reset-otp").permitAll()
                         .requestMatchers("/api/orders/vnpay_return").permitAll()
+                        .requestMatchers("/api/vnpay/ipn").permitAll() // IPN server-to-server, xác thực bằng chữ ký
+                        .requestMatchers("/sim/vnpay/**").permitAll() // Simulator VNPay (chỉ có khi bật profile vnpay-sim)
                         .requestMatchers("/login", "/oauth2/**", "/api/oauth2/**", "/error").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/products/**", "/api/categories/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/recommendations/**").permitAll()
@@ -124,7 +126,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("http://localhost:5173"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
 //        configuration.setAllowedHeaders(List.of("*"));
-        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type"));
+        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type", "If-Match", "If-None-Match"));
+        configuration.setExposedHeaders(List.of("ETag")); // Phiên bản giỏ hàng
         configuration.setAllowCredentials(true);
 
         configuration.setMaxAge(3600L);
@@ -0,0 +1,30 @@
+package com.graduationproject.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+@Configuration
+public class StatisticsConfig {
+
+    // Virtual thread cho các truy vấn thống kê chạy song song của trang tổng quan Dashboard.
+    // Mỗi truy vấn giữ một kết nối DB nên giới hạn số tác vụ đồng thời trên toàn node
+    @Bean(name = "statisticsOverviewExecutor")
+    public SimpleAsyncTaskExecutor statisticsOverviewExecutor(
+            @Value("${app.statistics.overview.max-concurrent-queries:8}") int maxConcurrentQueries) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("statistics-overview-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(maxConcurrentQueries);
+        return executor;
+    }
+
+    // Dựng khối dữ liệu bán hàng ngoài luồng request, mỗi lúc một lần dựng
+    @Bean(name = "salesCubeExecutor")
+    public SimpleAsyncTaskExecutor salesCubeExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("sales-cube-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(1);
+        return executor;
+    }
+}
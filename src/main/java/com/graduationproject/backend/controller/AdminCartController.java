@@ -0,0 +1,32 @@
+package com.graduationproject.backend.controller;
+
+import com.graduationproject.backend.service.CartPurgeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/carts") // Quản lý giỏ hàng phía admin
+public class AdminCartController {
+
+    private final CartPurgeService cartPurgeService;
+
+    @Autowired
+    public AdminCartController(CartPurgeService cartPurgeService) {
+        this.cartPurgeService = cartPurgeService;
+    }
+
+    /**
+     * Chỉ số của job dọn giỏ hàng bị bỏ quên trên node hiện tại (số giỏ/dòng đã xóa, lần chạy gần nhất).
+     */
+    @GetMapping("/purge/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPurgeStats() {
+        return ResponseEntity.ok(cartPurgeService.getStats());
+    }
+}
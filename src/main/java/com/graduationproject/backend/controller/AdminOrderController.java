@@ -1,16 +1,31 @@
 package com.graduationproject.backend.controller;
 
 import com.graduationproject.backend.dto.OrderDTO;
+import com.graduationproject.backend.dto.ReconciliationReportDTO;
 import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.service.OrderExportService;
 import com.graduationproject.backend.service.OrderService;
+import com.graduationproject.backend.service.VnpayReconciliationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page; // Import Page
 import org.springframework.data.domain.PageRequest; // Import PageRequest
 import org.springframework.data.domain.Pageable; // Import Pageable
 import org.springframework.data.domain.Sort; // Import Sort
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize; // Import PreAuthorize
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 @RestController
 @RequestMapping("/api/admin/orders") // Base path cho quản lý đơn hàng của admin
@@ -18,10 +33,15 @@ import org.springframework.web.bind.annotation.*;
 public class AdminOrderController {
 
     private final OrderService orderService;
+    private final OrderExportService orderExportService;
+    private final VnpayReconciliationService vnpayReconciliationService;
 
     @Autowired
-    public AdminOrderController(OrderService orderService) {
+    public AdminOrderController(OrderService orderService, OrderExportService orderExportService,
+                                VnpayReconciliationService vnpayReconciliationService) {
         this.orderService = orderService;
+        this.orderExportService = orderExportService;
+        this.vnpayReconciliationService = vnpayReconciliationService;
     }
 
     /**
@@ -79,6 +99,67 @@ public class AdminOrderController {
     }
 
 
+    /**
+     * API Xuất CSV đơn hàng + dòng hàng cho kế toán (ví dụ: ?from=2025-05-01&to=2025-05-31).
+     * Dữ liệu được stream trực tiếp từ DB ra response, không giữ toàn bộ trong bộ nhớ.
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam String from, // Ngày bắt đầu (YYYY-MM-DD), tính cả ngày này
+            @RequestParam String to    // Ngày kết thúc (YYYY-MM-DD), tính cả ngày này
+    ) {
+        LocalDate[] range = parseDateRange(from, to);
+        LocalDate fromDate = range[0];
+        LocalDate toDate = range[1];
+        Timestamp start = Timestamp.valueOf(fromDate.atStartOfDay());
+        Timestamp endExclusive = Timestamp.valueOf(toDate.plusDays(1).atStartOfDay());
+
+        StreamingResponseBody body = outputStream -> orderExportService.writeOrdersCsv(start, endExclusive, outputStream);
+        String fileName = "orders_" + fromDate + "_" + toDate + ".csv";
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    /**
+     * API Đối soát file quyết toán VNPay (CSV) với các đơn VNPay tạo trong khoảng ngày.
+     * File được đọc theo luồng; kết quả gồm số đếm theo loại sai lệch và danh sách chi tiết (có giới hạn).
+     */
+    @PostMapping("/reconciliation/vnpay")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReconciliationReportDTO> reconcileVnpaySettlement(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam String from, // YYYY-MM-DD, tính cả ngày này
+            @RequestParam String to    // YYYY-MM-DD, tính cả ngày này
+    ) throws IOException {
+        if (file.isEmpty()) {
+            throw new BadRequestException("File quyết toán rỗng.");
+        }
+        LocalDate[] range = parseDateRange(from, to);
+        Timestamp start = Timestamp.valueOf(range[0].atStartOfDay());
+        Timestamp endExclusive = Timestamp.valueOf(range[1].plusDays(1).atStartOfDay());
+        try (InputStream inputStream = file.getInputStream()) {
+            return ResponseEntity.ok(vnpayReconciliationService.reconcile(inputStream, start, endExclusive));
+        }
+    }
+
+    private static LocalDate[] parseDateRange(String from, String to) {
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            fromDate = LocalDate.parse(from);
+            toDate = LocalDate.parse(to);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Định dạng ngày không hợp lệ, cần YYYY-MM-DD.");
+        }
+        if (toDate.isBefore(fromDate)) {
+            throw new BadRequestException("Ngày kết thúc phải sau hoặc bằng ngày bắt đầu.");
+        }
+        return new LocalDate[]{fromDate, toDate};
+    }
+
     // Có thể thêm các API khác cho Admin nếu cần
     // Ví dụ: Tìm kiếm đơn hàng theo mã giao dịch VNPay, theo sản phẩm,...
 }
\ No newline at end of file
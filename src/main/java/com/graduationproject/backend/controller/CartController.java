@@ -2,7 +2,9 @@
 package com.graduationproject.backend.controller;
 
 import com.graduationproject.backend.dto.CartDTO;
+import com.graduationproject.backend.dto.CartDeltaDTO;
 import com.graduationproject.backend.dto.CartItemInputDTO;
+import com.graduationproject.backend.dto.CartItemOperationDTO;
 import com.graduationproject.backend.entity.User;
 import com.graduationproject.backend.exception.BadRequestException;
 import com.graduationproject.backend.exception.ResourceNotFoundException;
@@ -55,15 +57,36 @@ public class CartController {
     }
     private long getCurrentUserId() { return getCurrentAuthenticatedUser().getUserId(); }
 
+    // Đọc phiên bản từ header If-Match / If-None-Match ("123", W/"123" hoặc *). null = không kiểm tra
+    private static Long parseVersionHeader(String headerValue) {
+        if (headerValue == null || headerValue.isBlank() || "*".equals(headerValue.trim())) return null;
+        String value = headerValue.trim();
+        if (value.startsWith("W/")) value = value.substring(2);
+        value = value.replace("\"", "");
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cart version in header: " + headerValue);
+        }
+    }
+
 
     /** Lấy giỏ hàng chi tiết */
     @GetMapping
-    public ResponseEntity<CartDTO> getMyCart() {
+    public ResponseEntity<CartDTO> getMyCart(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         long userId = getCurrentUserId();
+        // Client đã có đúng phiên bản: trả 304, không dựng lại CartDTO
+        Long knownVersion = parseVersionHeader(ifNoneMatch);
+        if (knownVersion != null) {
+            long currentVersion = cartService.getCartVersion(userId);
+            if (knownVersion == currentVersion) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(CartService.toETag(currentVersion)).build();
+            }
+        }
         // Gọi service trả về CartDTO
-        return cartService.getCartByUserIdWithDetails(userId)
-                      .map(ResponseEntity::ok)
-                      .orElse(ResponseEntity.ok(new CartDTO(userId, Collections.emptyList(), new Date())));
+        CartDTO cart = cartService.getCartByUserIdWithDetails(userId)
+                      .orElse(new CartDTO(userId, Collections.emptyList(), new Date()));
+        return ResponseEntity.ok().eTag(CartService.toETag(cart.getVersion())).body(cart);
     }
 
     /** Thêm item vào giỏ */
@@ -76,10 +99,11 @@ public class CartController {
 //    }
     /** Thêm item vào giỏ */
     @PostMapping("/items")
-    public ResponseEntity<Void> addToMyCart(@Valid @RequestBody CartItemInputDTO cartItemInputDTO) { // <<< Đổi thành Void
+    public ResponseEntity<CartDeltaDTO> addToMyCart(@Valid @RequestBody CartItemInputDTO cartItemInputDTO,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         long userId = getCurrentUserId();
-        cartService.addItemToCart(userId, cartItemInputDTO.getProductId(), cartItemInputDTO.getQuantity());
-        return ResponseEntity.ok().build(); // <<< Trả về 200 OK
+        CartDeltaDTO delta = cartService.addItemToCart(userId, cartItemInputDTO.getProductId(), cartItemInputDTO.getQuantity(), parseVersionHeader(ifMatch));
+        return ResponseEntity.ok().eTag(CartService.toETag(delta.getVersion())).body(delta); // Chỉ dòng thay đổi + tổng mới
     }
 
     /** Cập nhật số lượng item */
@@ -93,20 +117,32 @@ public class CartController {
 //    }
     /** Cập nhật số lượng item */
     @PutMapping("/items/{productId}")
-    public ResponseEntity<Void> updateMyCartItemQuantity( // <<< Đổi thành Void
+    public ResponseEntity<CartDeltaDTO> updateMyCartItemQuantity(
                                                           @PathVariable int productId,
-                                                          @RequestParam @Min(value = 1) int quantity) {
+                                                          @RequestParam @Min(value = 1) int quantity,
+                                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        long userId = getCurrentUserId();
+        CartDeltaDTO delta = cartService.updateItemQuantity(userId, productId, quantity, parseVersionHeader(ifMatch));
+        return ResponseEntity.ok().eTag(CartService.toETag(delta.getVersion())).body(delta);
+    }
+
+    /** Thêm/cập nhật/xóa nhiều item trong một request, trả về giỏ hàng cuối cùng */
+    @PatchMapping("/items")
+    public ResponseEntity<CartDTO> applyMyCartItemOperations(
+            @RequestBody @NotEmpty List<@Valid CartItemOperationDTO> operations,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         long userId = getCurrentUserId();
-        cartService.updateItemQuantity(userId, productId, quantity);
-        return ResponseEntity.ok().build(); // <<< Trả về 200 OK
+        CartDTO updatedCart = cartService.applyItemOperations(userId, operations, parseVersionHeader(ifMatch));
+        return ResponseEntity.ok().eTag(CartService.toETag(updatedCart.getVersion())).body(updatedCart);
     }
 
     /** Xóa một item khỏi giỏ */
     @DeleteMapping("/items/{productId}")
-    public ResponseEntity<CartDTO> removeFromMyCart(@PathVariable int productId) { // Trả về CartDTO
+    public ResponseEntity<CartDTO> removeFromMyCart(@PathVariable int productId,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) { // Trả về CartDTO
         long userId = getCurrentUserId();
-        CartDTO updatedCart = cartService.removeItemFromCart(userId, productId); // Service trả về DTO rỗng hoặc DTO mới
-        return ResponseEntity.ok(updatedCart); // Luôn trả về 200 OK với CartDTO (có thể rỗng)
+        CartDTO updatedCart = cartService.removeItemFromCart(userId, productId, parseVersionHeader(ifMatch)); // Service trả về DTO rỗng hoặc DTO mới
+        return ResponseEntity.ok().eTag(CartService.toETag(updatedCart.getVersion())).body(updatedCart); // Luôn trả về 200 OK với CartDTO (có thể rỗng)
     }
 
     /** Xóa một item khỏi giỏ */
@@ -55,14 +55,11 @@ public class InvoiceController {
         InvoiceDetailDTO invoiceDetailDTO = invoiceService.getInvoiceDetails(orderId); // Giả sử phương thức này đã có trong InvoiceService
 
         // 3. Kiểm tra quyền truy cập
-        // Lấy Order entity gốc để kiểm tra userId một cách đáng tin cậy
-        Order orderEntity = orderService.findOrderEntityById(orderId);
-        if (orderEntity == null) { // Service nên ném lỗi nếu order không tồn tại trước khi đến đây
-            throw new ResourceNotFoundException("Order", "orderId", orderId);
-        }
+        // Lấy userId chủ đơn hàng (kể cả đơn đã lưu trữ) để kiểm tra một cách đáng tin cậy
+        long orderOwnerId = orderService.findOrderOwnerId(orderId);
 
         boolean isAdmin = currentUser.getRole().name().equals("ADMIN");
-        boolean isOwner = orderEntity.getUserId() == currentUser.getUserId();
+        boolean isOwner = orderOwnerId == currentUser.getUserId();
 
         if (!isOwner && !isAdmin) {
             throw new AccessDeniedException("You do not have permission to access the invoice for order " + orderId);
@@ -1,11 +1,13 @@
 package com.graduationproject.backend.controller;
 
+import com.graduationproject.backend.dto.CheckoutQuoteDTO;
 import com.graduationproject.backend.dto.CreateOrderRequestDTO;
 import com.graduationproject.backend.dto.OrderDTO;
 import com.graduationproject.backend.entity.User; // Import User
 import com.graduationproject.backend.entity.enums.PaymentMethod;
 import com.graduationproject.backend.exception.BadRequestException;
 import com.graduationproject.backend.exception.ResourceNotFoundException;
+import com.graduationproject.backend.service.CheckoutQuoteService;
 import com.graduationproject.backend.service.OrderService;
 import com.graduationproject.backend.service.UserService; // Import UserService
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,11 +34,13 @@ public class OrderController {
 
     private final OrderService orderService;
     private final UserService userService;
+    private final CheckoutQuoteService checkoutQuoteService;
 
     @Autowired
-    public OrderController(OrderService orderService, UserService userService) {
+    public OrderController(OrderService orderService, UserService userService, CheckoutQuoteService checkoutQuoteService) {
         this.orderService = orderService;
         this.userService = userService;
+        this.checkoutQuoteService = checkoutQuoteService;
     }
 
     // --- Helper lấy User ---
@@ -75,6 +79,14 @@ public class OrderController {
         return ResponseEntity.status(HttpStatus.CREATED).body(result);
     }
 
+    // Báo giá cho trang checkout (tổng tiền, tồn kho, phí ship) mà không tạo đơn hàng.
+    // Thông tin giao hàng không bắt buộc ở bước này nên không dùng @Valid cho cả request
+    @PostMapping("/quote")
+    public ResponseEntity<CheckoutQuoteDTO> quoteOrder(@RequestBody CreateOrderRequestDTO orderRequest) {
+        long userId = getCurrentAuthenticatedUser().getUserId();
+        return ResponseEntity.ok(checkoutQuoteService.getQuote(userId, orderRequest));
+    }
+
 
     // Endpoint lấy danh sách đơn hàng của người dùng đang đăng nhập
     @GetMapping("/me")
@@ -6,6 +6,7 @@ import com.graduationproject.backend.dto.ProductRequestDTO;
 import com.graduationproject.backend.entity.Product; // Vẫn cần entity để nhận request body nếu dùng entity trực tiếp
 import com.graduationproject.backend.exception.ResourceNotFoundException;
 import com.graduationproject.backend.service.FileStorageService;
+import com.graduationproject.backend.service.ProductRatingService;
 import com.graduationproject.backend.service.ProductService;
 import jakarta.validation.Valid; // Import Valid
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,14 +36,17 @@ public class ProductController {
 
     private final ProductService productService;
     private final FileStorageService fileStorageService; // Inject FileStorageService
+    private final ProductRatingService productRatingService;
 
     @Value("${file.base-url}") // Inject base-url
     private String fileStorageBaseUrl;
 
     @Autowired
-    public ProductController(ProductService productService, FileStorageService fileStorageService) {
+    public ProductController(ProductService productService, FileStorageService fileStorageService,
+                             ProductRatingService productRatingService) {
         this.productService = productService;
         this.fileStorageService = fileStorageService;
+        this.productRatingService = productRatingService;
     }
 //    @GetMapping
 //    public ResponseEntity<ProductPageDTO> getProducts(
@@ -170,6 +174,17 @@ public class ProductController {
         return ResponseEntity.ok(responseDTO);
     }
 
+    // Dựng lại điểm trung bình, số lượng và phân bố sao của mọi sản phẩm từ product_reviews
+    @PostMapping("/admin/ratings/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildRatingAggregates() {
+        int updated = productRatingService.rebuildAll();
+        if (updated < 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "Rating rebuild is already running."));
+        }
+        return ResponseEntity.ok(Map.of("updatedProducts", updated));
+    }
+
     @PostMapping("/upload-images")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> uploadProductImages(@RequestParam("files") MultipartFile[] files) {
@@ -1,9 +1,15 @@
 package com.graduationproject.backend.controller;
 
+import com.graduationproject.backend.dto.BulkModerationResultDTO;
+import com.graduationproject.backend.dto.BulkReviewModerationDTO;
 import com.graduationproject.backend.dto.ProductReviewDTO;
+import com.graduationproject.backend.dto.ReviewCursorPageDTO;
+import com.graduationproject.backend.dto.ReviewEligibilityDTO;
 import com.graduationproject.backend.dto.ReviewRequestDTO;
 import com.graduationproject.backend.entity.User;
 import com.graduationproject.backend.service.ProductReviewService;
+import com.graduationproject.backend.service.ReviewModerationService;
+import com.graduationproject.backend.service.ReviewSearchService;
 import com.graduationproject.backend.service.UserService; // Inject UserService để lấy UserID
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,17 +25,25 @@ import org.springframework.security.core.context.SecurityContextHolder; // Impor
 import org.springframework.security.core.userdetails.UserDetails; // Import
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/reviews")
 public class ProductReviewController {
 
     private final ProductReviewService productReviewService;
     private final UserService userService;
+    private final ReviewModerationService reviewModerationService;
+    private final ReviewSearchService reviewSearchService;
 
     @Autowired
-    public ProductReviewController(ProductReviewService productReviewService, UserService userService) {
+    public ProductReviewController(ProductReviewService productReviewService, UserService userService,
+                                   ReviewModerationService reviewModerationService, ReviewSearchService reviewSearchService) {
         this.productReviewService = productReviewService;
         this.userService = userService;
+        this.reviewModerationService = reviewModerationService;
+        this.reviewSearchService = reviewSearchService;
     }
 
     // Helper lấy userId từ SecurityContext
@@ -54,6 +68,14 @@ public class ProductReviewController {
     }
 
 
+    // Danh sách sản phẩm người dùng hiện tại còn có thể đánh giá
+    @GetMapping("/eligible")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<List<ReviewEligibilityDTO>> getMyReviewableProducts() {
+        long userId = getCurrentUserId();
+        return ResponseEntity.ok(productReviewService.getReviewableProducts(userId));
+    }
+
     @GetMapping("/products/{productId}") // Ví dụ: /api/reviews/products/1?page=0&size=5
     public ResponseEntity<Page<ProductReviewDTO>> getReviewsForProduct(
             @PathVariable int productId,
@@ -64,6 +86,15 @@ public class ProductReviewController {
         return ResponseEntity.ok(reviewsPage);
     }
 
+    // Phân trang theo con trỏ: /api/reviews/products/1/cursor?size=10, trang sau truyền thêm cursor=<nextCursor>
+    @GetMapping("/products/{productId}/cursor")
+    public ResponseEntity<ReviewCursorPageDTO> getReviewsForProductByCursor(
+            @PathVariable int productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        return ResponseEntity.ok(productReviewService.getVisibleReviewsByCursor(productId, cursor, size));
+    }
+
     @DeleteMapping("/{reviewId}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<Void> deleteMyReview(@PathVariable Long reviewId) {
@@ -115,6 +146,35 @@ public class ProductReviewController {
         return ResponseEntity.ok(updatedReview);
     }
 
+    // Ẩn/hiện/xóa hàng loạt theo reviewIds hoặc bộ lọc (userId, from, to, keyword)
+    @PostMapping("/admin/reviews/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkModerationResultDTO> moderateReviewsInBulk(@Valid @RequestBody BulkReviewModerationDTO request) {
+        return ResponseEntity.ok(reviewModerationService.moderate(request));
+    }
+
+    // Tìm theo nội dung đánh giá, không phân biệt dấu: /api/reviews/admin/search?q=dong ho dep&page=0&size=10
+    @GetMapping("/admin/search")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Page<ProductReviewDTO>> searchReviews(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), 100));
+        return ResponseEntity.ok(productReviewService.searchReviewsForAdmin(q, pageable));
+    }
+
+    // Dựng lại chỉ mục tìm kiếm từ toàn bộ đánh giá
+    @PostMapping("/admin/search/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildSearchIndex() {
+        int indexed = reviewSearchService.rebuildIndex();
+        if (indexed < 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "Review search rebuild is already running."));
+        }
+        return ResponseEntity.ok(Map.of("indexedReviews", indexed));
+    }
+
     @DeleteMapping("/admin/reviews/{reviewId}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteReviewByAdmin(@PathVariable Long reviewId) {
@@ -1,13 +1,24 @@
 package com.graduationproject.backend.controller;
 
 import com.graduationproject.backend.dto.*; // Import tất cả các DTO thống kê
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.service.SalesCubeService;
+import com.graduationproject.backend.service.StatisticCacheService;
+import com.graduationproject.backend.service.StatisticOverviewService;
+import com.graduationproject.backend.service.StatisticRollupService;
 import com.graduationproject.backend.service.StatisticService;
+import com.graduationproject.backend.service.StatisticTimeSeriesService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize; // Import PreAuthorize
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumMap;
 import java.util.List; // Import List
 import java.util.Map;
 
@@ -17,10 +28,24 @@ import java.util.Map;
 public class StatisticController {
 
     private final StatisticService statisticService;
+    private final StatisticRollupService statisticRollupService;
+    private final StatisticOverviewService statisticOverviewService;
+    private final StatisticTimeSeriesService statisticTimeSeriesService;
+    private final SalesCubeService salesCubeService;
+    private final StatisticCacheService statisticCacheService;
 
     @Autowired
-    public StatisticController(StatisticService statisticService) {
+    public StatisticController(StatisticService statisticService, StatisticRollupService statisticRollupService,
+                               StatisticOverviewService statisticOverviewService,
+                               StatisticTimeSeriesService statisticTimeSeriesService,
+                               SalesCubeService salesCubeService,
+                               StatisticCacheService statisticCacheService) {
         this.statisticService = statisticService;
+        this.statisticRollupService = statisticRollupService;
+        this.statisticOverviewService = statisticOverviewService;
+        this.statisticTimeSeriesService = statisticTimeSeriesService;
+        this.salesCubeService = salesCubeService;
+        this.statisticCacheService = statisticCacheService;
     }
 
     // Các endpoint thống kê ở đây sẽ tự động yêu cầu role ADMIN
@@ -33,6 +58,16 @@ public class StatisticController {
     }
 
 
+    // Toàn bộ số liệu Dashboard trong một lần gọi, các truy vấn chạy song song (mặc định 30 ngày gần nhất)
+    @GetMapping("/overview")
+    public ResponseEntity<StatisticsOverviewDTO> getOverview(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "5") int limit) {
+        return ResponseEntity.ok(statisticOverviewService.getOverview(from, to, limit));
+    }
+
+
     @GetMapping("/revenue/daily")
     public ResponseEntity<List<DailyRevenueDTO>> getDailyRevenueStatistics(
             @RequestParam String from,
@@ -41,6 +76,15 @@ public class StatisticController {
         return ResponseEntity.ok(revenueData);
     }
 
+    // Doanh thu/số đơn theo HOUR, DAY, WEEK, MONTH, QUARTER, kèm kỳ liền trước để so sánh
+    @GetMapping("/revenue/series")
+    public ResponseEntity<TimeSeriesDTO> getRevenueSeries(
+            @RequestParam(defaultValue = "DAY") TimeSeriesDTO.Granularity granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(statisticTimeSeriesService.getRevenueSeries(granularity, from, to));
+    }
+
 
     @GetMapping("/orders/daily")
     public ResponseEntity<List<DailyOrderCountDTO>> getDailyOrderCountStatistics(
@@ -78,6 +122,14 @@ public class StatisticController {
     }
 
 
+    @GetMapping("/products/top-revenue")
+    public ResponseEntity<List<TopProductDTO>> getTopRevenueProducts(
+            @RequestParam(defaultValue = "5") int limit) {
+        List<TopProductDTO> topProducts = statisticService.getTopRevenueProducts(limit);
+        return ResponseEntity.ok(topProducts);
+    }
+
+
     @GetMapping("/customers/top-completed-orders")
     public ResponseEntity<List<CustomerStatisticDTO>> getTopCustomersByCompletedOrders(
             @RequestParam(defaultValue = "5") int limit) {
@@ -93,9 +145,74 @@ public class StatisticController {
     }
 
 
+    // Phân tích chéo trên khối dữ liệu bán hàng trong bộ nhớ; tháng theo định dạng yyyy-MM
+    @GetMapping("/cube")
+    public ResponseEntity<SalesCubeResultDTO> queryCube(
+            @RequestParam(required = false) List<SalesCubeResultDTO.Dimension> groupBy,
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) List<String> brand,
+            @RequestParam(required = false) List<String> paymentMethod,
+            @RequestParam(required = false) List<String> status,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth fromMonth,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth toMonth,
+            @RequestParam(defaultValue = "100") int limit) {
+        Map<SalesCubeResultDTO.Dimension, List<String>> filters = new EnumMap<>(SalesCubeResultDTO.Dimension.class);
+        filters.put(SalesCubeResultDTO.Dimension.CATEGORY, category);
+        filters.put(SalesCubeResultDTO.Dimension.BRAND, brand);
+        filters.put(SalesCubeResultDTO.Dimension.PAYMENT_METHOD, paymentMethod);
+        filters.put(SalesCubeResultDTO.Dimension.STATUS, status);
+        return ResponseEntity.ok(salesCubeService.query(groupBy, filters, fromMonth, toMonth, limit));
+    }
+
+    // Dựng lại khối dữ liệu bán hàng trên node nhận request (chạy nền, khối cũ vẫn phục vụ truy vấn tới khi xong)
+    @PostMapping("/cube/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildCube() {
+        salesCubeService.requestRebuild();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("status", "building"));
+    }
+
+
+    // Số liệu hit/miss của cache kết quả thống kê trên node nhận request
+    @GetMapping("/cache")
+    public ResponseEntity<List<StatisticCacheStatsDTO>> getCacheStats() {
+        return ResponseEntity.ok(statisticCacheService.getStats());
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> clearCache() {
+        statisticCacheService.invalidateAll();
+        return ResponseEntity.noContent().build();
+    }
+
+
     @GetMapping("/inventory")
     public ResponseEntity<Map<String, Integer>> getInventoryStatistics() {
         Map<String, Integer> inventoryData = statisticService.getInventoryStatistics();
         return ResponseEntity.ok(inventoryData);
     }
-}
\ No newline at end of file
+
+
+    // Dựng lại bảng tổng hợp theo ngày từ đơn hàng gốc (bỏ trống from/to: toàn bộ lịch sử đến hôm nay)
+    @PostMapping("/rollups/backfill")
+    public ResponseEntity<Map<String, Object>> backfillRollups(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        int days = statisticRollupService.backfill(from, to);
+        if (days < 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "Statistics backfill is already running."));
+        }
+        return ResponseEntity.ok(Map.of("rebuiltDays", days));
+    }
+
+    // So sánh bảng tổng hợp với đơn hàng gốc trong khoảng ngày và dựng lại những ngày bị lệch
+    @PostMapping("/rollups/verify")
+    public ResponseEntity<Map<String, Object>> verifyRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new BadRequestException("'from' must not be after 'to'.");
+        }
+        int[] result = statisticRollupService.runCheck(from, to);
+        return ResponseEntity.ok(Map.of("checkedDays", result[0], "rebuiltDays", result[1]));
+    }
+}
@@ -1,9 +1,11 @@
 package com.graduationproject.backend.controller;
 
-import com.graduationproject.backend.entity.Order;
+import com.graduationproject.backend.dto.OrderDTO;
 import com.graduationproject.backend.entity.enums.OrderStatus;
-import com.graduationproject.backend.repository.OrderRepository;
-import com.graduationproject.backend.service.VnPayService;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.exception.ResourceNotFoundException;
+import com.graduationproject.backend.service.OrderService;
+import com.graduationproject.backend.service.PaymentNotificationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,35 +16,35 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class VnPayController {
 
-    private final VnPayService vnPayService;
-    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final PaymentNotificationService paymentNotificationService;
+
+    // IPN server-to-server: chỉ xác thực và ghi nhận, cập nhật đơn hàng được xử lý bất đồng bộ
+    @GetMapping("/ipn")
+    public Map<String, String> handleVnPayIpn(@RequestParam Map<String, String> allParams) {
+        return paymentNotificationService.receiveIpn(allParams);
+    }
 
     @GetMapping("/return")
     public String handleVnPayReturn(@RequestParam Map<String, String> allParams) {
-        // Bước 1: Xác thực chữ ký trả về
-        boolean isValid = vnPayService.validateReturnSignature(allParams);
-        if (!isValid) {
-            return "Chữ ký không hợp lệ. Giao dịch bị từ chối.";
-        }
-
-        // Bước 2: Lấy thông tin đơn hàng từ vnp_TxnRef
-        int orderId = Integer.parseInt(allParams.get("vnp_TxnRef"));
-        Order order = orderRepository.findById(orderId).orElse(null);
-        if (order == null) {
+        // Xác thực chữ ký và cập nhật đơn hàng qua OrderService (khóa đơn, chỉ xử lý đơn PENDING, hoàn kho và cập nhật thống kê)
+        OrderDTO order;
+        try {
+            order = orderService.handleVnpayReturn(allParams);
+        } catch (ResourceNotFoundException e) {
             return "Không tìm thấy đơn hàng.";
+        } catch (BadRequestException e) {
+            // Chữ ký sai, mã đơn hàng không hợp lệ, ...
+            return e.getMessage() + " Giao dịch bị từ chối.";
         }
 
-        // Bước 3: Kiểm tra mã phản hồi
+        // Kiểm tra mã phản hồi
         String responseCode = allParams.get("vnp_ResponseCode");
-        if ("00".equals(responseCode)) {
+        if ("00".equals(responseCode) && OrderStatus.PAID.name().equals(order.getStatus())) {
             // Thành công
-            order.setStatus(OrderStatus.PAID);
-            orderRepository.save(order);
             return "Giao dịch thành công. Cảm ơn bạn đã thanh toán!";
         } else {
             // Thất bại
-            order.setStatus(OrderStatus.CANCELED);
-            orderRepository.save(order);
             return "Giao dịch thất bại. Mã lỗi: " + responseCode;
         }
     }
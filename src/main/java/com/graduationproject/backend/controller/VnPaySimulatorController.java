@@ -0,0 +1,46 @@
+package com.graduationproject.backend.controller;
+
+import com.graduationproject.backend.service.VnPaySimulatorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.Map;
+
+// Endpoint của simulator VNPay, chỉ tồn tại khi bật profile "vnpay-sim"
+@RestController
+@RequestMapping("/sim/vnpay")
+@Profile("vnpay-sim")
+public class VnPaySimulatorController {
+
+    @Autowired
+    private VnPaySimulatorService simulatorService;
+
+    // Thay cho trang thanh toán vpcpay.html: thanh toán ngay rồi redirect trình duyệt về return URL
+    @GetMapping("/vpcpay.html")
+    public ResponseEntity<Void> pay(@RequestParam Map<String, String> params) {
+        String returnUrl = simulatorService.processPayment(params, false);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(URI.create(returnUrl));
+        return new ResponseEntity<>(headers, HttpStatus.FOUND);
+    }
+
+    // Test tải: đẩy các đơn VNPay PENDING hiện có qua simulator
+    @PostMapping("/drive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> drive(@RequestParam(defaultValue = "1000") int limit) {
+        int submitted = simulatorService.drivePendingOrders(limit);
+        return ResponseEntity.ok(Map.of("submitted", submitted));
+    }
+
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(simulatorService.getStats());
+    }
+}
@@ -0,0 +1,18 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Kết quả kiểm duyệt hàng loạt
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkModerationResultDTO {
+    private BulkReviewModerationDTO.Action action;
+    private long matchedReviews;   // Số đánh giá khớp điều kiện
+    private long changedReviews;   // Số đánh giá thực sự bị ẩn/hiện/xóa
+    private int affectedProducts;  // Số sản phẩm được tính lại số liệu
+    private boolean truncated;     // Dừng vì vượt giới hạn số đánh giá mỗi yêu cầu
+    private long elapsedMillis;
+}
@@ -0,0 +1,33 @@
+package com.graduationproject.backend.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Yêu cầu kiểm duyệt hàng loạt: theo danh sách reviewIds hoặc theo bộ lọc (ít nhất một điều kiện)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkReviewModerationDTO {
+
+    public enum Action {
+        HIDE,
+        SHOW,
+        DELETE
+    }
+
+    @NotNull(message = "Action is required")
+    private Action action;
+
+    private List<Long> reviewIds;
+
+    // Bộ lọc (bỏ qua khi có reviewIds)
+    private Long userId;
+    private LocalDate from; // yyyy-MM-dd, tính cả ngày
+    private LocalDate to;   // yyyy-MM-dd, tính cả ngày
+    private String keyword; // Tìm trong nội dung đánh giá, không phân biệt hoa thường
+}
@@ -14,4 +14,11 @@ public class CartDTO {
     private long userId;
     private List<CartItemDetailDTO> items; // <<< Danh sách item chi tiết
     private Date lastUpdated;
+    private long version; // Phiên bản giỏ hàng, trùng với ETag
+
+    public CartDTO(long userId, List<CartItemDetailDTO> items, Date lastUpdated) {
+        this.userId = userId;
+        this.items = items;
+        this.lastUpdated = lastUpdated;
+    }
 }
\ No newline at end of file
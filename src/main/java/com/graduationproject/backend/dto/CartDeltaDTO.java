@@ -0,0 +1,22 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+// Phản hồi rút gọn cho thao tác giỏ hàng: chỉ dòng thay đổi + tổng mới, thay vì toàn bộ CartDTO
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartDeltaDTO {
+    private long version;
+    private CartItemDetailDTO item;   // Dòng vừa thêm/cập nhật (null nếu dòng bị xóa)
+    private Integer removedProductId; // Sản phẩm vừa bị xóa khỏi giỏ (null nếu không có)
+    private int itemCount;            // Số dòng trong giỏ
+    private int totalQuantity;
+    private BigDecimal totalAmount;   // Theo giá hiện tại của sản phẩm
+    private Date lastUpdated;
+}
@@ -0,0 +1,29 @@
+package com.graduationproject.backend.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một thao tác trong request PATCH /api/carts/items
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemOperationDTO {
+
+    public enum Operation {
+        ADD,    // Cộng thêm quantity vào dòng hiện có (hoặc tạo dòng mới)
+        UPDATE, // Đặt số lượng = quantity (0 = xóa dòng)
+        REMOVE  // Xóa dòng (bỏ qua nếu không có trong giỏ)
+    }
+
+    @NotNull(message = "Operation is required")
+    private Operation op;
+
+    @Min(value = 1, message = "Product ID must be positive")
+    private int productId;
+
+    @Min(value = 0, message = "Quantity must not be negative")
+    private int quantity;
+}
@@ -0,0 +1,23 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+
+// Báo giá cho các sản phẩm được chọn ở trang checkout (chỉ đọc, không tạo đơn)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutQuoteDTO {
+    private long cartVersion;          // Phiên bản giỏ hàng tại thời điểm báo giá
+    private List<CheckoutQuoteItemDTO> items;
+    private BigDecimal subtotal;       // Chỉ tính các dòng available
+    private BigDecimal shippingFee;
+    private BigDecimal totalAmount;
+    private boolean orderable;         // Tất cả dòng đều available
+    private Timestamp quotedAt;
+}
@@ -0,0 +1,22 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Một dòng trong báo giá checkout
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutQuoteItemDTO {
+    private int productId;
+    private String productName;  // null nếu sản phẩm không còn tồn tại
+    private String imageUrl;
+    private BigDecimal unitPrice;
+    private int quantity;
+    private int availableStock;
+    private boolean available;   // Sản phẩm tồn tại và đủ tồn kho cho quantity
+    private BigDecimal lineTotal;
+}
@@ -27,6 +27,7 @@ public class ProductDTO {
     private Timestamp createdAt;
     private BigDecimal averageRating;
     private Integer reviewCount;
+    private List<Integer> ratingDistribution; // Số đánh giá 1 sao..5 sao (phần tử 0 = 1 sao)
     private boolean visible;
     private Timestamp updatedAt;
 }
\ No newline at end of file
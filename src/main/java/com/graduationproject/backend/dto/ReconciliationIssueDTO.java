@@ -0,0 +1,31 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Một sai lệch phát hiện khi đối soát file quyết toán VNPay với đơn hàng
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationIssueDTO {
+
+    public enum IssueType {
+        AMOUNT_MISMATCH,          // Số tiền quyết toán khác tổng tiền đơn
+        MISSING_CALLBACK,         // VNPay đã quyết toán nhưng đơn vẫn PENDING/CANCELED (không nhận được return/IPN)
+        TRANSACTION_ID_MISMATCH,  // Mã giao dịch VNPay lưu trên đơn khác với file quyết toán
+        ORPHAN_TRANSACTION,       // Giao dịch trong file không khớp đơn VNPay nào
+        DUPLICATE_SETTLEMENT,     // Một đơn xuất hiện nhiều lần trong file
+        NOT_SETTLED               // Đơn đã thanh toán trong hệ thống nhưng không có trong file
+    }
+
+    private IssueType type;
+    private Integer orderId;
+    private String transactionNo;
+    private BigDecimal settledAmount;
+    private BigDecimal orderAmount;
+    private String orderStatus;
+    private String detail;
+}
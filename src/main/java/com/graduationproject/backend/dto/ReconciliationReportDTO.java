@@ -0,0 +1,25 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Kết quả đối soát: số đếm đầy đủ theo loại, danh sách chi tiết bị giới hạn để bộ nhớ không tăng theo file
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationReportDTO {
+    private long settlementRows;      // Số dòng dữ liệu trong file
+    private long settledTransactions; // Số giao dịch thành công (mã 00) đã đối soát
+    private long skippedRows;         // Dòng giao dịch không thành công hoặc sai định dạng
+    private long matched;
+    private Map<ReconciliationIssueDTO.IssueType, Long> issueCounts = new EnumMap<>(ReconciliationIssueDTO.IssueType.class);
+    private List<ReconciliationIssueDTO> issues = new ArrayList<>();
+    private boolean issuesTruncated;
+    private long elapsedMillis;
+}
@@ -0,0 +1,17 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Một trang đánh giá phân trang theo con trỏ; nextCursor = null khi đã hết
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewCursorPageDTO {
+    private List<ProductReviewDTO> items;
+    private String nextCursor;
+    private long totalVisible; // Tổng số đánh giá hiển thị của sản phẩm
+}
@@ -0,0 +1,19 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+// Sản phẩm người dùng có thể đánh giá (đã mua trong đơn COMPLETED nhưng chưa đánh giá cho đơn đó)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewEligibilityDTO {
+    private int productId;
+    private String productName;
+    private int latestOrderId;        // Đơn hoàn thành gần nhất chưa được đánh giá
+    private long reviewableOrderCount; // Số đơn hoàn thành còn có thể đánh giá sản phẩm này
+    private Timestamp lastCompletedAt;
+}
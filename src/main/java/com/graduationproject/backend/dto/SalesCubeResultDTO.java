@@ -0,0 +1,29 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+// Kết quả group by/lọc trên khối dữ liệu bán hàng trong bộ nhớ
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesCubeResultDTO {
+
+    public enum Dimension {
+        CATEGORY, BRAND, PAYMENT_METHOD, STATUS, MONTH
+    }
+
+    private List<Dimension> groupBy;
+    private List<SalesCubeRowDTO> rows;      // Sắp theo doanh thu giảm dần, tối đa limit nhóm
+    private int groupCount;                  // Tổng số nhóm trước khi cắt theo limit
+    private long totalQuantity;
+    private BigDecimal totalRevenue;
+    private long scannedRows;
+    private OffsetDateTime refreshedAt;      // Lần cập nhật gần nhất từ DB
+    private long elapsedMillis;
+}
@@ -0,0 +1,19 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Một nhóm trong kết quả truy vấn khối dữ liệu bán hàng
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesCubeRowDTO {
+    private Map<String, String> dimensions; // Chiều -> giá trị, theo thứ tự groupBy
+    private long quantity;
+    private BigDecimal revenue;
+    private long lineCount; // Số dòng order_items trong nhóm
+}
@@ -0,0 +1,20 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Số liệu cache kết quả thống kê của một loại truy vấn trên node hiện tại
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatisticCacheStatsDTO {
+    private String name;
+    private long hits;
+    private long misses;        // Số lần phải chạy truy vấn
+    private long sharedLoads;   // Số request chờ chung kết quả của một lần tính đang chạy
+    private long failures;
+    private long evictions;
+    private int entries;
+    private Double hitRate;     // (hits + sharedLoads) / tổng request, null nếu chưa có request
+}
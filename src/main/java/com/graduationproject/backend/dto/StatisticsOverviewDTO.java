@@ -0,0 +1,23 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+// Dữ liệu tổng hợp cho Dashboard trong một lần gọi; phần nào lỗi hoặc quá thời gian thì null và có trong errors
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatisticsOverviewDTO {
+    private DashboardSummaryDTO summary;
+    private List<DailyRevenueDTO> dailyRevenue;
+    private List<DailyOrderCountDTO> dailyOrders;
+    private List<CategoryRevenueDTO> categoryRevenue;
+    private List<TopProductDTO> topProducts;
+    private List<CustomerRevenueDTO> topCustomers;
+    private Map<String, String> errors; // Tên phần -> lý do
+    private long elapsedMillis;
+}
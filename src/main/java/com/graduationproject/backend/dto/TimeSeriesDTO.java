@@ -0,0 +1,32 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+// Chuỗi doanh thu/số đơn theo khoảng thời gian, đã điền 0 cho các khoảng không có đơn
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesDTO {
+
+    public enum Granularity {
+        HOUR, DAY, WEEK, MONTH, QUARTER
+    }
+
+    private Granularity granularity;
+    private String zone;
+    private OffsetDateTime from;   // Bao gồm
+    private OffsetDateTime to;     // Không bao gồm
+    private List<TimeSeriesPointDTO> points;
+    private long totalOrders;
+    private BigDecimal totalRevenue;
+    private long previousTotalOrders;
+    private BigDecimal previousTotalRevenue;
+    private BigDecimal orderChangePercent;   // null nếu kỳ trước bằng 0
+    private BigDecimal revenueChangePercent; // null nếu kỳ trước bằng 0
+}
@@ -0,0 +1,21 @@
+package com.graduationproject.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+// Một khoảng thời gian của chuỗi thống kê, kèm khoảng tương ứng của kỳ trước để so sánh
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesPointDTO {
+    private OffsetDateTime periodStart;
+    private long orderCount;
+    private BigDecimal revenue;
+    private OffsetDateTime previousPeriodStart;
+    private long previousOrderCount;
+    private BigDecimal previousRevenue;
+}
@@ -0,0 +1,69 @@
+package com.graduationproject.backend.entity;
+
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bản lưu trữ (cold storage) của đơn hàng đã đóng, cùng cấu trúc và giữ nguyên orderId của bảng orders
+@Entity
+@Table(name = "orders_archive", indexes = {
+        @Index(name = "idx_orders_archive_user", columnList = "user_id"),
+        @Index(name = "idx_orders_archive_created", columnList = "created_at")
+})
+@Data
+public class ArchivedOrder {
+    @Id
+    @Column(name = "order_id")
+    private int orderId; // Không tự sinh, copy từ orders
+
+    @Column(nullable = false)
+    private long userId;
+
+    @Column(precision = 10, scale = 2, nullable = false)
+    private BigDecimal totalAmount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OrderStatus status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PaymentMethod paymentMethod;
+
+    @Column(length = 100)
+    private String vnpayTransactionId;
+
+    private Timestamp createdAt;
+
+    @Column
+    private String cancellationReason;
+
+    @Column(length = 50)
+    private String fullNameShipping;
+
+    @Column(length = 255)
+    private String addressShipping;
+
+    @Column(length = 15)
+    private String phoneShipping;
+
+    @Column(columnDefinition = "TEXT")
+    private String notes;
+
+    private Timestamp updatedAt;
+
+    private Timestamp archivedAt; // Thời điểm chuyển sang bảng lưu trữ
+
+    @OneToMany(mappedBy = "order", fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<ArchivedOrderItem> orderItems = new ArrayList<>();
+}
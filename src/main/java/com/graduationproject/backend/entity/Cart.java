@@ -12,7 +12,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "carts")
+@Table(name = "carts", indexes = {
+        @Index(name = "idx_carts_last_updated", columnList = "last_updated") // Job dọn giỏ bỏ quên quét theo cột này
+})
 @Data // Bao gồm getter, setter, toString, equals, hashCode
 public class Cart {
 
@@ -36,6 +38,10 @@ public class Cart {
     @Column(name = "last_updated")
     private Timestamp lastUpdated;
 
+    // Phiên bản giỏ hàng, tăng đơn điệu sau mỗi thay đổi (dùng làm ETag / If-Match)
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     // Quan hệ OneToMany với CartItem
     // EAGER loading có thể tiện lợi cho Cart nhưng cần cân nhắc hiệu năng nếu cart quá lớn
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
@@ -0,0 +1,33 @@
+package com.graduationproject.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Bảng tổng hợp doanh thu theo ngày và danh mục (theo danh mục của sản phẩm tại thời điểm cộng dồn)
+@Entity
+@Table(name = "stat_daily_category_sales",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_stat_daily_category_sales_date_category", columnNames = {"stat_date", "category_id"})
+        })
+@Data
+public class DailyCategorySalesStat {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "category_id", nullable = false)
+    private int categoryId;
+
+    @Column(name = "quantity", nullable = false)
+    private long quantity;
+
+    @Column(name = "revenue", precision = 15, scale = 2, nullable = false)
+    private BigDecimal revenue;
+}
@@ -0,0 +1,33 @@
+package com.graduationproject.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Bảng tổng hợp doanh thu theo ngày và khách hàng
+@Entity
+@Table(name = "stat_daily_customer_sales",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_stat_daily_customer_sales_date_user", columnNames = {"stat_date", "user_id"})
+        })
+@Data
+public class DailyCustomerSalesStat {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    @Column(name = "revenue", precision = 15, scale = 2, nullable = false)
+    private BigDecimal revenue;
+}
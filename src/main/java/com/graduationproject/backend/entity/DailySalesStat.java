@@ -0,0 +1,24 @@
+package com.graduationproject.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Bảng tổng hợp doanh thu theo ngày (đơn PAID/COMPLETED), cộng dồn khi đơn vào/ra các trạng thái này
+@Entity
+@Table(name = "stat_daily_sales")
+@Data
+public class DailySalesStat {
+
+    @Id
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    @Column(name = "revenue", precision = 15, scale = 2, nullable = false)
+    private BigDecimal revenue;
+}
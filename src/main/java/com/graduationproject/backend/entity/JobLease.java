@@ -0,0 +1,22 @@
+package com.graduationproject.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.sql.Timestamp;
+
+// Khóa thuê (lease) trong DB để chỉ một node chạy một job nền tại một thời điểm
+@Entity
+@Table(name = "job_leases")
+@Data
+public class JobLease {
+    @Id
+    @Column(name = "job_name", length = 100)
+    private String jobName;
+
+    @Column(name = "owner", length = 100)
+    private String owner; // Node đang giữ lease
+
+    @Column(name = "lease_until", nullable = false)
+    private Timestamp leaseUntil; // Lease hết hiệu lực sau thời điểm này
+}
@@ -13,7 +13,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // Phục vụ quét đơn PENDING VNPay quá hạn (status + payment_method + created_at)
+        @Index(name = "idx_orders_status_method_created", columnList = "status, payment_method, created_at"),
+        // Phục vụ quét đơn đã đóng để chuyển sang bảng lưu trữ
+        @Index(name = "idx_orders_status_updated", columnList = "status, updated_at"),
+        // Phục vụ đọc các đơn mới thay đổi để cập nhật khối dữ liệu bán hàng
+        @Index(name = "idx_orders_updated", columnList = "updated_at"),
+        // Phục vụ các truy vấn theo khoảng ngày tạo (xuất CSV, thống kê)
+        @Index(name = "idx_orders_created", columnList = "created_at"),
+        // Phục vụ tìm đơn COMPLETED của user để xét quyền đánh giá
+        @Index(name = "idx_orders_user_status", columnList = "user_id, status")
+})
 @Data
 public class Order {
     @Id
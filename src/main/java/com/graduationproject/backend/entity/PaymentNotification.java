@@ -0,0 +1,56 @@
+package com.graduationproject.backend.entity;
+
+import com.graduationproject.backend.entity.enums.NotificationStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.sql.Timestamp;
+
+// Thông báo IPN từ VNPay, mỗi cặp (vnp_TxnRef, vnp_TransactionNo) chỉ được ghi nhận và xử lý một lần
+@Entity
+@Table(name = "payment_notifications",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_payment_notifications_txn", columnNames = {"txn_ref", "transaction_no"})
+        },
+        indexes = {
+                @Index(name = "idx_payment_notifications_status_received", columnList = "status, received_at"),
+                @Index(name = "idx_payment_notifications_status_claimed", columnList = "status, claimed_at")
+        })
+@Data
+public class PaymentNotification {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(name = "txn_ref", nullable = false, length = 100)
+    private String txnRef; // vnp_TxnRef = orderId
+
+    @Column(name = "transaction_no", nullable = false, length = 100)
+    private String transactionNo; // vnp_TransactionNo, chuỗi rỗng nếu VNPay không gửi
+
+    @Column(length = 10)
+    private String responseCode;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String rawParams; // Toàn bộ tham số IPN (JSON) để worker xử lý lại
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private NotificationStatus status;
+
+    @CreationTimestamp
+    @Column(name = "received_at", updatable = false)
+    private Timestamp receivedAt;
+
+    @Column(name = "claimed_at")
+    private Timestamp claimedAt; // Lần cuối một worker nhận xử lý (PROCESSING quá lâu = worker đã chết)
+
+    @Column(nullable = false)
+    private int attempts; // Số lần đã nhận xử lý, giới hạn số lần thử lại khi FAILED
+
+    private Timestamp processedAt;
+
+    @Column(length = 500)
+    private String errorMessage;
+}
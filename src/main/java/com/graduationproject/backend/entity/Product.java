@@ -65,12 +65,41 @@ public class Product {
     @CreationTimestamp
     private Timestamp createdAt;
 
-    @Column(name = "average_rating", precision = 3, scale = 2) // Ví dụ: 4.50
+    // Các cột đánh giá chỉ được ghi bằng UPDATE cộng dồn trong ProductRepository (updatable = false),
+    // để lần lưu entity sản phẩm (sửa thông tin, trừ tồn kho) không ghi đè số liệu mới hơn
+    @Column(name = "average_rating", precision = 3, scale = 2, updatable = false) // Ví dụ: 4.50
     private BigDecimal averageRating;
 
-    @Column(name = "review_count")
+    @Column(name = "review_count", updatable = false)
     private Integer reviewCount;
 
+    // Tổng điểm và số lượng đánh giá HIỂN THỊ; averageRating = ratingSum / ratingCount
+    @Column(name = "rating_sum", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long ratingSum;
+
+    @Column(name = "rating_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int ratingCount;
+
+    // Phân bố số đánh giá HIỂN THỊ theo số sao (1-5), cập nhật cùng câu UPDATE với ratingSum/ratingCount
+    @Column(name = "rating_1_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int rating1Count;
+
+    @Column(name = "rating_2_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int rating2Count;
+
+    @Column(name = "rating_3_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int rating3Count;
+
+    @Column(name = "rating_4_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int rating4Count;
+
+    @Column(name = "rating_5_count", nullable = false, updatable = false, columnDefinition = "int default 0")
+    private int rating5Count;
+
+    // Tăng mỗi lần đánh giá của sản phẩm thay đổi; cache trang đầu đánh giá ở mọi node so sánh để biết đã cũ
+    @Column(name = "reviews_version", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long reviewsVersion;
+
     @Column(name = "is_visible", nullable = false, columnDefinition = "BOOLEAN DEFAULT TRUE")
     private boolean visible = true;
 
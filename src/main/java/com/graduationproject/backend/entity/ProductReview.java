@@ -13,6 +13,10 @@ import java.sql.Timestamp;
 @Table(name = "product_reviews",
         uniqueConstraints = {
                 @UniqueConstraint(columnNames = {"user_id", "product_id", "order_id"})
+        },
+        indexes = {
+                // Phân trang keyset đánh giá hiển thị của sản phẩm theo (review_date, review_id) giảm dần
+                @Index(name = "idx_reviews_product_visible_date", columnList = "product_id, is_visible, review_date, review_id")
         })
 @Data
 @NoArgsConstructor
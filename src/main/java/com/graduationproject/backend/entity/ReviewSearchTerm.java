@@ -0,0 +1,47 @@
+package com.graduationproject.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Chỉ mục ngược cho nội dung đánh giá: mỗi dòng là một từ (đã bỏ dấu) xuất hiện trong một đánh giá.
+// Khóa chính tự nhiên (term, review_id): không dùng IDENTITY để các dòng được ghi bằng INSERT nhiều dòng
+@Entity
+@Table(name = "review_search_terms",
+        indexes = {
+                @Index(name = "idx_review_search_terms_review", columnList = "review_id")
+        })
+@IdClass(ReviewSearchTerm.Key.class)
+@Data
+@NoArgsConstructor
+public class ReviewSearchTerm {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String term;
+        private Long reviewId;
+    }
+
+    @Id
+    @Column(name = "term", nullable = false, length = 64)
+    private String term;
+
+    // Không map quan hệ để xóa/ghi lại chỉ mục bằng câu lệnh hàng loạt
+    @Id
+    @Column(name = "review_id", nullable = false)
+    private Long reviewId;
+
+    @Column(name = "tf", nullable = false)
+    private int tf; // Số lần xuất hiện của từ trong đánh giá
+
+    public ReviewSearchTerm(String term, Long reviewId, int tf) {
+        this.term = term;
+        this.reviewId = reviewId;
+        this.tf = tf;
+    }
+}
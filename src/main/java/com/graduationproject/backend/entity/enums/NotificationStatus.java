@@ -0,0 +1,5 @@
+package com.graduationproject.backend.entity.enums;
+
+public enum NotificationStatus {
+    RECEIVED, PROCESSING, PROCESSED, FAILED;
+}
@@ -0,0 +1,19 @@
+package com.graduationproject.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Phiên bản client gửi lên (If-Match) không khớp phiên bản hiện tại của tài nguyên
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends RuntimeException {
+    private final String currentETag;
+
+    public PreconditionFailedException(String message, String currentETag) {
+        super(message);
+        this.currentETag = currentETag;
+    }
+
+    public String getCurrentETag() {
+        return currentETag;
+    }
+}
@@ -0,0 +1,65 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.ArchivedOrder;
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ArchivedOrderRepository extends JpaRepository<ArchivedOrder, Integer> {
+
+    // Lấy đơn lưu trữ kèm items + product (dùng cho các luồng đọc fallback)
+    @Query("SELECT DISTINCT o FROM ArchivedOrder o LEFT JOIN FETCH o.orderItems oi LEFT JOIN FETCH oi.product WHERE o.orderId = :orderId")
+    Optional<ArchivedOrder> findByIdWithItems(@Param("orderId") int orderId);
+
+    // Cùng cấu trúc với OrderRepository.findPaymentSnapshotsByIdIn, dùng khi đối soát đơn đã lưu trữ
+    @Query("SELECT o.orderId, o.status, o.totalAmount, o.vnpayTransactionId, o.paymentMethod FROM ArchivedOrder o WHERE o.orderId IN :ids")
+    List<Object[]> findPaymentSnapshotsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Cùng cấu trúc với OrderRepository.findPaymentSnapshotsAfterId (keyset theo orderId)
+    @Query("""
+            SELECT o.orderId, o.status, o.totalAmount, o.vnpayTransactionId, o.paymentMethod FROM ArchivedOrder o
+            WHERE o.paymentMethod = :paymentMethod
+              AND o.status IN :statuses
+              AND o.createdAt >= :from AND o.createdAt < :to
+              AND o.orderId > :afterId
+            ORDER BY o.orderId ASC
+            """)
+    List<Object[]> findPaymentSnapshotsAfterId(@Param("paymentMethod") PaymentMethod paymentMethod,
+                                               @Param("statuses") Collection<OrderStatus> statuses,
+                                               @Param("from") Timestamp from,
+                                               @Param("to") Timestamp to,
+                                               @Param("afterId") int afterId,
+                                               Pageable pageable);
+
+    // Sao chép nguyên khối các đơn hàng từ bảng nóng sang bảng lưu trữ (set-based, không load entity)
+    @Modifying
+    @Query(value = """
+            INSERT INTO orders_archive (order_id, user_id, total_amount, status, payment_method, vnpay_transaction_id,
+                                        created_at, cancellation_reason, full_name_shipping, address_shipping,
+                                        phone_shipping, notes, updated_at, archived_at)
+            SELECT order_id, user_id, total_amount, status, payment_method, vnpay_transaction_id,
+                   created_at, cancellation_reason, full_name_shipping, address_shipping,
+                   phone_shipping, notes, updated_at, :archivedAt
+            FROM orders
+            WHERE order_id IN (:orderIds)
+            """, nativeQuery = true)
+    int copyOrdersToArchive(@Param("orderIds") List<Integer> orderIds, @Param("archivedAt") Timestamp archivedAt);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO order_items_archive (order_item_id, order_id, product_id, quantity, price)
+            SELECT order_item_id, order_id, product_id, quantity, price
+            FROM order_items
+            WHERE order_id IN (:orderIds)
+            """, nativeQuery = true)
+    int copyOrderItemsToArchive(@Param("orderIds") List<Integer> orderIds);
+}
@@ -29,6 +29,11 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     int deleteByCartCartIdAndProductId(Long cartId, Integer productId);
     // Trả về int (số dòng đã xóa, thường là 1 hoặc 0)
 
+    /** Xóa toàn bộ item của nhiều cart (dùng trước khi xóa hàng loạt carts) */
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.cartId IN :cartIds")
+    int deleteByCartCartIdIn(@Param("cartIds") List<Long> cartIds);
+
     /** Đếm số item còn lại trong cart (Cách khác thay cho load lại Cart) */
     long countByCartCartId(Long cartId);
 
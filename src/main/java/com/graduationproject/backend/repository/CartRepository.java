@@ -1,13 +1,53 @@
 package com.graduationproject.backend.repository;
 
 import com.graduationproject.backend.entity.Cart;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository; // Thêm @Repository nếu cần
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
     Optional<Cart> findByUserId(Long userId);
+
+    // Đọc khóa: luôn thấy bản đã commit mới nhất kể cả khi transaction đang giữ snapshot cũ
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Cart c WHERE c.userId = :userId")
+    Optional<Cart> findByUserIdForUpdate(@Param("userId") Long userId);
+
+    boolean existsByUserId(Long userId);
+
+    @Query("SELECT c.version FROM Cart c WHERE c.cartId = :cartId")
+    Optional<Long> findVersionById(@Param("cartId") Long cartId);
+
+    // Ghi có điều kiện: chỉ đổi phiên bản khi dòng vẫn ở phiên bản đã nạp; 0 dòng = đã bị ghi ở nơi khác
+    @Modifying
+    @Query("UPDATE Cart c SET c.version = :newVersion, c.lastUpdated = :now WHERE c.cartId = :cartId AND c.version = :expectedVersion")
+    int compareAndSetVersion(@Param("cartId") Long cartId, @Param("expectedVersion") long expectedVersion,
+                             @Param("newVersion") long newVersion, @Param("now") Timestamp now);
     void deleteByUserId(Long userId); // Thêm nếu cần xóa cart theo userId trực tiếp
-}
\ No newline at end of file
+
+    // Giỏ không thay đổi từ trước mốc cutoff, quét theo index last_updated (cũ nhất trước)
+    // excludedIds: giỏ đã bị bỏ qua ở lô trước trong cùng lượt chạy (không được rỗng)
+    @Query("SELECT c.cartId FROM Cart c WHERE c.lastUpdated < :cutoff AND c.cartId NOT IN :excludedIds ORDER BY c.lastUpdated ASC")
+    List<Long> findIdleCartIds(@Param("cutoff") Timestamp cutoff, @Param("excludedIds") Collection<Long> excludedIds, Pageable pageable);
+
+    // Khóa và lọc lại bên trong transaction xóa: giỏ vừa được cập nhật (trên node khác) sẽ bị loại
+    // Trả về [cartId, userId]
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c.cartId, c.userId FROM Cart c WHERE c.cartId IN :ids AND c.lastUpdated < :cutoff")
+    List<Object[]> lockIdleCarts(@Param("ids") List<Long> ids, @Param("cutoff") Timestamp cutoff);
+
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.cartId IN :ids")
+    int deleteByCartIdIn(@Param("ids") List<Long> ids);
+}
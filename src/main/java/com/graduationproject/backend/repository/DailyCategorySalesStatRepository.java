@@ -0,0 +1,78 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.DailyCategorySalesStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyCategorySalesStatRepository extends JpaRepository<DailyCategorySalesStat, Long> {
+
+    // Dòng sản phẩm của các đơn được tính trong [fromTs, toTs) theo [ngày, danh mục, số lượng, doanh thu]
+    String COUNTED_ITEMS = """
+            (SELECT DATE(o.created_at) AS stat_date, p.category_id, oi.quantity, oi.price * oi.quantity AS revenue
+               FROM orders o JOIN order_items oi ON oi.order_id = o.order_id JOIN products p ON p.product_id = oi.product_id
+              WHERE o.status IN ('PAID', 'COMPLETED') AND o.created_at >= :fromTs AND o.created_at < :toTs
+                AND p.category_id IS NOT NULL
+             UNION ALL
+             SELECT DATE(a.created_at), p.category_id, ai.quantity, ai.price * ai.quantity
+               FROM orders_archive a JOIN order_items_archive ai ON ai.order_id = a.order_id JOIN products p ON p.product_id = ai.product_id
+              WHERE a.status IN ('PAID', 'COMPLETED') AND a.created_at >= :fromTs AND a.created_at < :toTs
+                AND p.category_id IS NOT NULL)
+            """;
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO stat_daily_category_sales (stat_date, category_id, quantity, revenue)
+            SELECT DATE(o.created_at), p.category_id, :sign * SUM(oi.quantity), :sign * SUM(oi.price * oi.quantity)
+            FROM orders o
+            JOIN order_items oi ON oi.order_id = o.order_id
+            JOIN products p ON p.product_id = oi.product_id
+            WHERE o.order_id = :orderId AND p.category_id IS NOT NULL
+            GROUP BY DATE(o.created_at), p.category_id
+            ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), revenue = revenue + VALUES(revenue)
+            """, nativeQuery = true)
+    int applyOrderDelta(@Param("orderId") int orderId, @Param("sign") int sign);
+
+    // Trả về [tên danh mục, doanh thu]
+    @Query("""
+            SELECT c.name, SUM(s.revenue) FROM DailyCategorySalesStat s, Category c
+            WHERE c.categoryId = s.categoryId AND s.statDate BETWEEN :from AND :to
+            GROUP BY c.name
+            HAVING SUM(s.quantity) > 0
+            ORDER BY SUM(s.revenue) DESC
+            """)
+    List<Object[]> sumRevenueByCategory(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // --- Dựng lại và kiểm tra ---
+
+    @Modifying
+    @Query("DELETE FROM DailyCategorySalesStat s WHERE s.statDate BETWEEN :from AND :to")
+    int deleteByStatDateBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query(value = "INSERT INTO stat_daily_category_sales (stat_date, category_id, quantity, revenue) "
+            + "SELECT i.stat_date, i.category_id, SUM(i.quantity), SUM(i.revenue) FROM " + COUNTED_ITEMS + " i "
+            + "GROUP BY i.stat_date, i.category_id", nativeQuery = true)
+    int rebuildRange(@Param("fromTs") Timestamp fromTs, @Param("toTs") Timestamp toTs);
+
+    // Trả về [ngày, danh mục, số lượng, doanh thu] tính từ đơn hàng gốc theo danh mục HIỆN TẠI của sản phẩm.
+    // So theo (ngày, danh mục) chứ không chỉ theo ngày: delta của đơn đổi trạng thái sau khi sản phẩm đổi danh mục
+    // bị trừ/cộng vào danh mục mới nên tổng của ngày vẫn khớp dù từng danh mục đã lệch
+    @Query(value = "SELECT i.stat_date, i.category_id, SUM(i.quantity), SUM(i.revenue) FROM " + COUNTED_ITEMS + " i "
+            + "GROUP BY i.stat_date, i.category_id", nativeQuery = true)
+    List<Object[]> findSourceCategoryTotals(@Param("fromTs") Timestamp fromTs, @Param("toTs") Timestamp toTs);
+
+    // Trả về [ngày, danh mục, số lượng, doanh thu] đang lưu trong bảng tổng hợp
+    @Query("""
+            SELECT s.statDate, s.categoryId, s.quantity, s.revenue FROM DailyCategorySalesStat s
+            WHERE s.statDate BETWEEN :from AND :to
+            """)
+    List<Object[]> findCategoryTotals(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
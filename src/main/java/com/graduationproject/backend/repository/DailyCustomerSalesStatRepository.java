@@ -0,0 +1,55 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.DailyCustomerSalesStat;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyCustomerSalesStatRepository extends JpaRepository<DailyCustomerSalesStat, Long> {
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO stat_daily_customer_sales (stat_date, user_id, order_count, revenue)
+            SELECT DATE(o.created_at), o.user_id, :sign, :sign * o.total_amount FROM orders o WHERE o.order_id = :orderId
+            ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)
+            """, nativeQuery = true)
+    int applyOrderDelta(@Param("orderId") int orderId, @Param("sign") int sign);
+
+    // Top N khách hàng theo doanh thu: [userId, tên khách hàng, doanh thu], LIMIT thực hiện trong SQL qua Pageable
+    @Query("""
+            SELECT u.userId, CONCAT(u.firstName, ' ', u.lastName), SUM(s.revenue) FROM DailyCustomerSalesStat s, User u
+            WHERE u.userId = s.userId AND s.statDate BETWEEN :from AND :to
+            GROUP BY u.userId, u.firstName, u.lastName
+            HAVING SUM(s.orderCount) > 0
+            ORDER BY SUM(s.revenue) DESC, u.userId ASC
+            """)
+    List<Object[]> sumRevenueByCustomer(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+
+    // --- Dựng lại và kiểm tra ---
+
+    @Modifying
+    @Query("DELETE FROM DailyCustomerSalesStat s WHERE s.statDate BETWEEN :from AND :to")
+    int deleteByStatDateBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query(value = "INSERT INTO stat_daily_customer_sales (stat_date, user_id, order_count, revenue) "
+            + "SELECT DATE(c.created_at), c.user_id, COUNT(*), SUM(c.total_amount) FROM " + DailySalesStatRepository.COUNTED_ORDERS + " c "
+            + "GROUP BY DATE(c.created_at), c.user_id", nativeQuery = true)
+    int rebuildRange(@Param("fromTs") Timestamp fromTs, @Param("toTs") Timestamp toTs);
+
+    // Trả về [ngày, số đơn, doanh thu] đang lưu trong bảng tổng hợp (nguồn so sánh giống bảng theo ngày)
+    @Query("""
+            SELECT s.statDate, SUM(s.orderCount), SUM(s.revenue) FROM DailyCustomerSalesStat s
+            WHERE s.statDate BETWEEN :from AND :to
+            GROUP BY s.statDate
+            """)
+    List<Object[]> findDailyTotals(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
@@ -0,0 +1,72 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.DailySalesStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailySalesStatRepository extends JpaRepository<DailySalesStat, LocalDate> {
+
+    // Đơn được tính vào thống kê trong [fromTs, toTs), gồm cả đơn đã chuyển sang bảng lưu trữ
+    String COUNTED_ORDERS = """
+            (SELECT o.user_id, o.total_amount, o.created_at FROM orders o
+              WHERE o.status IN ('PAID', 'COMPLETED') AND o.created_at >= :fromTs AND o.created_at < :toTs
+             UNION ALL
+             SELECT a.user_id, a.total_amount, a.created_at FROM orders_archive a
+              WHERE a.status IN ('PAID', 'COMPLETED') AND a.created_at >= :fromTs AND a.created_at < :toTs)
+            """;
+
+    // Cộng (sign = 1) hoặc trừ (sign = -1) một đơn hàng vào ngày tạo của nó
+    @Modifying
+    @Query(value = """
+            INSERT INTO stat_daily_sales (stat_date, order_count, revenue)
+            SELECT DATE(o.created_at), :sign, :sign * o.total_amount FROM orders o WHERE o.order_id = :orderId
+            ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)
+            """, nativeQuery = true)
+    int applyOrderDelta(@Param("orderId") int orderId, @Param("sign") int sign);
+
+    @Query("SELECT s FROM DailySalesStat s WHERE s.statDate BETWEEN :from AND :to AND s.orderCount > 0 ORDER BY s.statDate")
+    List<DailySalesStat> findActiveDays(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Tổng doanh thu từ trước đến nay (cho dashboard)
+    @Query("SELECT COALESCE(SUM(s.revenue), 0) FROM DailySalesStat s")
+    BigDecimal sumRevenue();
+
+    // --- Dựng lại và kiểm tra ---
+
+    @Modifying
+    @Query("DELETE FROM DailySalesStat s WHERE s.statDate BETWEEN :from AND :to")
+    int deleteByStatDateBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query(value = "INSERT INTO stat_daily_sales (stat_date, order_count, revenue) "
+            + "SELECT DATE(c.created_at), COUNT(*), SUM(c.total_amount) FROM " + COUNTED_ORDERS + " c "
+            + "GROUP BY DATE(c.created_at)", nativeQuery = true)
+    int rebuildRange(@Param("fromTs") Timestamp fromTs, @Param("toTs") Timestamp toTs);
+
+    // Trả về [ngày, số đơn, doanh thu] tính từ đơn hàng gốc
+    @Query(value = "SELECT DATE(c.created_at), COUNT(*), SUM(c.total_amount) FROM " + COUNTED_ORDERS + " c "
+            + "GROUP BY DATE(c.created_at)", nativeQuery = true)
+    List<Object[]> findSourceDailyTotals(@Param("fromTs") Timestamp fromTs, @Param("toTs") Timestamp toTs);
+
+    // Trả về [ngày, số đơn, doanh thu] đang lưu trong bảng tổng hợp
+    @Query("SELECT s.statDate, s.orderCount, s.revenue FROM DailySalesStat s WHERE s.statDate BETWEEN :from AND :to")
+    List<Object[]> findDailyTotals(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query(value = """
+            SELECT MIN(t.created_at) FROM (
+              SELECT MIN(created_at) AS created_at FROM orders WHERE status IN ('PAID', 'COMPLETED')
+              UNION ALL
+              SELECT MIN(created_at) FROM orders_archive WHERE status IN ('PAID', 'COMPLETED')
+            ) t
+            """, nativeQuery = true)
+    Timestamp findFirstCountedOrderAt();
+}
@@ -0,0 +1,23 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    // Giành lease nếu đã hết hạn hoặc chính node này đang giữ (UPDATE có điều kiện, nguyên tử)
+    @Modifying
+    @Query("UPDATE JobLease l SET l.owner = :owner, l.leaseUntil = :leaseUntil WHERE l.jobName = :jobName AND (l.leaseUntil < :now OR l.owner = :owner)")
+    int tryAcquire(@Param("jobName") String jobName, @Param("owner") String owner,
+                   @Param("now") Timestamp now, @Param("leaseUntil") Timestamp leaseUntil);
+
+    // Trả lease sớm khi job chạy xong
+    @Modifying
+    @Query("UPDATE JobLease l SET l.leaseUntil = :now WHERE l.jobName = :jobName AND l.owner = :owner")
+    int release(@Param("jobName") String jobName, @Param("owner") String owner, @Param("now") Timestamp now);
+}
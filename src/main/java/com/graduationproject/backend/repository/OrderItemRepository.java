@@ -3,7 +3,9 @@ package com.graduationproject.backend.repository;
 import com.graduationproject.backend.entity.OrderItem;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -20,18 +22,32 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Integer> {
            JOIN oi.order o
            WHERE (o.status = 'PAID' OR o.status = 'COMPLETED') 
            GROUP BY oi.product.productId, oi.product.name
-           ORDER BY totalQuantity DESC
+           ORDER BY totalQuantity DESC, oi.product.productId ASC
            """)
     List<Object[]> findTopSellingProducts(Pageable pageable); // Dùng Pageable để giới hạn số lượng (Top N)
 
-    // Có thể thêm query cho top sản phẩm theo doanh thu nếu cần
+    // Top sản phẩm theo doanh thu --Chỉ tính các đơn đã thanh toán/hoàn thành
     @Query("""
             SELECT oi.product.productId as productId, oi.product.name as productName, SUM(oi.price * oi.quantity) as totalRevenue
             FROM OrderItem oi
             JOIN oi.order o
             WHERE (o.status = 'PAID' OR o.status = 'COMPLETED')
             GROUP BY oi.product.productId, oi.product.name
-            ORDER BY totalRevenue DESC
+            ORDER BY totalRevenue DESC, oi.product.productId ASC
             """)
-    List<Object[]> findTopRevenueProducts(Pageable pageable);
+    List<Object[]> findTopRevenueProducts(Pageable pageable); // Dùng Pageable để giới hạn số lượng (Top N)
+
+    // Tổng số lượng theo sản phẩm cho một nhóm đơn hàng (dùng để hoàn kho gộp, mỗi sản phẩm một UPDATE)
+    // Trả về List Object[] { productId, totalQuantity }
+    @Query("""
+            SELECT oi.product.productId as productId, SUM(oi.quantity) as totalQuantity
+            FROM OrderItem oi
+            WHERE oi.order.orderId IN :orderIds
+            GROUP BY oi.product.productId
+            """)
+    List<Object[]> sumQuantityByProductForOrders(@Param("orderIds") List<Integer> orderIds);
+
+    @Modifying
+    @Query("DELETE FROM OrderItem oi WHERE oi.order.orderId IN :orderIds")
+    int deleteByOrderIdIn(@Param("orderIds") List<Integer> orderIds);
 }
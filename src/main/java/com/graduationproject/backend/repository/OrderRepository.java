@@ -2,16 +2,22 @@ package com.graduationproject.backend.repository;
 
 import com.graduationproject.backend.entity.Order;
 import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpecificationExecutor<Order> {
     Page<Order> findByUserId(long userId, Pageable pageable);
@@ -19,6 +25,9 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
     @Query("SELECT o FROM Order o JOIN o.orderItems oi WHERE o.userId = :userId AND oi.product.productId = :productId AND o.status = 'COMPLETED' ORDER BY o.createdAt DESC")
     List<Order> findCompletedOrdersByUserAndProduct(@Param("userId") Long userId, @Param("productId") Integer productId);
 
+    @Query("SELECT COUNT(o) > 0 FROM Order o JOIN o.orderItems oi WHERE o.userId = :userId AND oi.product.productId = :productId AND o.status = 'COMPLETED'")
+    boolean existsCompletedOrderByUserAndProduct(@Param("userId") Long userId, @Param("productId") Integer productId);
+
     // Thống kê tổng số đơn hàng theo trạng thái trong một khoảng thời gian
     @Query("SELECT COUNT(o) FROM Order o WHERE o.createdAt BETWEEN :startDate AND :endDate AND o.status = :status")
     long countByCreatedAtBetweenAndStatus(@Param("startDate") Timestamp startDate, @Param("endDate") Timestamp endDate, @Param("status") OrderStatus status);
@@ -58,9 +67,10 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
             WHERE o.createdAt BETWEEN :startDate AND :endDate
               AND (o.status = 'PAID' OR o.status = 'COMPLETED')
             GROUP BY u.userId, customerName
-            ORDER BY customerRevenue DESC
+            ORDER BY customerRevenue DESC, u.userId ASC
             """)
-    List<Object[]> sumRevenueByCustomer(@Param("startDate") Timestamp startDate, @Param("endDate") Timestamp endDate);
+    List<Object[]> sumRevenueByCustomer(@Param("startDate") Timestamp startDate, @Param("endDate") Timestamp endDate,
+                                        Pageable pageable); // Top N: LIMIT thực hiện trong SQL
 
     // Top khách hàng theo số lượng đơn HOÀN THÀNH
     @Query("""
@@ -69,7 +79,7 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
             JOIN User u ON o.userId = u.userId
             WHERE o.status = 'COMPLETED'
             GROUP BY u.userId, customerName
-            ORDER BY orderCount DESC
+            ORDER BY orderCount DESC, u.userId ASC
             """)
     List<Object[]> countCompletedOrdersByCustomer(Pageable pageable); // Dùng Pageable để giới hạn số lượng (Top N)
 
@@ -80,7 +90,7 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
             JOIN User u ON o.userId = u.userId
             WHERE o.status = 'CANCELED'
             GROUP BY u.userId, customerName
-            ORDER BY cancelCount DESC
+            ORDER BY cancelCount DESC, u.userId ASC
             """)
     List<Object[]> countCanceledOrdersByCustomer(Pageable pageable); // Dùng Pageable để giới hạn số lượng (Top N)
 
@@ -89,4 +99,82 @@ public interface OrderRepository extends JpaRepository<Order, Integer>, JpaSpeci
 
     // Tổng số đơn hàng theo trạng thái (cho dashboard)
     long countByStatus(OrderStatus status);
+
+    // Số đơn hàng theo từng trạng thái trong một truy vấn: [status, count]
+    @Query("SELECT o.status, COUNT(o) FROM Order o GROUP BY o.status")
+    List<Object[]> countGroupByStatus();
+
+    // Số đơn hàng theo trạng thái trong một lô id: [status, count]
+    @Query("SELECT o.status, COUNT(o) FROM Order o WHERE o.orderId IN :ids GROUP BY o.status")
+    List<Object[]> countByOrderIdInGroupByStatus(@Param("ids") List<Integer> ids);
+
+    // Lấy ID các đơn hàng theo trạng thái + phương thức thanh toán tạo trước mốc thời gian (dùng index idx_orders_status_method_created)
+    @Query("SELECT o.orderId FROM Order o WHERE o.status = :status AND o.paymentMethod = :paymentMethod AND o.createdAt < :cutoff ORDER BY o.createdAt ASC")
+    List<Integer> findIdsByStatusAndPaymentMethodCreatedBefore(@Param("status") OrderStatus status,
+                                                               @Param("paymentMethod") PaymentMethod paymentMethod,
+                                                               @Param("cutoff") Timestamp cutoff,
+                                                               Pageable pageable);
+
+    // Khóa (SELECT ... FOR UPDATE) các đơn hàng vẫn còn ở trạng thái cho trước, tránh xử lý chồng chéo với luồng khác
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.orderId IN :ids AND o.status = :status")
+    List<Order> lockByIdInAndStatus(@Param("ids") List<Integer> ids, @Param("status") OrderStatus status);
+
+    // Khóa một đơn hàng khi áp dụng kết quả thanh toán (return redirect và IPN có thể đến cùng lúc)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.orderId = :orderId")
+    Optional<Order> findByIdForUpdate(@Param("orderId") int orderId);
+
+    // --- Đối soát VNPay: chỉ lấy các cột cần so khớp (orderId, status, totalAmount, vnpayTransactionId, paymentMethod) ---
+
+    @Query("SELECT o.orderId, o.status, o.totalAmount, o.vnpayTransactionId, o.paymentMethod FROM Order o WHERE o.orderId IN :ids")
+    List<Object[]> findPaymentSnapshotsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Keyset theo orderId để duyệt theo từng khối đã sắp xếp, không dùng OFFSET
+    @Query("""
+            SELECT o.orderId, o.status, o.totalAmount, o.vnpayTransactionId, o.paymentMethod FROM Order o
+            WHERE o.paymentMethod = :paymentMethod
+              AND o.status IN :statuses
+              AND o.createdAt >= :from AND o.createdAt < :to
+              AND o.orderId > :afterId
+            ORDER BY o.orderId ASC
+            """)
+    List<Object[]> findPaymentSnapshotsAfterId(@Param("paymentMethod") PaymentMethod paymentMethod,
+                                               @Param("statuses") Collection<OrderStatus> statuses,
+                                               @Param("from") Timestamp from,
+                                               @Param("to") Timestamp to,
+                                               @Param("afterId") int afterId,
+                                               Pageable pageable);
+
+    // Ứng viên lưu trữ: đơn đã đóng, cập nhật lần cuối trước mốc, không bị review/hóa đơn tham chiếu (FK)
+    @Query("""
+            SELECT o.orderId FROM Order o
+            WHERE o.status IN :statuses
+              AND o.updatedAt < :cutoff
+              AND NOT EXISTS (SELECT 1 FROM ProductReview pr WHERE pr.order = o)
+              AND NOT EXISTS (SELECT 1 FROM Invoice i WHERE i.order = o)
+            ORDER BY o.orderId ASC
+            """)
+    List<Integer> findArchivableOrderIds(@Param("statuses") Collection<OrderStatus> statuses,
+                                         @Param("cutoff") Timestamp cutoff,
+                                         Pageable pageable);
+
+    // Khóa lại và lọc lần nữa bên trong transaction lưu trữ (tránh tranh chấp với review/hóa đơn mới)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            SELECT o.orderId FROM Order o
+            WHERE o.orderId IN :ids
+              AND o.status IN :statuses
+              AND NOT EXISTS (SELECT 1 FROM ProductReview pr WHERE pr.order = o)
+              AND NOT EXISTS (SELECT 1 FROM Invoice i WHERE i.order = o)
+            """)
+    List<Integer> lockArchivableOrderIds(@Param("ids") List<Integer> ids, @Param("statuses") Collection<OrderStatus> statuses);
+
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.orderId IN :ids")
+    int deleteByOrderIdIn(@Param("ids") List<Integer> ids);
+
+    // Lấy userId của đơn hàng mà không load entity (dùng để kiểm tra quyền)
+    @Query("SELECT o.userId FROM Order o WHERE o.orderId = :orderId")
+    Optional<Long> findUserIdByOrderId(@Param("orderId") int orderId);
 }
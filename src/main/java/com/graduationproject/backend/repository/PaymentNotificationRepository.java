@@ -0,0 +1,47 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.PaymentNotification;
+import com.graduationproject.backend.entity.enums.NotificationStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public interface PaymentNotificationRepository extends JpaRepository<PaymentNotification, Long> {
+
+    // Giành quyền xử lý thông báo (chỉ một worker thắng): thông báo mới, PROCESSING bị bỏ lại quá hạn,
+    // hoặc FAILED còn lượt thử và đã chờ đủ lâu. attempts tăng mỗi lần nhận và là "vé" của worker thắng
+    @Modifying
+    @Query("UPDATE PaymentNotification n SET n.status = com.graduationproject.backend.entity.enums.NotificationStatus.PROCESSING, " +
+            "n.claimedAt = :now, n.attempts = n.attempts + 1 " +
+            "WHERE n.id = :id AND (n.status = com.graduationproject.backend.entity.enums.NotificationStatus.RECEIVED " +
+            "OR (n.status = com.graduationproject.backend.entity.enums.NotificationStatus.PROCESSING AND n.claimedAt < :claimedBefore) " +
+            "OR (n.status = com.graduationproject.backend.entity.enums.NotificationStatus.FAILED AND n.attempts < :maxAttempts AND n.processedAt < :failedBefore))")
+    int claim(@Param("id") long id, @Param("now") Timestamp now, @Param("claimedBefore") Timestamp claimedBefore,
+              @Param("maxAttempts") int maxAttempts, @Param("failedBefore") Timestamp failedBefore);
+
+    // Chỉ worker đang giữ lượt nhận (attempts khớp) được ghi kết quả; worker bị coi là chết mà chạy xong muộn sẽ bị bỏ qua
+    @Modifying
+    @Query("UPDATE PaymentNotification n SET n.status = :status, n.processedAt = :processedAt, n.errorMessage = :errorMessage " +
+            "WHERE n.id = :id AND n.status = com.graduationproject.backend.entity.enums.NotificationStatus.PROCESSING AND n.attempts = :attempt")
+    int markFinished(@Param("id") long id, @Param("attempt") int attempt, @Param("status") NotificationStatus status,
+                     @Param("processedAt") Timestamp processedAt, @Param("errorMessage") String errorMessage);
+
+    // Thông báo đã nhận nhưng chưa được đưa vào worker (hàng đợi đầy, restart, ...)
+    @Query("SELECT n.id FROM PaymentNotification n WHERE n.status = :status AND n.receivedAt < :before ORDER BY n.receivedAt ASC")
+    List<Long> findIdsByStatusReceivedBefore(@Param("status") NotificationStatus status, @Param("before") Timestamp before, Pageable pageable);
+
+    // Thông báo PROCESSING mà worker nhận đã lâu không xong (node chết giữa chừng)
+    @Query("SELECT n.id FROM PaymentNotification n WHERE n.status = com.graduationproject.backend.entity.enums.NotificationStatus.PROCESSING " +
+            "AND n.claimedAt < :before ORDER BY n.claimedAt ASC")
+    List<Long> findIdsStuckProcessing(@Param("before") Timestamp before, Pageable pageable);
+
+    // Thông báo FAILED còn lượt thử lại
+    @Query("SELECT n.id FROM PaymentNotification n WHERE n.status = com.graduationproject.backend.entity.enums.NotificationStatus.FAILED " +
+            "AND n.attempts < :maxAttempts AND n.processedAt < :before ORDER BY n.processedAt ASC")
+    List<Long> findIdsRetryableFailed(@Param("maxAttempts") int maxAttempts, @Param("before") Timestamp before, Pageable pageable);
+}
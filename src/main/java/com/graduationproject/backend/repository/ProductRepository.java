@@ -1,14 +1,17 @@
 package com.graduationproject.backend.repository;
 
 import com.graduationproject.backend.entity.Product;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,6 +42,116 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     @Query("UPDATE Product p SET p.stock = p.stock + :quantity WHERE p.productId = :productId")
     int increaseStock(@Param("productId") int productId, @Param("quantity") int quantity);
 
+    // --- Tổng hợp đánh giá ---
+
+    // Cộng dồn thay đổi của một đánh giá (tổng điểm, số lượng và phân bố sao) trong một câu UPDATE.
+    // MySQL gán giá trị từ trái sang phải nên average_rating/review_count phải đứng trước rating_sum/rating_count.
+    // Bỏ qua sản phẩm chưa được dựng lại số liệu (review_count cũ > 0 nhưng rating_count còn 0): cộng delta từ 0
+    // sẽ ghi đè điểm trung bình cũ; lần dựng lại tính từ product_reviews nên đã gồm cả thay đổi này
+    @Modifying
+    @Query(value = """
+            UPDATE products
+            SET average_rating = CASE WHEN rating_count + :countDelta > 0
+                                      THEN ROUND((rating_sum + :sumDelta) / (rating_count + :countDelta), 2)
+                                      ELSE 0 END,
+                review_count = rating_count + :countDelta,
+                rating_sum = rating_sum + :sumDelta,
+                rating_count = rating_count + :countDelta,
+                rating_1_count = rating_1_count + :d1,
+                rating_2_count = rating_2_count + :d2,
+                rating_3_count = rating_3_count + :d3,
+                rating_4_count = rating_4_count + :d4,
+                rating_5_count = rating_5_count + :d5
+            WHERE product_id = :productId AND NOT (rating_count = 0 AND COALESCE(review_count, 0) > 0)
+            """, nativeQuery = true)
+    int applyRatingDelta(@Param("productId") int productId, @Param("sumDelta") long sumDelta, @Param("countDelta") int countDelta,
+                         @Param("d1") int d1, @Param("d2") int d2, @Param("d3") int d3, @Param("d4") int d4, @Param("d5") int d5);
+
+    // Ghi đè bằng giá trị tính lại từ product_reviews (dùng khi sửa sai lệch)
+    @Modifying
+    @Query(value = """
+            UPDATE products
+            SET average_rating = CASE WHEN :ratingCount > 0 THEN ROUND(:ratingSum / :ratingCount, 2) ELSE 0 END,
+                review_count = :ratingCount,
+                rating_sum = :ratingSum,
+                rating_count = :ratingCount,
+                rating_1_count = :c1,
+                rating_2_count = :c2,
+                rating_3_count = :c3,
+                rating_4_count = :c4,
+                rating_5_count = :c5
+            WHERE product_id = :productId
+            """, nativeQuery = true)
+    int setRatingAggregates(@Param("productId") int productId, @Param("ratingSum") long ratingSum, @Param("ratingCount") int ratingCount,
+                            @Param("c1") int c1, @Param("c2") int c2, @Param("c3") int c3, @Param("c4") int c4, @Param("c5") int c5);
+
+    // Còn sản phẩm chưa có số liệu cộng dồn (dữ liệu trước khi thêm cột rating_sum/rating_count)
+    @Query(value = """
+            SELECT EXISTS (
+                SELECT 1 FROM products p
+                WHERE p.rating_count = 0
+                  AND (COALESCE(p.review_count, 0) > 0
+                       OR EXISTS (SELECT 1 FROM product_reviews r WHERE r.product_id = p.product_id AND r.is_visible = TRUE)))
+            """, nativeQuery = true)
+    long existsProductsNeedingRatingBackfill();
+
+    // Dựng lại số liệu đánh giá cho một khoảng productId bằng một câu UPDATE ... JOIN (dữ liệu cũ / sau khi nhập liệu)
+    @Modifying
+    @Query(value = """
+            UPDATE products p
+            LEFT JOIN (SELECT product_id, SUM(rating) AS rating_sum, COUNT(*) AS rating_count,
+                              SUM(rating = 1) AS c1, SUM(rating = 2) AS c2, SUM(rating = 3) AS c3,
+                              SUM(rating = 4) AS c4, SUM(rating = 5) AS c5
+                       FROM product_reviews
+                       WHERE is_visible = TRUE AND product_id BETWEEN :fromId AND :toId
+                       GROUP BY product_id) a ON a.product_id = p.product_id
+            SET p.average_rating = CASE WHEN a.rating_count > 0 THEN ROUND(a.rating_sum / a.rating_count, 2) ELSE 0 END,
+                p.review_count = COALESCE(a.rating_count, 0),
+                p.rating_sum = COALESCE(a.rating_sum, 0),
+                p.rating_count = COALESCE(a.rating_count, 0),
+                p.rating_1_count = COALESCE(a.c1, 0),
+                p.rating_2_count = COALESCE(a.c2, 0),
+                p.rating_3_count = COALESCE(a.c3, 0),
+                p.rating_4_count = COALESCE(a.c4, 0),
+                p.rating_5_count = COALESCE(a.c5, 0)
+            WHERE p.product_id BETWEEN :fromId AND :toId
+            """, nativeQuery = true)
+    int rebuildRatingAggregates(@Param("fromId") int fromId, @Param("toId") int toId);
+
+    // Đánh dấu đánh giá của sản phẩm đã thay đổi, chạy trong transaction ghi đánh giá
+    @Modifying
+    @Query("UPDATE Product p SET p.reviewsVersion = p.reviewsVersion + 1 WHERE p.productId IN :productIds")
+    int incrementReviewsVersion(@Param("productIds") Collection<Integer> productIds);
+
+    @Query("SELECT p.reviewsVersion FROM Product p WHERE p.productId = :productId")
+    Optional<Long> findReviewsVersion(@Param("productId") int productId);
+
+    @Query("SELECT COALESCE(MAX(p.productId), 0) FROM Product p")
+    int findMaxProductId();
+
+    // So sánh số liệu lưu trên products với đánh giá hiển thị thực tế, phân trang keyset theo productId
+    // Trả về [productId, reviewCount, ratingSum, ratingCount, rating1Count..rating5Count,
+    //         actualSum, actualCount, actual1..actual5]
+    @Query("""
+            SELECT p.productId, p.reviewCount, p.ratingSum, p.ratingCount,
+                   p.rating1Count, p.rating2Count, p.rating3Count, p.rating4Count, p.rating5Count,
+                   COALESCE(SUM(r.rating), 0), COUNT(r),
+                   SUM(CASE WHEN r.rating = 1 THEN 1 ELSE 0 END), SUM(CASE WHEN r.rating = 2 THEN 1 ELSE 0 END),
+                   SUM(CASE WHEN r.rating = 3 THEN 1 ELSE 0 END), SUM(CASE WHEN r.rating = 4 THEN 1 ELSE 0 END),
+                   SUM(CASE WHEN r.rating = 5 THEN 1 ELSE 0 END)
+            FROM Product p LEFT JOIN ProductReview r ON r.product = p AND r.visible = true
+            WHERE p.productId > :afterId
+            GROUP BY p.productId, p.reviewCount, p.ratingSum, p.ratingCount,
+                     p.rating1Count, p.rating2Count, p.rating3Count, p.rating4Count, p.rating5Count
+            ORDER BY p.productId ASC
+            """)
+    List<Object[]> findRatingAggregatesAfterId(@Param("afterId") int afterId, Pageable pageable);
+
+    // Khóa dòng sản phẩm trước khi tính lại số liệu đánh giá (chặn các UPDATE cộng dồn đồng thời)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.productId FROM Product p WHERE p.productId = :productId")
+    Optional<Integer> lockById(@Param("productId") int productId);
+
     // Optional: dùng findById nhiều và cũng muốn fetch Category
     @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category c WHERE p.productId = :id")
     Optional<Product> findByIdWithCategory(@Param("id") int id);
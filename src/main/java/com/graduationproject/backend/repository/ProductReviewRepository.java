@@ -1,13 +1,19 @@
 package com.graduationproject.backend.repository;
 
 import com.graduationproject.backend.entity.ProductReview;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -32,6 +38,20 @@ public interface ProductReviewRepository extends JpaRepository<ProductReview, Lo
     @Query("SELECT pr FROM ProductReview pr JOIN FETCH pr.user u WHERE pr.product.productId = :productId AND pr.visible = true ORDER BY pr.reviewDate DESC")
     Page<ProductReview> findVisibleByProductProductIdOrderByReviewDateDesc(@Param("productId") int productId, Pageable pageable);
 
+    // Trang đầu đánh giá HIỂN THỊ (keyset, không COUNT)
+    @Query("SELECT pr FROM ProductReview pr JOIN FETCH pr.user u WHERE pr.product.productId = :productId AND pr.visible = true ORDER BY pr.reviewDate DESC, pr.reviewId DESC")
+    List<ProductReview> findVisibleFirstPage(@Param("productId") int productId, Pageable pageable);
+
+    // Các trang sau: đánh giá HIỂN THỊ cũ hơn con trỏ (reviewDate, reviewId)
+    @Query("""
+            SELECT pr FROM ProductReview pr JOIN FETCH pr.user u
+            WHERE pr.product.productId = :productId AND pr.visible = true
+              AND (pr.reviewDate < :reviewDate OR (pr.reviewDate = :reviewDate AND pr.reviewId < :reviewId))
+            ORDER BY pr.reviewDate DESC, pr.reviewId DESC
+            """)
+    List<ProductReview> findVisibleBefore(@Param("productId") int productId, @Param("reviewDate") Timestamp reviewDate,
+                                          @Param("reviewId") Long reviewId, Pageable pageable);
+
     // Lấy TẤT CẢ đánh giá cho một sản phẩm (dùng cho Admin)
     @Query("SELECT pr FROM ProductReview pr JOIN FETCH pr.user u WHERE pr.product.productId = :productId ORDER BY pr.reviewDate DESC")
     Page<ProductReview> findAllByProductProductIdOrderByReviewDateDesc(@Param("productId") int productId, Pageable pageable);
@@ -47,4 +67,74 @@ public interface ProductReviewRepository extends JpaRepository<ProductReview, Lo
     // Đếm số lượng đánh giá HIỂN THỊ
     @Query("SELECT COUNT(pr) FROM ProductReview pr WHERE pr.product.productId = :productId AND pr.visible = true")
     Long countVisibleByProductProductId(@Param("productId") int productId);
-}
\ No newline at end of file
+
+    // --- Quyền đánh giá (anti-join với product_reviews, dùng unique (user_id, product_id, order_id)) ---
+
+    // Các đơn COMPLETED của user có chứa sản phẩm mà chưa được đánh giá, mới nhất trước
+    @Query("""
+            SELECT o.orderId FROM Order o JOIN o.orderItems oi
+            WHERE o.userId = :userId AND o.status = 'COMPLETED'
+              AND oi.product.productId = :productId
+              AND NOT EXISTS (SELECT 1 FROM ProductReview pr
+                              WHERE pr.user.userId = :userId AND pr.product.productId = :productId
+                                AND pr.order.orderId = o.orderId)
+            ORDER BY o.createdAt DESC
+            """)
+    List<Integer> findReviewableOrderIds(@Param("userId") Long userId, @Param("productId") int productId, Pageable pageable);
+
+    // Tất cả sản phẩm user còn có thể đánh giá
+    // Trả về [productId, productName, latestOrderId, reviewableOrderCount, lastCompletedAt]
+    @Query("""
+            SELECT p.productId, p.name, MAX(o.orderId), COUNT(DISTINCT o.orderId), MAX(o.updatedAt)
+            FROM Order o JOIN o.orderItems oi JOIN oi.product p
+            WHERE o.userId = :userId AND o.status = 'COMPLETED'
+              AND NOT EXISTS (SELECT 1 FROM ProductReview pr
+                              WHERE pr.user.userId = :userId AND pr.product.productId = p.productId
+                                AND pr.order.orderId = o.orderId)
+            GROUP BY p.productId, p.name
+            ORDER BY MAX(o.updatedAt) DESC
+            """)
+    List<Object[]> findReviewableProducts(@Param("userId") Long userId);
+
+    // --- Chỉ mục tìm kiếm ---
+
+    @Query("SELECT pr FROM ProductReview pr JOIN FETCH pr.user u JOIN FETCH pr.product p WHERE pr.reviewId IN :ids")
+    List<ProductReview> findAllWithUserAndProductByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Trả về [reviewId, comment], keyset theo reviewId (dựng lại chỉ mục)
+    @Query("SELECT pr.reviewId, pr.comment FROM ProductReview pr WHERE pr.reviewId > :afterId ORDER BY pr.reviewId ASC")
+    List<Object[]> findCommentsAfterId(@Param("afterId") long afterId, Pageable pageable);
+
+    // --- Kiểm duyệt hàng loạt ---
+
+    // Trả về [reviewId, productId]
+    @Query("SELECT pr.reviewId, pr.product.productId FROM ProductReview pr WHERE pr.reviewId IN :ids")
+    List<Object[]> findModerationTargetsByIdIn(@Param("ids") List<Long> ids);
+
+    // Đánh giá khớp bộ lọc, phân trang keyset theo reviewId. Trả về [reviewId, productId]
+    @Query("""
+            SELECT pr.reviewId, pr.product.productId FROM ProductReview pr
+            WHERE pr.reviewId > :afterId
+              AND (:userId IS NULL OR pr.user.userId = :userId)
+              AND (:fromDate IS NULL OR pr.reviewDate >= :fromDate)
+              AND (:toDate IS NULL OR pr.reviewDate < :toDate)
+              AND (:keyword IS NULL OR LOWER(pr.comment) LIKE LOWER(CONCAT('%', :keyword, '%')))
+            ORDER BY pr.reviewId ASC
+            """)
+    List<Object[]> findModerationTargets(@Param("afterId") long afterId, @Param("userId") Long userId,
+                                         @Param("fromDate") Timestamp fromDate, @Param("toDate") Timestamp toDate,
+                                         @Param("keyword") String keyword, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE ProductReview pr SET pr.visible = :visible WHERE pr.reviewId IN :ids AND pr.visible <> :visible")
+    int setVisibilityByIdIn(@Param("ids") List<Long> ids, @Param("visible") boolean visible);
+
+    @Modifying
+    @Query("DELETE FROM ProductReview pr WHERE pr.reviewId IN :ids")
+    int deleteByReviewIdIn(@Param("ids") List<Long> ids);
+
+    // Khóa đánh giá trước khi sửa/xóa/đổi hiển thị để delta cộng dồn tính trên giá trị cũ chính xác
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT pr FROM ProductReview pr JOIN FETCH pr.product p WHERE pr.reviewId = :reviewId")
+    Optional<ProductReview> findByIdForUpdate(@Param("reviewId") Long reviewId);
+}
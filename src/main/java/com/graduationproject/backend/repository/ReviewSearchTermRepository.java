@@ -0,0 +1,33 @@
+package com.graduationproject.backend.repository;
+
+import com.graduationproject.backend.entity.ReviewSearchTerm;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReviewSearchTermRepository extends JpaRepository<ReviewSearchTerm, ReviewSearchTerm.Key> {
+
+    @Modifying
+    @Query("DELETE FROM ReviewSearchTerm t WHERE t.reviewId IN :reviewIds")
+    int deleteByReviewIdIn(@Param("reviewIds") Collection<Long> reviewIds);
+
+    // Xếp hạng: khớp nhiều từ khóa hơn trước, rồi tổng số lần xuất hiện, rồi đánh giá mới hơn
+    // Trả về [reviewId, matchedTerms, tfSum]
+    @Query("""
+            SELECT t.reviewId, COUNT(t), SUM(t.tf) FROM ReviewSearchTerm t
+            WHERE t.term IN :terms
+            GROUP BY t.reviewId
+            ORDER BY COUNT(t) DESC, SUM(t.tf) DESC, t.reviewId DESC
+            """)
+    List<Object[]> searchRanked(@Param("terms") Collection<String> terms, Pageable pageable);
+
+    @Query("SELECT COUNT(DISTINCT t.reviewId) FROM ReviewSearchTerm t WHERE t.term IN :terms")
+    long countMatchingReviews(@Param("terms") Collection<String> terms);
+}
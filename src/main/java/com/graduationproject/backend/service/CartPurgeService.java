@@ -0,0 +1,166 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.repository.CartItemRepository;
+import com.graduationproject.backend.repository.CartRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dọn giỏ hàng bị bỏ quên: xóa các giỏ không thay đổi quá số ngày cấu hình theo từng lô,
+ * xóa cart_items trước rồi tới carts bằng câu lệnh DELETE hàng loạt.
+ * - Chỉ một node chạy tại một thời điểm (lease); mỗi lô khóa lại các dòng và kiểm tra lại mốc thời gian
+ *   nên giỏ vừa được cập nhật ở node khác không bị xóa.
+ * - Giỏ đang có thay đổi chưa ghi trong {@link CartStore} được bỏ qua; giỏ sạch trong bộ nhớ bị loại
+ *   cùng lúc để không phục vụ lại dữ liệu đã xóa.
+ */
+@Service
+public class CartPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartPurgeService.class);
+
+    private static final String JOB_NAME = "cart-purge";
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.cart.purge.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cart.purge.idle-days:60}")
+    private long idleDays;
+
+    @Value("${app.cart.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.cart.purge.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.cart.purge.lease-seconds:600}")
+    private long leaseSeconds;
+
+    // Chỉ số cộng dồn từ lúc khởi động (theo node)
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong cartsDeleted = new AtomicLong();
+    private final AtomicLong cartItemsDeleted = new AtomicLong();
+    private final AtomicLong cartsSkippedDirty = new AtomicLong();
+    private volatile Timestamp lastRunAt;
+    private volatile long lastRunCarts;
+    private volatile long lastRunMillis;
+
+    @Autowired
+    public CartPurgeService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${app.cart.purge.cron:0 15 4 * * *}")
+    public void purgeAbandonedCarts() {
+        if (!enabled) return;
+        if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.debug("Skip cart purge: lease is held by another node");
+            return;
+        }
+        try {
+            int purged = runPurge();
+            logger.info("Cart purge removed {} abandoned carts idle for more than {} days", purged, idleDays);
+        } catch (Exception e) {
+            logger.error("Cart purge failed: {}", e.getMessage(), e);
+        } finally {
+            jobLeaseService.release(JOB_NAME);
+        }
+    }
+
+    public int runPurge() {
+        long startedAt = System.currentTimeMillis();
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(Duration.ofDays(idleDays)));
+        int totalCarts = 0;
+        // Giỏ bị bỏ qua vẫn thỏa điều kiện quét: loại ra ở các lô sau để không lặp lại (-1 giữ cho IN không rỗng)
+        Set<Long> skippedIds = new HashSet<>(List.of(-1L));
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<Long> candidateIds = cartRepository.findIdleCartIds(cutoff, skippedIds, PageRequest.of(0, batchSize));
+            if (candidateIds.isEmpty()) break;
+
+            PurgedBatch purged = transactionTemplate.execute(status -> purgeBatch(candidateIds, cutoff, skippedIds));
+            if (purged != null && !purged.userIds().isEmpty()) {
+                // Request đọc giỏ trong lúc transaction chưa commit có thể đã nạp lại bản cũ vào bộ nhớ
+                purged.userIds().forEach(cartStore::evictIfClean);
+                cartsDeleted.addAndGet(purged.userIds().size());
+                cartItemsDeleted.addAndGet(purged.items());
+                totalCarts += purged.userIds().size();
+            }
+            if (candidateIds.size() < batchSize) break;
+        }
+        runs.incrementAndGet();
+        lastRunAt = new Timestamp(startedAt);
+        lastRunCarts = totalCarts;
+        lastRunMillis = System.currentTimeMillis() - startedAt;
+        return totalCarts;
+    }
+
+    private record PurgedBatch(List<Long> userIds, int items) {}
+
+    // Chạy trong transaction: khóa, loại giỏ đang dirty trong bộ nhớ rồi xóa cart_items trước, carts sau
+    private PurgedBatch purgeBatch(List<Long> candidateIds, Timestamp cutoff, Set<Long> skippedIds) {
+        List<Object[]> locked = cartRepository.lockIdleCarts(candidateIds, cutoff);
+        List<Long> cartIds = new ArrayList<>(locked.size());
+        List<Long> userIds = new ArrayList<>(locked.size());
+        for (Object[] row : locked) {
+            long cartId = ((Number) row[0]).longValue();
+            long userId = ((Number) row[1]).longValue();
+            if (cartStore.evictIfClean(userId)) {
+                cartIds.add(cartId);
+                userIds.add(userId);
+            } else {
+                skippedIds.add(cartId);
+                cartsSkippedDirty.incrementAndGet();
+            }
+        }
+        if (cartIds.isEmpty()) return new PurgedBatch(userIds, 0);
+
+        int items = cartItemRepository.deleteByCartCartIdIn(cartIds);
+        cartRepository.deleteByCartIdIn(cartIds);
+        return new PurgedBatch(userIds, items);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("idleDays", idleDays);
+        stats.put("runs", runs.get());
+        stats.put("cartsDeleted", cartsDeleted.get());
+        stats.put("cartItemsDeleted", cartItemsDeleted.get());
+        stats.put("cartsSkippedDirty", cartsSkippedDirty.get());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunCarts", lastRunCarts);
+        stats.put("lastRunMillis", lastRunMillis);
+        return stats;
+    }
+}
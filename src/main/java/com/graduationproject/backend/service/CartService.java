@@ -2,221 +2,274 @@
 package com.graduationproject.backend.service;
 
 import com.graduationproject.backend.dto.CartDTO;
+import com.graduationproject.backend.dto.CartDeltaDTO;
 import com.graduationproject.backend.dto.CartItemDetailDTO;
-import com.graduationproject.backend.entity.Cart;
-import com.graduationproject.backend.entity.CartItem;
-import com.graduationproject.backend.entity.Product;
+import com.graduationproject.backend.dto.CartItemOperationDTO;
 import com.graduationproject.backend.exception.BadRequestException;
 import com.graduationproject.backend.exception.OperationFailedException;
+import com.graduationproject.backend.exception.PreconditionFailedException;
 import com.graduationproject.backend.exception.ResourceNotFoundException;
-import com.graduationproject.backend.repository.CartRepository; // JPA Cart Repo
-import com.graduationproject.backend.repository.CartItemRepository; // JPA CartItem Repo
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.sql.Timestamp; // *** THÊM IMPORT Timestamp ***
-import java.time.Instant; // *** THÊM IMPORT Instant ***
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import org.hibernate.Hibernate; // Import Hibernate để kiểm tra lazy loading
 
 @Service
 public class CartService {
 
-    @Autowired private CartRepository cartRepository;
-    @Autowired private CartItemRepository cartItemRepository;
-    @Autowired private ProductService productService;
+    private static final int MAX_BATCH_OPERATIONS = 100;
 
-    @Transactional
-    protected Cart getOrCreateCartEntity(long userId) {
-        return cartRepository.findByUserId(userId).orElseGet(() -> {
-            Cart newCart = new Cart();
-            newCart.setUserId(userId);
-            return cartRepository.save(newCart);
-        });
-    }
+    // Giỏ hàng được đọc/ghi qua CartStore (write-behind), không truy vấn DB mỗi lần thao tác
+    @Autowired private CartStore cartStore;
 
-    @Transactional(readOnly = true)
-    public Optional<CartDTO> getCartByUserIdWithDetails(long userId) {
-        Optional<Cart> cartOpt = cartRepository.findByUserId(userId);
-        if (cartOpt.isEmpty()) return Optional.empty();
-
-        Cart cart = cartOpt.get();
-        // Lấy CartItem entities từ Cart (nếu là EAGER hoặc trong transaction)
-        List<CartItem> cartItems = new ArrayList<>(cart.getItems());
-        if (cartItems.isEmpty()) {
-            // Trả về CartDTO rỗng nếu cart tồn tại nhưng không có item
-            return Optional.of(new CartDTO(userId, Collections.emptyList(), cart.getLastUpdated()));
+    // Dựng CartDTO từ bản sao của giỏ + snapshot sản phẩm (một lần nạp cho các sản phẩm còn thiếu); gọi ngoài khóa giỏ hàng
+    private CartDTO toCartDTO(CartStore.CartView cart) {
+        if (cart.isEmpty()) {
+            CartDTO empty = new CartDTO(cart.userId(), Collections.emptyList(),
+                    cart.lastUpdated() != null ? cart.lastUpdated() : new Date());
+            empty.setVersion(cart.version());
+            return empty;
         }
+        Map<Integer, CartStore.ProductSnapshot> productMap = loadProductSnapshots(cart);
 
-        List<Integer> productIds = cartItems.stream().map(CartItem::getProductId).distinct().collect(Collectors.toList());
-        Map<Integer, Product> productMap = productService.findProductsMapByIds(productIds); // Cần hàm này trong ProductService
-
-        List<CartItemDetailDTO> detailDTOs = cartItems.stream()
-                .map(cartItem -> {
-                    Product product = productMap.get(cartItem.getProductId());
-                    if (product == null) return null;
-                    return CartItemDetailDTO.builder()
-                            .productId(cartItem.getProductId())
-                            .quantity(cartItem.getQuantity())
-                            .price(product.getPrice())
-                            .name(product.getName())
-                            .imageUrl(product.getPrimaryImageUrl())
-                            .stock(product.getStock())
-                            .build();
-                })
+        List<CartItemDetailDTO> detailDTOs = cart.lines().stream()
+                .map(line -> toItemDTO(line, productMap.get(line.getProductId())))
                 .filter(Objects::nonNull).collect(Collectors.toList());
+        CartDTO cartDTO = new CartDTO(cart.userId(), detailDTOs, cart.lastUpdated());
+        cartDTO.setVersion(cart.version());
+        return cartDTO;
+    }
 
-        // Không cần kiểm tra detailDTOs.isEmpty() nữa vì đã kiểm tra cartItems ở trên
+    private Map<Integer, CartStore.ProductSnapshot> loadProductSnapshots(CartStore.CartView cart) {
+        List<Integer> productIds = cart.lines().stream().map(CartStore.CartLine::getProductId).collect(Collectors.toList());
+        return cartStore.getProductSnapshots(productIds);
+    }
 
-        CartDTO cartDTO = new CartDTO(userId, detailDTOs, cart.getLastUpdated());
-        return Optional.of(cartDTO);
+    private static CartItemDetailDTO toItemDTO(CartStore.CartLine line, CartStore.ProductSnapshot product) {
+        if (product == null) return null;
+        return CartItemDetailDTO.builder()
+                .productId(line.getProductId())
+                .quantity(line.getQuantity())
+                .price(product.price())
+                .name(product.name())
+                .imageUrl(product.imageUrl())
+                .stock(product.stock())
+                .build();
     }
 
-    @Transactional
-    public CartDTO addItemToCart(long userId, int productId, int quantity) {
-        if (quantity <= 0) { throw new BadRequestException("Quantity must be positive."); }
-        Product product = productService.findProductEntityById(productId);
-        int availableStock = product.getStock();
-        Cart cart = getOrCreateCartEntity(userId);
-
-        Optional<CartItem> existingItemOpt = cartItemRepository.findByCartCartIdAndProductId(cart.getCartId(), productId);
-        int currentQuantityInCart = existingItemOpt.map(CartItem::getQuantity).orElse(0);
-        if (currentQuantityInCart + quantity > availableStock) {
-            throw new OperationFailedException(String.format("Only %d available for '%s'. Cannot add %d.", availableStock, product.getName(), quantity));
+    // Phản hồi rút gọn: dòng thay đổi (hoặc sản phẩm bị xóa) + tổng mới của giỏ
+    private CartDeltaDTO toCartDelta(CartStore.CartView cart, Integer changedProductId, Integer removedProductId) {
+        Map<Integer, CartStore.ProductSnapshot> productMap = loadProductSnapshots(cart);
+        int itemCount = 0;
+        int totalQuantity = 0;
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        for (CartStore.CartLine line : cart.lines()) {
+            CartStore.ProductSnapshot product = productMap.get(line.getProductId());
+            if (product == null) continue; // Sản phẩm đã bị xóa: CartDTO cũng bỏ qua dòng này
+            itemCount++;
+            totalQuantity += line.getQuantity();
+            totalAmount = totalAmount.add(product.price().multiply(BigDecimal.valueOf(line.getQuantity())));
+        }
+        CartItemDetailDTO item = null;
+        if (changedProductId != null) {
+            CartStore.CartLine line = cart.getLine(changedProductId);
+            if (line != null) item = toItemDTO(line, productMap.get(changedProductId));
         }
+        Date lastUpdated = cart.lastUpdated() != null ? cart.lastUpdated() : new Date();
+        return new CartDeltaDTO(cart.version(), item, removedProductId, itemCount, totalQuantity, totalAmount, lastUpdated);
+    }
+
+    // If-Match: expectedVersion null nghĩa là client không yêu cầu kiểm tra
+    private static void checkVersion(CartStore.CachedCart cart, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != cart.getVersion()) {
+            throw new PreconditionFailedException("Giỏ hàng đã thay đổi, vui lòng tải lại.", toETag(cart.getVersion()));
+        }
+    }
+
+    public static String toETag(long version) {
+        return "\"" + version + "\"";
+    }
 
-        CartItem itemToSave;
-        if (existingItemOpt.isPresent()) {
-            itemToSave = existingItemOpt.get();
-            itemToSave.setQuantity(currentQuantityInCart + quantity);
-            itemToSave.setPriceAtAddition(product.getPrice());
-        } else {
-            itemToSave = new CartItem();
-            itemToSave.setCart(cart);
-            itemToSave.setProductId(productId);
-            itemToSave.setQuantity(quantity);
-            itemToSave.setPriceAtAddition(product.getPrice());
+    private CartStore.ProductSnapshot findProductSnapshot(int productId) {
+        CartStore.ProductSnapshot product = cartStore.getProductSnapshots(List.of(productId)).get(productId);
+        if (product == null) {
+            throw new ResourceNotFoundException("Product", "productId", productId);
         }
-        cartItemRepository.save(itemToSave);
+        return product;
+    }
 
-        // *** SỬA LẠI: Dùng Timestamp ***
-        cart.setLastUpdated(Timestamp.from(Instant.now())); // Hoặc new Timestamp(System.currentTimeMillis())
-        cartRepository.save(cart);
+    public Optional<CartDTO> getCartByUserIdWithDetails(long userId) {
+        CartStore.CartView view = cartStore.withCart(userId, CartStore.CachedCart::view);
+        if (!view.persisted() && view.isEmpty()) return Optional.empty();
+        return Optional.of(toCartDTO(view));
+    }
 
-        return getCartByUserIdWithDetails(userId).orElseThrow(() -> new OperationFailedException("Cart not found after add."));
+    // Phiên bản hiện tại (không nạp sản phẩm) - dùng cho If-None-Match
+    public long getCartVersion(long userId) {
+        return cartStore.withCart(userId, CartStore.CachedCart::getVersion);
     }
 
-    @Transactional
-    public CartDTO updateItemQuantity(long userId, int productId, int quantity) {
-        if (quantity <= 0) { return removeItemFromCart(userId, productId); }
+    public CartDeltaDTO addItemToCart(long userId, int productId, int quantity, Long expectedVersion) {
+        if (quantity <= 0) { throw new BadRequestException("Quantity must be positive."); }
+        CartStore.ProductSnapshot product = findProductSnapshot(productId);
+        int availableStock = product.stock();
 
-        Cart cart = cartRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
-        CartItem itemToUpdate = cartItemRepository.findByCartCartIdAndProductId(cart.getCartId(), productId)
-                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "productId", productId));
+        CartStore.CartView view = cartStore.withCart(userId, cart -> {
+            checkVersion(cart, expectedVersion);
+            CartStore.CartLine existing = cart.getLine(productId);
+            int currentQuantityInCart = existing != null ? existing.getQuantity() : 0;
+            if (currentQuantityInCart + quantity > availableStock) {
+                throw new OperationFailedException(String.format("Only %d available for '%s'. Cannot add %d.", availableStock, product.name(), quantity));
+            }
+            cart.putLine(productId, currentQuantityInCart + quantity, product.price());
+            return cart.view();
+        });
+        return toCartDelta(view, productId, null);
+    }
 
-        Product product = productService.findProductEntityById(productId);
-        if (quantity > product.getStock()) {
-            throw new OperationFailedException(String.format("Only %d available for '%s'. Cannot update quantity to %d.", product.getStock(), product.getName(), quantity));
+    public CartDeltaDTO updateItemQuantity(long userId, int productId, int quantity, Long expectedVersion) {
+        if (quantity <= 0) {
+            CartStore.CartView view = cartStore.withCart(userId, cart -> {
+                checkVersion(cart, expectedVersion);
+                removeExistingLine(cart, userId, productId);
+                return cart.view();
+            });
+            return toCartDelta(view, null, productId);
         }
 
-        itemToUpdate.setQuantity(quantity);
-        itemToUpdate.setPriceAtAddition(product.getPrice());
-        cartItemRepository.save(itemToUpdate);
-
-        // *** SỬA LẠI: Dùng Timestamp ***
-        cart.setLastUpdated(Timestamp.from(Instant.now()));
-        cartRepository.save(cart);
-
-        return getCartByUserIdWithDetails(userId).orElseThrow(() -> new OperationFailedException("Cart not found after update."));
-    }
-
-//    @Transactional
-//    public CartDTO removeItemFromCart(long userId, int productId) {
-//        Cart cart = cartRepository.findByUserId(userId)
-//                .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
-//
-//        // *** SỬA LẠI: Tìm item trước rồi xóa ***
-//        CartItem itemToRemove = cartItemRepository.findByCartCartIdAndProductId(cart.getCartId(), productId)
-//                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "productId", productId + " not found in cart"));
-//
-//        cartItemRepository.delete(itemToRemove); // Xóa item tìm được
-//
-//        // *** SỬA LẠI: Kiểm tra cart rỗng bằng cách load lại và check size ***
-//        // Load lại cart từ DB để lấy trạng thái mới nhất của list items
-//        Cart updatedCart = cartRepository.findById(cart.getCartId()).orElse(null);
-//
-//        if (updatedCart == null || !Hibernate.isInitialized(updatedCart.getItems()) || updatedCart.getItems().isEmpty()) {
-//            if (updatedCart != null) cartRepository.delete(updatedCart); // Xóa luôn Cart nếu rỗng
-//            return new CartDTO(userId, Collections.emptyList(), new Date()); // Trả về cart DTO rỗng
-//        } else {
-//            // *** SỬA LẠI: Dùng Timestamp ***
-//            updatedCart.setLastUpdated(Timestamp.from(Instant.now()));
-//            cartRepository.save(updatedCart);
-//            // Trả về CartDTO mới nhất (load lại lần nữa để đảm bảo)
-//            return getCartByUserIdWithDetails(userId).orElse(new CartDTO(userId, Collections.emptyList(), new Date()));
-//        }
-//    }
-
-    @Transactional
-    public CartDTO removeItemFromCart(long userId, int productId) {
-        // Lấy giỏ hàng của người dùng
-        Cart cart = cartRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
-
-        // Tìm CartItem cần xóa
-        CartItem itemToRemove = cartItemRepository.findByCartCartIdAndProductId(cart.getCartId(), productId)
-                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "productId", productId + " not found in cart"));
-
-        // Xóa CartItem khỏi danh sách items của cart
-        cart.getItems().remove(itemToRemove);
-
-        // Xóa CartItem khỏi cơ sở dữ liệu
-        cartItemRepository.delete(itemToRemove);
-
-        // Kiểm tra xem giỏ hàng có rỗng không
-        if (cart.getItems().isEmpty()) {
-            // Nếu rỗng, xóa luôn Cart
-            cartRepository.delete(cart);
-            return new CartDTO(userId, Collections.emptyList(), new Date());
-        } else {
-            // Nếu không rỗng, cập nhật lastUpdated và lưu lại cart
-            cart.setLastUpdated(Timestamp.from(Instant.now()));
-            cartRepository.save(cart);
-            // Trả về CartDTO mới nhất
-            return getCartByUserIdWithDetails(userId).orElse(new CartDTO(userId, Collections.emptyList(), new Date()));
+        CartStore.ProductSnapshot product = findProductSnapshot(productId);
+        CartStore.CartView view = cartStore.withCart(userId, cart -> {
+            checkVersion(cart, expectedVersion);
+            if (!cart.isPersisted() && cart.isEmpty()) {
+                throw new ResourceNotFoundException("Cart", "userId", userId);
+            }
+            if (cart.getLine(productId) == null) {
+                throw new ResourceNotFoundException("CartItem", "productId", productId);
+            }
+            if (quantity > product.stock()) {
+                throw new OperationFailedException(String.format("Only %d available for '%s'. Cannot update quantity to %d.", product.stock(), product.name(), quantity));
+            }
+            cart.putLine(productId, quantity, product.price());
+            return cart.view();
+        });
+        return toCartDelta(view, productId, null);
+    }
+
+    private static void removeExistingLine(CartStore.CachedCart cart, long userId, int productId) {
+        if (!cart.isPersisted() && cart.isEmpty()) {
+            throw new ResourceNotFoundException("Cart", "userId", userId);
+        }
+        if (!cart.removeLine(productId)) {
+            throw new ResourceNotFoundException("CartItem", "productId", productId + " not found in cart");
         }
     }
-    @Transactional
-    public void removeItemsFromCartBatch(long userId, List<Integer> productIds) {
-        if (productIds == null || productIds.isEmpty()) return;
-        Optional<Cart> cartOpt = cartRepository.findByUserId(userId);
-        if(cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-            // Gọi hàm xóa batch trong repository
-            cartItemRepository.deleteByCartCartIdAndProductIdIn(cart.getCartId(), productIds);
-
-            // *** SỬA LẠI: Kiểm tra cart rỗng bằng cách load lại ***
-            Cart updatedCart = cartRepository.findById(cart.getCartId()).orElse(null);
-            if (updatedCart == null || !Hibernate.isInitialized(updatedCart.getItems()) || updatedCart.getItems().isEmpty()) {
-                if(updatedCart != null) cartRepository.delete(updatedCart);
-            } else {
-                // *** SỬA LẠI: Dùng Timestamp ***
-                updatedCart.setLastUpdated(Timestamp.from(Instant.now()));
-                cartRepository.save(updatedCart);
+
+    // Giữ phản hồi CartDTO đầy đủ cho API xóa (frontend đang dùng body này)
+    public CartDTO removeItemFromCart(long userId, int productId, Long expectedVersion) {
+        CartStore.CartView view = cartStore.withCart(userId, cart -> {
+            checkVersion(cart, expectedVersion);
+            removeExistingLine(cart, userId, productId);
+            return cart.view();
+        });
+        // Giỏ rỗng sẽ bị xóa khỏi DB ở lần ghi tiếp theo
+        if (view.isEmpty()) {
+            CartDTO empty = new CartDTO(userId, Collections.emptyList(), new Date());
+            empty.setVersion(view.version());
+            return empty;
+        }
+        return toCartDTO(view);
+    }
+
+    /**
+     * Áp dụng nhiều thao tác thêm/cập nhật/xóa trong một lần: một lần nạp sản phẩm cho tất cả productId,
+     * kiểm tra toàn bộ trước khi sửa giỏ (lỗi ở một thao tác thì không thao tác nào được áp dụng),
+     * giỏ được ghi xuống DB một lần ở lượt flush kế tiếp.
+     */
+    public CartDTO applyItemOperations(long userId, List<CartItemOperationDTO> operations, Long expectedVersion) {
+        if (operations == null || operations.isEmpty()) {
+            throw new BadRequestException("Operations list cannot be empty.");
+        }
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            throw new BadRequestException("Too many operations in one request (max " + MAX_BATCH_OPERATIONS + ").");
+        }
+        Set<Integer> productIds = new HashSet<>();
+        for (CartItemOperationDTO operation : operations) {
+            if (operation.getOp() == CartItemOperationDTO.Operation.ADD && operation.getQuantity() <= 0) {
+                throw new BadRequestException("Quantity must be positive for ADD (productId " + operation.getProductId() + ").");
+            }
+            if (operation.getOp() != CartItemOperationDTO.Operation.REMOVE) {
+                productIds.add(operation.getProductId());
             }
         }
+        Map<Integer, CartStore.ProductSnapshot> products = cartStore.getProductSnapshots(productIds);
+
+        CartStore.CartView view = cartStore.withCart(userId, cart -> {
+            checkVersion(cart, expectedVersion);
+
+            // Tính số lượng cuối cùng trên bản nháp, chưa đụng tới giỏ
+            Map<Integer, Integer> quantities = new LinkedHashMap<>();
+            for (CartStore.CartLine line : cart.getLines()) {
+                quantities.put(line.getProductId(), line.getQuantity());
+            }
+            Set<Integer> touched = new LinkedHashSet<>();
+            for (CartItemOperationDTO operation : operations) {
+                int productId = operation.getProductId();
+                switch (operation.getOp()) {
+                    case ADD -> quantities.merge(productId, operation.getQuantity(), Integer::sum);
+                    case UPDATE -> {
+                        if (!quantities.containsKey(productId)) {
+                            throw new ResourceNotFoundException("CartItem", "productId", productId);
+                        }
+                        if (operation.getQuantity() == 0) quantities.remove(productId);
+                        else quantities.put(productId, operation.getQuantity());
+                    }
+                    case REMOVE -> quantities.remove(productId);
+                }
+                touched.add(productId);
+            }
+            for (Integer productId : touched) {
+                Integer quantity = quantities.get(productId);
+                if (quantity == null) continue;
+                CartStore.ProductSnapshot product = products.get(productId);
+                if (product == null) {
+                    throw new ResourceNotFoundException("Product", "productId", productId);
+                }
+                if (quantity > product.stock()) {
+                    throw new OperationFailedException(String.format("Only %d available for '%s'. Cannot set quantity to %d.", product.stock(), product.name(), quantity));
+                }
+            }
+
+            // Hợp lệ toàn bộ: áp dụng vào giỏ
+            for (Integer productId : touched) {
+                Integer quantity = quantities.get(productId);
+                if (quantity == null) {
+                    cart.removeLine(productId);
+                } else {
+                    CartStore.CartLine line = cart.getLine(productId);
+                    if (line == null || line.getQuantity() != quantity) {
+                        cart.putLine(productId, quantity, products.get(productId).price());
+                    }
+                }
+            }
+            return cart.view();
+        });
+        return toCartDTO(view);
+    }
+
+    public void removeItemsFromCartBatch(long userId, List<Integer> productIds) {
+        if (productIds == null || productIds.isEmpty()) return;
+        cartStore.withCart(userId, cart -> {
+            productIds.forEach(cart::removeLine);
+            return null;
+        });
     }
 
-    @Transactional
     public void deleteCart(long userId) {
-        // Nên dùng deleteByUserId để tránh phải load Cart entity không cần thiết
-        cartRepository.deleteByUserId(userId);
-        // Hoặc cách cũ:
-        // cartRepository.findByUserId(userId).ifPresent(cartRepository::delete);
+        cartStore.withCart(userId, cart -> {
+            cart.clear();
+            return null;
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,633 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.Cart;
+import com.graduationproject.backend.entity.CartItem;
+import com.graduationproject.backend.entity.Product;
+import com.graduationproject.backend.repository.CartRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bộ nhớ đệm write-behind cho giỏ hàng đang hoạt động.
+ * - Giỏ hàng được nạp từ DB một lần rồi giữ trong map có giới hạn; thao tác trong bộ nhớ của một user
+ *   chạy dưới khóa phân dải (striped lock) theo userId. Đọc DB (nạp giỏ) và nạp snapshot sản phẩm nằm ngoài khóa.
+ * - Thay đổi chỉ đánh dấu "dirty"; job định kỳ ghi các giỏ dirty xuống carts/cart_items theo lô
+ *   và ghi nốt khi ứng dụng tắt. Việc ghi của một user được tuần tự hóa bằng khóa ghi riêng.
+ *   Job ghi chạy trên luồng riêng nên thay đổi nằm trong bộ nhớ tối đa khoảng flush-interval-ms (mặc định 2 giây)
+ *   cộng thời gian một lượt ghi; chỉ kéo dài hơn khi DB lỗi hoặc chậm (giỏ vẫn dirty và được ghi lại ở lượt sau).
+ *   Nếu node chết, các thay đổi trong khoảng này bị mất.
+ * - Ghi có điều kiện theo carts.version: nếu DB đã đổi từ nơi khác (đơn hàng, node khác), giỏ được nạp lại
+ *   và các thay đổi trong bộ nhớ được áp lên bản mới (rebase) thay vì bị bỏ.
+ * - Giá/tồn kho sản phẩm dùng snapshot nạp lười, hết hạn sau TTL cấu hình. Tồn kho thật vẫn được
+ *   kiểm tra lại khi tạo đơn hàng.
+ * - Giỏ sạch không truy cập quá thời gian cấu hình (theo lastUpdated) hoặc vượt dung lượng bị loại khỏi bộ nhớ.
+ * Giả định các request giỏ hàng của một user đi vào cùng một node (sticky session hoặc một instance).
+ */
+@Component
+public class CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartStore.class);
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Value("${app.cart.store.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.cart.store.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    @Value("${app.cart.store.idle-evict-minutes:30}")
+    private long idleEvictMinutes;
+
+    @Value("${app.cart.store.product-snapshot-ttl-seconds:30}")
+    private long productSnapshotTtlSeconds;
+
+    private static final int LOCK_STRIPES = 64; // Lũy thừa của 2
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final ReentrantLock[] flushLocks = new ReentrantLock[LOCK_STRIPES];
+    private final ConcurrentHashMap<Long, CachedCart> carts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ProductSnapshot> productSnapshots = new ConcurrentHashMap<>();
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate rebaseTemplate;
+    private final TransactionTemplate writeTemplate;
+
+    /** Một dòng giỏ hàng trong bộ nhớ. */
+    public static final class CartLine {
+        private final int productId;
+        private int quantity;
+        private BigDecimal priceAtAddition;
+
+        CartLine(int productId, int quantity, BigDecimal priceAtAddition) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.priceAtAddition = priceAtAddition;
+        }
+
+        public int getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        public BigDecimal getPriceAtAddition() { return priceAtAddition; }
+
+        CartLine copy() {
+            return new CartLine(productId, quantity, priceAtAddition);
+        }
+
+        boolean sameAs(CartLine other) {
+            return other != null && quantity == other.quantity && Objects.equals(priceAtAddition, other.priceAtAddition);
+        }
+    }
+
+    /** Giỏ hàng trong bộ nhớ; chỉ được đọc/ghi khi đang giữ khóa của user. */
+    public static final class CachedCart {
+        private final long userId;
+        private Long cartId; // null nếu chưa có dòng trong bảng carts
+        private final LinkedHashMap<Integer, CartLine> lines = new LinkedHashMap<>();
+        private final Map<Integer, CartLine> baseLines = new HashMap<>(); // Nội dung trong DB ở phiên bản flushedVersion
+        private Timestamp lastUpdated;
+        private long version;        // Tăng đơn điệu mỗi lần thay đổi, lưu ở carts.version
+        private long flushedVersion; // Phiên bản đã ghi xuống DB
+        private boolean rebasePending; // DB đã bị sửa từ bên ngoài: nạp lại và áp thay đổi trước lần dùng tiếp theo
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+
+        CachedCart(long userId) {
+            this.userId = userId;
+        }
+
+        public long getUserId() { return userId; }
+        public boolean isPersisted() { return cartId != null; }
+        public Collection<CartLine> getLines() { return lines.values(); }
+        public CartLine getLine(int productId) { return lines.get(productId); }
+        public boolean isEmpty() { return lines.isEmpty(); }
+        public Timestamp getLastUpdated() { return lastUpdated; }
+        public long getVersion() { return version; }
+        boolean isDirty() { return version != flushedVersion; }
+
+        public void putLine(int productId, int quantity, BigDecimal priceAtAddition) {
+            CartLine line = lines.get(productId);
+            if (line == null) {
+                lines.put(productId, new CartLine(productId, quantity, priceAtAddition));
+            } else {
+                line.quantity = quantity;
+                line.priceAtAddition = priceAtAddition;
+            }
+            markChanged();
+        }
+
+        public boolean removeLine(int productId) {
+            if (lines.remove(productId) == null) return false;
+            markChanged();
+            return true;
+        }
+
+        public void clear() {
+            if (lines.isEmpty() && cartId == null) return;
+            lines.clear();
+            markChanged();
+        }
+
+        /** Bản sao bất biến để dựng phản hồi ngoài khóa. */
+        public CartView view() {
+            List<CartLine> copies = new ArrayList<>(lines.size());
+            lines.values().forEach(line -> copies.add(line.copy()));
+            return new CartView(userId, cartId != null, copies, version, lastUpdated);
+        }
+
+        // Lấy max với thời gian hiện tại để phiên bản vẫn tăng khi giỏ bị xóa rồi tạo lại
+        private void markChanged() {
+            long now = System.currentTimeMillis();
+            version = Math.max(version + 1, now);
+            lastUpdated = new Timestamp(now);
+        }
+
+        private void applyStored(StoredCart stored) {
+            cartId = stored.cartId();
+            lastUpdated = stored.lastUpdated();
+            version = stored.version();
+            flushedVersion = stored.version();
+            lines.clear();
+            baseLines.clear();
+            for (CartLine line : stored.lines()) {
+                lines.put(line.productId, line.copy());
+                baseLines.put(line.productId, line.copy());
+            }
+            rebasePending = false;
+        }
+
+        // Áp các thay đổi chưa ghi (so với baseLines) lên nội dung mới đọc từ DB
+        private void rebase(StoredCart stored) {
+            LinkedHashMap<Integer, CartLine> merged = new LinkedHashMap<>();
+            stored.lines().forEach(line -> merged.put(line.productId, line.copy()));
+            for (Integer productId : baseLines.keySet()) {
+                if (!lines.containsKey(productId)) merged.remove(productId);
+            }
+            for (CartLine line : lines.values()) {
+                if (!line.sameAs(baseLines.get(line.productId))) merged.put(line.productId, line.copy());
+            }
+            long previousVersion = version;
+            applyStored(stored);
+            boolean changed = merged.size() != lines.size()
+                    || merged.values().stream().anyMatch(line -> !line.sameAs(lines.get(line.productId)));
+            if (changed) {
+                lines.clear();
+                lines.putAll(merged);
+                version = Math.max(previousVersion, stored.version());
+                markChanged();
+            }
+        }
+    }
+
+    /** Nội dung giỏ hàng tại một thời điểm, dùng ngoài khóa. */
+    public record CartView(long userId, boolean persisted, List<CartLine> lines, long version, Timestamp lastUpdated) {
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        public CartLine getLine(int productId) {
+            for (CartLine line : lines) {
+                if (line.getProductId() == productId) return line;
+            }
+            return null;
+        }
+    }
+
+    /** Snapshot giá/tồn kho sản phẩm dùng cho giỏ hàng. */
+    public record ProductSnapshot(int productId, String name, BigDecimal price, int stock, String imageUrl, long loadedAtMillis) {}
+
+    // Nội dung giỏ trong DB (cartId = null, version = 0 nếu chưa có dòng)
+    private record StoredCart(Long cartId, long version, Timestamp lastUpdated, List<CartLine> lines) {}
+
+    // Bản sao bất biến của giỏ dirty, dùng để ghi xuống DB ngoài khóa
+    private record FlushSnapshot(long userId, Long cartId, List<CartLine> lines, long version, long baseVersion) {}
+
+    // Dòng trong DB đã bị node khác ghi đè kể từ lần nạp/ghi gần nhất
+    private static final class StaleCartException extends RuntimeException {
+        StaleCartException(long userId, long expected, Long actual) {
+            super("Cart of user " + userId + " changed in database (expected version " + expected + ", found " + actual + ")");
+        }
+    }
+
+    @Autowired
+    public CartStore(PlatformTransactionManager transactionManager) {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+            flushLocks[i] = new ReentrantLock();
+        }
+        // Đọc tham gia transaction của nơi gọi nếu có, không lấy thêm connection
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.rebaseTemplate = new TransactionTemplate(transactionManager);
+        // Chỉ dùng khi không có transaction đang chạy (job định kỳ, flush ngoài transaction)
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+        this.writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    private static int stripe(long userId) {
+        int h = Long.hashCode(userId);
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    private ReentrantLock lockFor(long userId) {
+        return locks[stripe(userId)];
+    }
+
+    private ReentrantLock flushLockFor(long userId) {
+        return flushLocks[stripe(userId)];
+    }
+
+    /**
+     * Chạy {@code action} trên giỏ hàng của user dưới khóa của user đó. Giỏ chưa có trong bộ nhớ (hoặc cần rebase)
+     * được nạp từ DB trước, ngoài khóa. Action chỉ nên thao tác trong bộ nhớ và không được giữ tham chiếu tới
+     * {@link CachedCart} sau khi trả về (dùng {@link CachedCart#view()} để lấy dữ liệu ra ngoài).
+     */
+    public <T> T withCart(long userId, Function<CachedCart, T> action) {
+        while (true) {
+            CachedCart cached = carts.get(userId);
+            if (cached == null || cached.rebasePending) {
+                install(userId, loadStoredCart(userId, false));
+                continue;
+            }
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                // Giỏ có thể vừa bị loại hoặc đánh dấu rebase giữa lúc kiểm tra và lấy khóa
+                if (carts.get(userId) != cached || cached.rebasePending) continue;
+                cached.lastAccessMillis = System.currentTimeMillis();
+                return action.apply(cached);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private StoredCart loadStoredCart(long userId, boolean latest) {
+        TransactionTemplate template = latest ? rebaseTemplate : readTemplate;
+        return template.execute(status -> {
+            Optional<Cart> found = latest ? cartRepository.findByUserIdForUpdate(userId) : cartRepository.findByUserId(userId);
+            if (found.isEmpty()) return new StoredCart(null, 0, null, List.of());
+            Cart cart = found.get();
+            List<CartLine> lines = new ArrayList<>(cart.getItems().size());
+            for (CartItem item : cart.getItems()) {
+                lines.add(new CartLine(item.getProductId(), item.getQuantity(), item.getPriceAtAddition()));
+            }
+            return new StoredCart(cart.getCartId(), cart.getVersion(), cart.getLastUpdated(), lines);
+        });
+    }
+
+    // Đưa nội dung vừa đọc vào bộ nhớ: tạo mới, hoặc rebase nếu giỏ đang chờ; luồng khác đã nạp trước thì bỏ qua
+    private void install(long userId, StoredCart stored) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(userId);
+            if (cart == null) {
+                cart = new CachedCart(userId);
+                cart.applyStored(stored);
+                carts.put(userId, cart);
+            } else if (cart.rebasePending) {
+                cart.rebase(stored);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lấy snapshot sản phẩm: dùng bản trong bộ nhớ nếu còn hạn, phần còn thiếu nạp bằng một truy vấn.
+     * Sản phẩm không tồn tại sẽ không có trong kết quả. Không gọi khi đang giữ khóa giỏ hàng.
+     */
+    public Map<Integer, ProductSnapshot> getProductSnapshots(Collection<Integer> productIds) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = productSnapshotTtlSeconds * 1000;
+        Map<Integer, ProductSnapshot> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer productId : productIds) {
+            ProductSnapshot snapshot = productSnapshots.get(productId);
+            if (snapshot != null && now - snapshot.loadedAtMillis() < ttlMillis) {
+                result.put(productId, snapshot);
+            } else {
+                missing.add(productId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Product product : productService.findProductsMapByIds(missing).values()) {
+                ProductSnapshot snapshot = new ProductSnapshot(product.getProductId(), product.getName(), product.getPrice(),
+                        product.getStock(), product.getPrimaryImageUrl(), now);
+                productSnapshots.put(product.getProductId(), snapshot);
+                result.put(product.getProductId(), snapshot);
+            }
+        }
+        return result;
+    }
+
+    // Bỏ snapshot khi biết chắc giá/tồn kho đã đổi (ví dụ lỗi hết hàng khi tạo đơn)
+    public void invalidateProductSnapshots(Collection<Integer> productIds) {
+        productIds.forEach(productSnapshots::remove);
+    }
+
+    // --- Ghi xuống DB ---
+
+    // Chạy trên scheduler riêng (SchedulingConfig) để không phải chờ các job nền chạy lâu
+    @Scheduled(fixedDelayString = "${app.cart.store.flush-interval-ms:2000}", scheduler = "cartFlushScheduler")
+    public void flushDirtyCarts() {
+        List<FlushSnapshot> batch = new ArrayList<>(flushBatchSize);
+        List<ReentrantLock> held = new ArrayList<>(flushBatchSize);
+        try {
+            for (CachedCart cart : carts.values()) {
+                if (!cart.isDirty() && !cart.rebasePending) continue;
+                // User đang được ghi ở luồng khác (flush trong transaction tạo đơn): để lượt sau
+                ReentrantLock flushLock = flushLockFor(cart.userId);
+                if (!flushLock.tryLock()) continue;
+                held.add(flushLock);
+                if (cart.rebasePending) {
+                    rebaseFromDatabase(cart.userId);
+                }
+                FlushSnapshot snapshot = snapshotIfDirty(cart.userId);
+                if (snapshot == null) continue;
+                batch.add(snapshot);
+                if (batch.size() >= flushBatchSize) {
+                    writeBatch(batch);
+                    batch = new ArrayList<>(flushBatchSize);
+                    unlockAll(held);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            unlockAll(held);
+        }
+    }
+
+    private static void unlockAll(List<ReentrantLock> held) {
+        held.forEach(ReentrantLock::unlock);
+        held.clear();
+    }
+
+    /**
+     * Ghi ngay giỏ hàng của user (nếu dirty). Gọi trước khi đọc giỏ hàng trực tiếp từ DB.
+     * Nếu đang có transaction, việc ghi tham gia transaction đó (không lấy thêm connection); giỏ được đánh dấu
+     * đã ghi khi transaction commit và khóa ghi của user được giữ tới khi transaction kết thúc.
+     */
+    public void flush(long userId) {
+        boolean joined = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive();
+        ReentrantLock flushLock = flushLockFor(userId);
+        flushLock.lock();
+        boolean unlockNow = true;
+        try {
+            for (int attempt = 0; attempt < MAX_FLUSH_ATTEMPTS; attempt++) {
+                FlushSnapshot snapshot = snapshotIfDirty(userId);
+                if (snapshot == null) return;
+                try {
+                    if (!joined) {
+                        markFlushed(snapshot, writeTemplate.execute(status -> writeCart(snapshot)));
+                        return;
+                    }
+                    Long cartId = writeCart(snapshot);
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            markFlushed(snapshot, cartId);
+                        }
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            flushLock.unlock();
+                        }
+                    });
+                    unlockNow = false;
+                    return;
+                } catch (StaleCartException e) {
+                    logger.info("{}; rebasing cached changes", e.getMessage());
+                    rebaseFromDatabase(userId);
+                }
+            }
+            logger.warn("Could not flush cart of user {} after {} attempts, leaving it for the background flush", userId, MAX_FLUSH_ATTEMPTS);
+        } finally {
+            if (unlockNow) flushLock.unlock();
+        }
+    }
+
+    /**
+     * Báo DB đã bị sửa từ bên ngoài (tạo đơn, thanh toán VNPay). Giỏ sạch bị bỏ khỏi bộ nhớ;
+     * giỏ còn thay đổi chưa ghi được nạp lại và áp thay đổi ở lần dùng hoặc lần ghi tiếp theo.
+     */
+    public void evict(long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(userId);
+            if (cart == null) return;
+            if (cart.isDirty()) {
+                cart.rebasePending = true;
+            } else {
+                carts.remove(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FlushSnapshot snapshotIfDirty(long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(userId);
+            if (cart == null || !cart.isDirty() || cart.rebasePending) return null;
+            List<CartLine> lines = new ArrayList<>(cart.lines.size());
+            for (CartLine line : cart.lines.values()) {
+                lines.add(line.copy());
+            }
+            return new FlushSnapshot(userId, cart.cartId, lines, cart.version, cart.flushedVersion);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Đọc bản mới nhất trong DB (đọc khóa) rồi áp các thay đổi chưa ghi lên đó
+    private void rebaseFromDatabase(long userId) {
+        StoredCart stored = loadStoredCart(userId, true);
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(userId);
+            if (cart != null) cart.rebase(stored);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ghi cả lô trong một transaction; nếu lỗi thì ghi lại từng giỏ để cô lập giỏ gây lỗi
+    private void writeBatch(List<FlushSnapshot> batch) {
+        Map<Long, Long> cartIds = new HashMap<>();
+        try {
+            writeTemplate.executeWithoutResult(status -> {
+                for (FlushSnapshot snapshot : batch) {
+                    cartIds.put(snapshot.userId(), writeCart(snapshot));
+                }
+            });
+        } catch (Exception batchError) {
+            cartIds.clear();
+            for (FlushSnapshot snapshot : batch) {
+                try {
+                    cartIds.put(snapshot.userId(), writeTemplate.execute(status -> writeCart(snapshot)));
+                } catch (StaleCartException e) {
+                    // Không bỏ thay đổi đã trả 200 cho client: nạp lại rồi ghi ở lượt sau
+                    logger.info("{}; rebasing cached changes", e.getMessage());
+                    try {
+                        rebaseFromDatabase(snapshot.userId());
+                    } catch (Exception rebaseError) {
+                        logger.error("Failed to rebase cart of user {}: {}", snapshot.userId(), rebaseError.getMessage(), rebaseError);
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed to flush cart of user {}: {}", snapshot.userId(), e.getMessage(), e);
+                }
+            }
+        }
+        for (FlushSnapshot snapshot : batch) {
+            if (cartIds.containsKey(snapshot.userId())) {
+                markFlushed(snapshot, cartIds.get(snapshot.userId()));
+            }
+        }
+    }
+
+    // Đồng bộ một giỏ xuống DB; trả về cartId mới (null nếu giỏ rỗng và đã bị xóa)
+    private Long writeCart(FlushSnapshot snapshot) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Cart cart = null;
+        if (snapshot.cartId() != null) {
+            // UPDATE có điều kiện khóa dòng tới hết transaction: hai lần ghi cùng giỏ không chồng lên nhau
+            int updated = cartRepository.compareAndSetVersion(snapshot.cartId(), snapshot.baseVersion(), snapshot.version(), now);
+            if (updated == 0) {
+                Long current = cartRepository.findVersionById(snapshot.cartId()).orElse(null);
+                if (current != null && current == snapshot.version()) return snapshot.cartId(); // Đã được ghi
+                throw new StaleCartException(snapshot.userId(), snapshot.baseVersion(), current);
+            }
+            cart = cartRepository.findById(snapshot.cartId()).orElse(null);
+        } else if (cartRepository.existsByUserId(snapshot.userId())) {
+            // Giỏ được tạo ở nơi khác sau khi nạp
+            throw new StaleCartException(snapshot.userId(), snapshot.baseVersion(), null);
+        }
+
+        if (snapshot.lines().isEmpty()) {
+            if (cart != null) cartRepository.delete(cart); // Giỏ rỗng thì xóa luôn như trước đây
+            return null;
+        }
+        if (cart == null) {
+            cart = new Cart();
+            cart.setUserId(snapshot.userId());
+        }
+
+        Map<Integer, CartItem> existing = new HashMap<>();
+        for (CartItem item : cart.getItems()) {
+            existing.put(item.getProductId(), item);
+        }
+        Set<Integer> wanted = new HashSet<>();
+        for (CartLine line : snapshot.lines()) {
+            wanted.add(line.productId);
+            CartItem item = existing.get(line.productId);
+            if (item == null) {
+                item = new CartItem();
+                item.setProductId(line.productId);
+                cart.addItem(item);
+            }
+            item.setQuantity(line.quantity);
+            item.setPriceAtAddition(line.priceAtAddition);
+        }
+        cart.getItems().removeIf(item -> !wanted.contains(item.getProductId())); // orphanRemoval xóa dòng
+        cart.setLastUpdated(now);
+        cart.setVersion(snapshot.version());
+        return cartRepository.save(cart).getCartId();
+    }
+
+    private void markFlushed(FlushSnapshot snapshot, Long cartId) {
+        ReentrantLock lock = lockFor(snapshot.userId());
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(snapshot.userId());
+            if (cart == null || snapshot.version() < cart.flushedVersion) return;
+            cart.cartId = cartId;
+            // Nếu có thay đổi mới trong lúc ghi thì giỏ vẫn dirty và được ghi ở lần sau
+            cart.flushedVersion = snapshot.version();
+            cart.baseLines.clear();
+            snapshot.lines().forEach(line -> cart.baseLines.put(line.productId, line.copy()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        logger.info("Flushing {} cached carts before shutdown", carts.size());
+        flushDirtyCarts();
+    }
+
+    // --- Loại khỏi bộ nhớ ---
+
+    @Scheduled(fixedDelayString = "${app.cart.store.evict-interval-ms:60000}")
+    public void evictIdleCarts() {
+        long idleCutoff = System.currentTimeMillis() - idleEvictMinutes * 60_000;
+        for (CachedCart cart : carts.values()) {
+            if (cart.lastAccessMillis < idleCutoff && lastUpdatedMillis(cart) < idleCutoff) {
+                evictIfClean(cart.userId);
+            }
+        }
+        // Vượt dung lượng: loại bớt các giỏ sạch ít được truy cập nhất
+        int overflow = carts.size() - maxEntries;
+        if (overflow > 0) {
+            carts.values().stream()
+                    .filter(cart -> !cart.isDirty())
+                    .sorted(Comparator.comparingLong(cart -> cart.lastAccessMillis))
+                    .limit(overflow + maxEntries / 10)
+                    .map(cart -> cart.userId)
+                    .toList()
+                    .forEach(this::evictIfClean);
+        }
+        long now = System.currentTimeMillis();
+        productSnapshots.values().removeIf(snapshot -> now - snapshot.loadedAtMillis() > productSnapshotTtlSeconds * 1000);
+    }
+
+    private static long lastUpdatedMillis(CachedCart cart) {
+        return cart.lastUpdated != null ? cart.lastUpdated.getTime() : 0;
+    }
+
+    /**
+     * Bỏ giỏ khỏi bộ nhớ nếu không còn thay đổi chưa ghi.
+     * @return false nếu giỏ đang dirty (được giữ lại), true nếu đã bỏ hoặc không có trong bộ nhớ
+     */
+    public boolean evictIfClean(long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = carts.get(userId);
+            if (cart == null) return true;
+            if (cart.isDirty()) return false;
+            carts.remove(userId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.CheckoutQuoteDTO;
+import com.graduationproject.backend.dto.CheckoutQuoteItemDTO;
+import com.graduationproject.backend.dto.CreateOrderRequestDTO;
+import com.graduationproject.backend.dto.SelectedItemDTO;
+import com.graduationproject.backend.exception.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Báo giá checkout chỉ đọc: tính tổng tiền, tồn kho và phí ship cho các sản phẩm được chọn
+ * từ snapshot sản phẩm của {@link CartStore} (một lần nạp cho tất cả sản phẩm), không ghi DB.
+ * Mỗi user giữ một báo giá gần nhất, dùng lại khi phiên bản giỏ hàng và danh sách chọn không đổi
+ * và báo giá chưa quá TTL. Tồn kho vẫn được kiểm tra lại khi tạo đơn hàng.
+ */
+@Service
+public class CheckoutQuoteService {
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private CartService cartService;
+
+    @Value("${app.checkout.quote.ttl-seconds:10}")
+    private long ttlSeconds;
+
+    private static final int MAX_SELECTED_PRODUCTS = 100;
+
+    private record CachedQuote(long cartVersion, String selectionKey, CheckoutQuoteDTO quote, long expiresAtMillis) {}
+
+    private final ConcurrentHashMap<Long, CachedQuote> quotes = new ConcurrentHashMap<>();
+
+    public CheckoutQuoteDTO getQuote(long userId, CreateOrderRequestDTO request) {
+        Map<Integer, Integer> selection = normalizeSelection(request);
+        String selectionKey = selection.toString();
+        long cartVersion = cartService.getCartVersion(userId);
+        long now = System.currentTimeMillis();
+
+        CachedQuote cached = quotes.get(userId);
+        if (cached != null && cached.cartVersion() == cartVersion && cached.selectionKey().equals(selectionKey)
+                && cached.expiresAtMillis() > now) {
+            return cached.quote();
+        }
+
+        CheckoutQuoteDTO quote = buildQuote(cartVersion, selection);
+        quotes.put(userId, new CachedQuote(cartVersion, selectionKey, quote, now + ttlSeconds * 1000));
+        return quote;
+    }
+
+    // Gộp các dòng trùng productId, sắp theo productId để khóa cache không phụ thuộc thứ tự gửi lên
+    private Map<Integer, Integer> normalizeSelection(CreateOrderRequestDTO request) {
+        if (request == null || request.getItems() == null || request.getItems().isEmpty()) {
+            throw new BadRequestException("Quote must contain at least one item.");
+        }
+        Map<Integer, Integer> selection = new TreeMap<>();
+        for (SelectedItemDTO item : request.getItems()) {
+            if (item.getProductId() <= 0 || item.getQuantity() <= 0) {
+                throw new BadRequestException("Invalid item in quote: productId " + item.getProductId() + ", quantity " + item.getQuantity());
+            }
+            selection.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        if (selection.size() > MAX_SELECTED_PRODUCTS) {
+            throw new BadRequestException("Too many products in one quote (max " + MAX_SELECTED_PRODUCTS + ").");
+        }
+        return selection;
+    }
+
+    private CheckoutQuoteDTO buildQuote(long cartVersion, Map<Integer, Integer> selection) {
+        Map<Integer, CartStore.ProductSnapshot> products = cartStore.getProductSnapshots(selection.keySet());
+        List<CheckoutQuoteItemDTO> items = new ArrayList<>(selection.size());
+        BigDecimal subtotal = BigDecimal.ZERO;
+        boolean orderable = true;
+
+        for (Map.Entry<Integer, Integer> entry : selection.entrySet()) {
+            int productId = entry.getKey();
+            int quantity = entry.getValue();
+            CartStore.ProductSnapshot product = products.get(productId);
+            if (product == null) {
+                items.add(new CheckoutQuoteItemDTO(productId, null, null, null, quantity, 0, false, BigDecimal.ZERO));
+                orderable = false;
+                continue;
+            }
+            boolean available = product.stock() >= quantity;
+            BigDecimal lineTotal = product.price().multiply(BigDecimal.valueOf(quantity));
+            items.add(new CheckoutQuoteItemDTO(productId, product.name(), product.imageUrl(), product.price(),
+                    quantity, product.stock(), available, lineTotal));
+            if (available) {
+                subtotal = subtotal.add(lineTotal);
+            } else {
+                orderable = false;
+            }
+        }
+
+        BigDecimal shippingFee = OrderService.SHIPPING_FEE;
+        return new CheckoutQuoteDTO(cartVersion, items, subtotal, shippingFee, subtotal.add(shippingFee),
+                orderable, new Timestamp(System.currentTimeMillis()));
+    }
+
+    // Báo giá hết hạn thì không còn dùng được, dọn để map không giữ user đã rời trang checkout
+    @Scheduled(fixedDelayString = "${app.checkout.quote.cleanup-interval-ms:60000}")
+    public void evictExpiredQuotes() {
+        long now = System.currentTimeMillis();
+        quotes.values().removeIf(cached -> cached.expiresAtMillis() <= now);
+    }
+}
@@ -0,0 +1,184 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.DashboardSummaryDTO;
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.Role;
+import com.graduationproject.backend.repository.DailySalesStatRepository;
+import com.graduationproject.backend.repository.OrderRepository;
+import com.graduationproject.backend.repository.ProductRepository;
+import com.graduationproject.backend.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bộ đếm cho Dashboard giữ trong bộ nhớ: số đơn theo trạng thái, số khách hàng (BUYER), số sản phẩm
+ * và tổng doanh thu (từ bảng tổng hợp stat_daily_sales).
+ * - Nạp từ DB ở lần đọc đầu tiên, sau đó cộng/trừ theo sự kiện đơn hàng, người dùng, sản phẩm sau khi transaction commit.
+ * - Mỗi node có bộ đếm riêng và chỉ thấy sự kiện của chính nó: job kiểm tra định kỳ nạp lại từ DB
+ *   để đồng bộ thay đổi từ node khác và sửa sai lệch.
+ */
+@Service
+public class DashboardCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardCounterService.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private DailySalesStatRepository dailySalesStatRepository;
+
+    private final Map<OrderStatus, AtomicLong> ordersByStatus = new EnumMap<>(OrderStatus.class);
+    private final AtomicLong customers = new AtomicLong();
+    private final AtomicLong products = new AtomicLong();
+    private final AtomicReference<BigDecimal> revenue = new AtomicReference<>(BigDecimal.ZERO);
+    private volatile boolean loaded;
+
+    public DashboardCounterService() {
+        for (OrderStatus status : OrderStatus.values()) {
+            ordersByStatus.put(status, new AtomicLong());
+        }
+    }
+
+    // Giá trị đọc từ DB tại một thời điểm
+    private record Snapshot(Map<OrderStatus, Long> ordersByStatus, long customers, long products, BigDecimal revenue) {}
+
+    public DashboardSummaryDTO getSummary() {
+        if (!loaded) reload();
+        long totalOrders = ordersByStatus.values().stream().mapToLong(AtomicLong::get).sum();
+        return new DashboardSummaryDTO(
+                totalOrders,
+                ordersByStatus.get(OrderStatus.PENDING).get(),
+                ordersByStatus.get(OrderStatus.COMPLETED).get(),
+                customers.get(),
+                products.get(),
+                revenue.get()
+        );
+    }
+
+    // --- Sự kiện ---
+
+    /**
+     * Đơn hàng đổi trạng thái. oldStatus = null: đơn mới tạo; newStatus = null: đơn rời bảng orders (lưu trữ).
+     * Doanh thu chỉ đổi khi đơn vào/rời nhóm PAID/COMPLETED (đơn lưu trữ vẫn nằm trong bảng tổng hợp).
+     */
+    public void onOrderStatusChanged(OrderStatus oldStatus, OrderStatus newStatus, BigDecimal totalAmount) {
+        if (oldStatus == newStatus) return;
+        afterCommit(() -> {
+            if (oldStatus != null) ordersByStatus.get(oldStatus).decrementAndGet();
+            if (newStatus != null) ordersByStatus.get(newStatus).incrementAndGet();
+            if (oldStatus != null && newStatus != null && totalAmount != null) {
+                boolean wasCounted = StatisticRollupService.COUNTED_STATUSES.contains(oldStatus);
+                boolean isCounted = StatisticRollupService.COUNTED_STATUSES.contains(newStatus);
+                if (wasCounted != isCounted) {
+                    BigDecimal delta = isCounted ? totalAmount : totalAmount.negate();
+                    revenue.accumulateAndGet(delta, BigDecimal::add);
+                }
+            }
+        });
+    }
+
+    // Một lô đơn rời bảng orders (lưu trữ), rows = [status, count]
+    public void onOrdersRemoved(Iterable<Object[]> countsByStatus) {
+        Map<OrderStatus, Long> removed = new EnumMap<>(OrderStatus.class);
+        for (Object[] row : countsByStatus) {
+            removed.put((OrderStatus) row[0], ((Number) row[1]).longValue());
+        }
+        afterCommit(() -> removed.forEach((status, count) -> ordersByStatus.get(status).addAndGet(-count)));
+    }
+
+    // Người dùng đổi vai trò. oldRole = null: tạo mới; newRole = null: bị xóa
+    public void onUserRoleChanged(Role oldRole, Role newRole) {
+        boolean wasCustomer = oldRole == Role.BUYER;
+        boolean isCustomer = newRole == Role.BUYER;
+        if (wasCustomer == isCustomer) return;
+        afterCommit(() -> customers.addAndGet(isCustomer ? 1 : -1));
+    }
+
+    public void onProductCountChanged(int delta) {
+        if (delta == 0) return;
+        afterCommit(() -> products.addAndGet(delta));
+    }
+
+    // Chỉ cập nhật bộ đếm khi transaction commit; gọi ngoài transaction thì cập nhật ngay
+    private void afterCommit(Runnable action) {
+        if (!loaded) return; // Chưa nạp: lần nạp đầu tiên sẽ đọc giá trị đã commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // --- Nạp và kiểm tra ---
+
+    private Snapshot readSnapshot() {
+        Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status, 0L);
+        }
+        for (Object[] row : orderRepository.countGroupByStatus()) {
+            counts.put((OrderStatus) row[0], ((Number) row[1]).longValue());
+        }
+        BigDecimal totalRevenue = dailySalesStatRepository.sumRevenue();
+        return new Snapshot(counts, userRepository.countByRole(Role.BUYER), productRepository.count(),
+                totalRevenue != null ? totalRevenue : BigDecimal.ZERO);
+    }
+
+    /** Nạp lại toàn bộ bộ đếm từ DB (5 truy vấn: một GROUP BY cho mọi trạng thái đơn). */
+    public synchronized void reload() {
+        apply(readSnapshot());
+        loaded = true;
+    }
+
+    private void apply(Snapshot snapshot) {
+        snapshot.ordersByStatus().forEach((status, count) -> ordersByStatus.get(status).set(count));
+        customers.set(snapshot.customers());
+        products.set(snapshot.products());
+        revenue.set(snapshot.revenue());
+    }
+
+    @Scheduled(initialDelayString = "${app.statistics.dashboard.verify-initial-delay-ms:60000}",
+            fixedDelayString = "${app.statistics.dashboard.verify-interval-ms:300000}")
+    public void verifyCounters() {
+        if (!loaded) return;
+        try {
+            synchronized (this) {
+                Snapshot snapshot = readSnapshot();
+                boolean drifted = customers.get() != snapshot.customers() || products.get() != snapshot.products()
+                        || revenue.get().compareTo(snapshot.revenue()) != 0
+                        || snapshot.ordersByStatus().entrySet().stream()
+                        .anyMatch(e -> ordersByStatus.get(e.getKey()).get() != e.getValue());
+                if (drifted) {
+                    // Có thể do thay đổi ở node khác hoặc sự kiện commit đúng lúc đọc: lấy giá trị DB làm chuẩn
+                    logger.info("Dashboard counters differ from database, reloading");
+                }
+                apply(snapshot);
+            }
+        } catch (Exception e) {
+            logger.error("Dashboard counter verification failed: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.graduationproject.backend.service;
 import com.graduationproject.backend.dto.InvoiceDetailDTO;
 import com.graduationproject.backend.dto.OrderDTOForInvoice;
 import com.graduationproject.backend.dto.OrderItemDTOForInvoice;
+import com.graduationproject.backend.entity.ArchivedOrder;
 import com.graduationproject.backend.entity.Invoice;
 import com.graduationproject.backend.entity.Order;
 import com.graduationproject.backend.entity.User;
@@ -35,6 +36,9 @@ public class InvoiceService {
     @Autowired
     private OrderItemRepository orderItemRepository; // Inject nếu cần tính toán lại subtotal
 
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
     private InvoiceDetailDTO mapInvoiceToDetailDTO(Invoice invoice) {
         if (invoice == null || invoice.getOrder() == null) {
             // ensureInvoiceExists nên đã xử lý việc Order không tồn tại
@@ -105,8 +109,55 @@ public class InvoiceService {
 
         return dto;
     }
+    // Hóa đơn cho đơn hàng đã chuyển sang bảng lưu trữ: dựng trực tiếp từ orders_archive (không ghi bảng invoices)
+    private InvoiceDetailDTO mapArchivedOrderToDetailDTO(ArchivedOrder archivedOrder) {
+        InvoiceDetailDTO dto = new InvoiceDetailDTO();
+        dto.setInvoiceNumber("INV-A" + archivedOrder.getOrderId());
+        dto.setCreatedAt(archivedOrder.getUpdatedAt());
+
+        OrderDTOForInvoice orderDTO = new OrderDTOForInvoice();
+        orderDTO.setOrderId(archivedOrder.getOrderId());
+        orderDTO.setOrderCreatedAt(archivedOrder.getCreatedAt());
+        orderDTO.setCustomerFullName(archivedOrder.getFullNameShipping());
+        orderDTO.setCustomerAddress(archivedOrder.getAddressShipping());
+        orderDTO.setCustomerPhone(archivedOrder.getPhoneShipping());
+        orderDTO.setNotes(archivedOrder.getNotes());
+        orderDTO.setUserId(archivedOrder.getUserId());
+        orderDTO.setCustomerEmail(userService.findById(archivedOrder.getUserId()).map(User::getEmail).orElse("N/A"));
+
+        List<OrderItemDTOForInvoice> itemDTOs = archivedOrder.getOrderItems().stream().map(oi -> {
+            OrderItemDTOForInvoice itemDTO = new OrderItemDTOForInvoice();
+            itemDTO.setProductName(oi.getProduct() != null ? oi.getProduct().getName() : "N/A");
+            itemDTO.setProductSku(oi.getProduct() != null ? oi.getProduct().getBarcode() : "N/A");
+            itemDTO.setQuantity(oi.getQuantity());
+            itemDTO.setPrice(oi.getPrice());
+            return itemDTO;
+        }).collect(Collectors.toList());
+        orderDTO.setOrderItems(itemDTOs);
+
+        BigDecimal subTotal = BigDecimal.ZERO;
+        for (OrderItemDTOForInvoice item : itemDTOs) {
+            subTotal = subTotal.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        orderDTO.setSubTotal(subTotal);
+        orderDTO.setShippingFee(BigDecimal.ZERO);
+        orderDTO.setDiscountAmount(BigDecimal.ZERO);
+        orderDTO.setTotalAmount(archivedOrder.getTotalAmount());
+        orderDTO.setPaymentMethod(archivedOrder.getPaymentMethod().name());
+
+        dto.setOrder(orderDTO);
+        return dto;
+    }
+
     @Transactional
 public InvoiceDetailDTO getInvoiceDetails(int orderId) {
+    // Đơn hàng cũ có thể đã được chuyển sang bảng lưu trữ (chỉ đơn chưa có hóa đơn mới được lưu trữ)
+    if (invoiceRepository.findByOrderOrderId((long) orderId) == null) {
+        Optional<ArchivedOrder> archivedOrder = orderArchiveService.findArchivedOrder(orderId);
+        if (archivedOrder.isPresent()) {
+            return mapArchivedOrderToDetailDTO(archivedOrder.get());
+        }
+    }
     // Bước 1: Đảm bảo hóa đơn tồn tại (có thể tạo mới nếu chưa có)
     // Phương thức này sẽ chạy trong transaction riêng của nó (nếu được gọi từ ngoài)
     // hoặc transaction của getInvoiceDetails (nếu getInvoiceDetails có @Transactional)
@@ -0,0 +1,69 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.JobLease;
+import com.graduationproject.backend.repository.JobLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+@Service
+public class JobLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLeaseService.class);
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    // Định danh node hiện tại (hostname + hậu tố ngẫu nhiên để phân biệt nhiều instance trên cùng máy)
+    private final String ownerId = resolveHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * Thử giành lease cho job. Chạy trong transaction riêng để lease được commit ngay,
+     * không phụ thuộc vào transaction của job.
+     * @return true nếu node này đang giữ lease đến hết {@code duration}
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean tryAcquire(String jobName, Duration duration) {
+        Instant now = Instant.now();
+        if (!jobLeaseRepository.existsById(jobName)) {
+            try {
+                JobLease lease = new JobLease();
+                lease.setJobName(jobName);
+                lease.setLeaseUntil(Timestamp.from(now.minusSeconds(1))); // Tạo sẵn ở trạng thái hết hạn
+                jobLeaseRepository.saveAndFlush(lease);
+            } catch (DataIntegrityViolationException e) {
+                // Node khác vừa tạo cùng lúc, tiếp tục giành lease bằng UPDATE bên dưới
+                logger.debug("Lease row for job {} was created concurrently", jobName);
+            }
+        }
+        int updated = jobLeaseRepository.tryAcquire(jobName, ownerId, Timestamp.from(now), Timestamp.from(now.plus(duration)));
+        return updated == 1;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void release(String jobName) {
+        jobLeaseRepository.release(jobName, ownerId, Timestamp.from(Instant.now()));
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown-host";
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.ArchivedOrder;
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.repository.ArchivedOrderRepository;
+import com.graduationproject.backend.repository.OrderItemRepository;
+import com.graduationproject.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lưu trữ nóng/lạnh cho đơn hàng: chuyển các đơn đã đóng (COMPLETED, CANCELED) cũ hơn mốc cấu hình
+ * từ orders/order_items sang orders_archive/order_items_archive theo từng lô nền.
+ * Đơn còn bị product_reviews hoặc invoices tham chiếu được giữ lại ở bảng nóng (ràng buộc FK).
+ */
+@Service
+public class OrderArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderArchiveService.class);
+
+    private static final String JOB_NAME = "order-archive";
+    private static final EnumSet<OrderStatus> CLOSED_STATUSES = EnumSet.of(OrderStatus.COMPLETED, OrderStatus.CANCELED);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private ArchivedOrderRepository archivedOrderRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Mặc định tắt: thống kê hiện chỉ đọc từ bảng nóng
+    @Value("${app.orders.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.orders.archive.horizon-days:365}")
+    private long horizonDays;
+
+    @Value("${app.orders.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.orders.archive.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.orders.archive.lease-seconds:900}")
+    private long leaseSeconds;
+
+    @Autowired
+    public OrderArchiveService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${app.orders.archive.cron:0 30 3 * * *}")
+    public void archiveClosedOrders() {
+        if (!enabled) return;
+        if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.debug("Skip order archiving: lease is held by another node");
+            return;
+        }
+        try {
+            int totalArchived = runArchiving();
+            logger.info("Order archiving moved {} closed orders to archive tables", totalArchived);
+        } catch (Exception e) {
+            logger.error("Order archiving failed: {}", e.getMessage(), e);
+        } finally {
+            jobLeaseService.release(JOB_NAME);
+        }
+    }
+
+    public int runArchiving() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(Duration.ofDays(horizonDays)));
+        int totalArchived = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<Integer> candidateIds = orderRepository.findArchivableOrderIds(CLOSED_STATUSES, cutoff, PageRequest.of(0, batchSize));
+            if (candidateIds.isEmpty()) break;
+
+            Integer moved = transactionTemplate.execute(status -> archiveBatch(candidateIds));
+            totalArchived += moved != null ? moved : 0;
+            if (candidateIds.size() < batchSize) break;
+        }
+        return totalArchived;
+    }
+
+    // Chạy trong transaction: khóa, sao chép sang bảng lưu trữ rồi xóa khỏi bảng nóng
+    private int archiveBatch(List<Integer> candidateIds) {
+        List<Integer> orderIds = orderRepository.lockArchivableOrderIds(candidateIds, CLOSED_STATUSES);
+        if (orderIds.isEmpty()) return 0;
+
+        dashboardCounterService.onOrdersRemoved(orderRepository.countByOrderIdInGroupByStatus(orderIds));
+        Timestamp archivedAt = Timestamp.from(Instant.now());
+        archivedOrderRepository.copyOrdersToArchive(orderIds, archivedAt);
+        archivedOrderRepository.copyOrderItemsToArchive(orderIds);
+        orderItemRepository.deleteByOrderIdIn(orderIds);
+        orderRepository.deleteByOrderIdIn(orderIds);
+        return orderIds.size();
+    }
+
+    // --- Luồng đọc fallback ---
+
+    @Transactional(readOnly = true)
+    public Optional<ArchivedOrder> findArchivedOrder(int orderId) {
+        return archivedOrderRepository.findByIdWithItems(orderId);
+    }
+}
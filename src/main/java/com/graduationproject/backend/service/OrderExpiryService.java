@@ -0,0 +1,116 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import com.graduationproject.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Job nền tự động hủy các đơn VNPay PENDING mà người mua không quay lại thanh toán.
+ * Đơn quá hạn bị hủy theo từng lô và được hoàn lại tồn kho.
+ * Nhiều node có thể cùng chạy: chỉ node giữ lease "vnpay-order-expiry" mới quét.
+ */
+@Service
+public class OrderExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderExpiryService.class);
+
+    private static final String JOB_NAME = "vnpay-order-expiry";
+    private static final String CANCELLATION_REASON = "Hết hạn thanh toán VNPay";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    // URL thanh toán VNPay hết hạn sau 15 phút, cộng thêm thời gian dự phòng cho callback trễ
+    @Value("${app.orders.vnpay-expiry.expire-after-minutes:30}")
+    private long expireAfterMinutes;
+
+    @Value("${app.orders.vnpay-expiry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.orders.vnpay-expiry.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.orders.vnpay-expiry.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Scheduled(fixedDelayString = "${app.orders.vnpay-expiry.interval-ms:60000}",
+            initialDelayString = "${app.orders.vnpay-expiry.initial-delay-ms:30000}")
+    public void sweepExpiredVnpayOrders() {
+        if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.debug("Skip VNPay expiry sweep: lease is held by another node");
+            return;
+        }
+        try {
+            int totalCanceled = cancelExpiredOrders();
+            if (totalCanceled > 0) {
+                logger.info("VNPay expiry sweep canceled {} orders", totalCanceled);
+            }
+        } catch (Exception e) {
+            logger.error("VNPay expiry sweep failed: {}", e.getMessage(), e);
+        } finally {
+            jobLeaseService.release(JOB_NAME);
+        }
+    }
+
+    // Quét theo lô: mỗi lô một transaction riêng để giữ khóa ngắn
+    public int cancelExpiredOrders() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(Duration.ofMinutes(expireAfterMinutes)));
+        int totalCanceled = 0;
+        // Đơn hủy lỗi vẫn PENDING nên được bỏ qua trong các lô sau của lượt này, lượt sau sẽ thử lại
+        Set<Integer> failedIds = new HashSet<>();
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            int pageSize = batchSize + failedIds.size();
+            List<Integer> candidateIds = orderRepository.findIdsByStatusAndPaymentMethodCreatedBefore(
+                    OrderStatus.PENDING, PaymentMethod.VN_PAY, cutoff, PageRequest.of(0, pageSize));
+            List<Integer> expiredIds = candidateIds.stream().filter(id -> !failedIds.contains(id)).toList();
+            if (expiredIds.isEmpty()) break;
+
+            totalCanceled += cancelBatch(expiredIds, failedIds);
+            if (candidateIds.size() < pageSize) break;
+        }
+        if (!failedIds.isEmpty()) {
+            logger.warn("VNPay expiry sweep could not cancel {} orders: {}", failedIds.size(), failedIds);
+        }
+        return totalCanceled;
+    }
+
+    // Lô lỗi thì hủy lại từng đơn trong transaction riêng để một đơn lỗi không chặn cả lô
+    private int cancelBatch(List<Integer> expiredIds, Set<Integer> failedIds) {
+        try {
+            return orderService.cancelExpiredVnpayOrders(expiredIds, CANCELLATION_REASON);
+        } catch (Exception batchError) {
+            logger.warn("Canceling expired VNPay batch of {} orders failed, retrying one by one: {}",
+                    expiredIds.size(), batchError.getMessage());
+        }
+        int canceled = 0;
+        for (Integer orderId : expiredIds) {
+            try {
+                canceled += orderService.cancelExpiredVnpayOrders(List.of(orderId), CANCELLATION_REASON);
+            } catch (Exception e) {
+                failedIds.add(orderId);
+                logger.error("Failed to cancel expired VNPay order {}: {}", orderId, e.getMessage(), e);
+            }
+        }
+        return canceled;
+    }
+}
@@ -0,0 +1,159 @@
+package com.graduationproject.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Xuất đơn hàng + dòng hàng ra CSV cho kế toán.
+ * Đọc bằng một truy vấn JOIN forward-only và ghi thẳng ra output stream từng dòng,
+ * nên bộ nhớ dùng không phụ thuộc số lượng dòng.
+ */
+@Service
+public class OrderExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderExportService.class);
+
+    private static final String CSV_HEADER = "order_id,created_at,user_id,status,payment_method,vnpay_transaction_id,"
+            + "full_name_shipping,phone_shipping,address_shipping,notes,order_total,"
+            + "order_item_id,product_id,product_name,quantity,unit_price,line_total";
+
+    // Cùng cấu trúc cho bảng nóng và bảng lưu trữ. Sắp theo (created_at, order_id) để quét theo thứ tự chỉ mục
+    // created_at (chỉ mục phụ InnoDB đã kèm khóa chính), không cần filesort; các dòng của một đơn vẫn liền nhau
+    private static final String EXPORT_SQL_TEMPLATE = """
+            SELECT o.order_id, o.created_at, o.user_id, o.status, o.payment_method, o.vnpay_transaction_id,
+                   o.full_name_shipping, o.phone_shipping, o.address_shipping, o.notes, o.total_amount,
+                   oi.order_item_id, oi.product_id, p.name AS product_name, oi.quantity, oi.price
+            FROM %s o
+            JOIN %s oi ON oi.order_id = o.order_id
+            LEFT JOIN products p ON p.product_id = oi.product_id
+            WHERE o.created_at >= ? AND o.created_at < ?
+            ORDER BY o.created_at, o.order_id
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // MySQL chỉ áp dụng fetch size dương khi URL có useCursorFetch=true; nếu không sẽ dùng chế độ streaming từng dòng
+    @Value("${app.orders.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Ghi CSV của các đơn hàng tạo trong [from, to) ra {@code outputStream}.
+     * Bao gồm cả đơn đã chuyển sang bảng lưu trữ.
+     * @return số dòng hàng đã ghi
+     */
+    public long writeOrdersCsv(Timestamp from, Timestamp to, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write('\uFEFF'); // BOM để Excel đọc đúng tiếng Việt
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+
+        long rows = 0;
+        try {
+            rows += streamTable("orders", "order_items", from, to, writer);
+            rows += streamTable("orders_archive", "order_items_archive", from, to, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Client ngắt kết nối giữa chừng
+        }
+        writer.flush();
+        logger.info("Exported {} order lines for range [{}, {})", rows, from, to);
+        return rows;
+    }
+
+    private long streamTable(String ordersTable, String itemsTable, Timestamp from, Timestamp to, Writer writer) {
+        String sql = String.format(EXPORT_SQL_TEMPLATE, ordersTable, itemsTable);
+        long[] count = {0};
+        StringBuilder line = new StringBuilder(256);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            String url = connection.getMetaData().getURL();
+            boolean cursorFetch = url != null && url.contains("useCursorFetch=true");
+            ps.setFetchSize(cursorFetch ? fetchSize : Integer.MIN_VALUE);
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            line.setLength(0);
+            appendRow(rs, line);
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private void appendRow(ResultSet rs, StringBuilder line) throws SQLException {
+        BigDecimal price = rs.getBigDecimal("price");
+        int quantity = rs.getInt("quantity");
+        line.append(rs.getInt("order_id")).append(',');
+        appendCsv(line, rs.getTimestamp("created_at") != null ? rs.getTimestamp("created_at").toString() : null).append(',');
+        line.append(rs.getLong("user_id")).append(',');
+        appendCsv(line, rs.getString("status")).append(',');
+        appendCsv(line, rs.getString("payment_method")).append(',');
+        appendCsv(line, rs.getString("vnpay_transaction_id")).append(',');
+        appendCsv(line, rs.getString("full_name_shipping")).append(',');
+        appendCsv(line, rs.getString("phone_shipping")).append(',');
+        appendCsv(line, rs.getString("address_shipping")).append(',');
+        appendCsv(line, rs.getString("notes")).append(',');
+        line.append(toPlain(rs.getBigDecimal("total_amount"))).append(',');
+        line.append(rs.getInt("order_item_id")).append(',');
+        line.append(rs.getInt("product_id")).append(',');
+        appendCsv(line, rs.getString("product_name")).append(',');
+        line.append(quantity).append(',');
+        line.append(toPlain(price)).append(',');
+        line.append(price != null ? price.multiply(BigDecimal.valueOf(quantity)).toPlainString() : "");
+        line.append('\n');
+    }
+
+    private static String toPlain(BigDecimal value) {
+        return value != null ? value.toPlainString() : "";
+    }
+
+    // Escape theo RFC 4180: bọc trong dấu " nếu có dấu phẩy, nháy kép hoặc xuống dòng.
+    // Ô văn bản bắt đầu bằng = + - @ tab hoặc CR được thêm ' phía trước để Excel/Sheets không chạy như công thức
+    private static StringBuilder appendCsv(StringBuilder line, String value) {
+        if (value == null || value.isEmpty()) return line;
+        if (isFormulaTrigger(value.charAt(0))) value = "'" + value;
+        boolean needsQuote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuote = true;
+                break;
+            }
+        }
+        if (!needsQuote) return line.append(value);
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static boolean isFormulaTrigger(char c) {
+        return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t' || c == '\r';
+    }
+}
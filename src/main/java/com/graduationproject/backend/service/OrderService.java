@@ -24,6 +24,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -34,6 +36,9 @@ public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
 
+    // Phí giao hàng, giả định bằng 0 như trong mã frontend (dùng chung với báo giá checkout)
+    public static final BigDecimal SHIPPING_FEE = BigDecimal.ZERO;
+
     @Autowired
     private CartRepository cartRepository;
 
@@ -57,6 +62,38 @@ public class OrderService {
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private StatisticRollupService statisticRollupService;
+
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
+    // Mọi lần đổi trạng thái đơn hàng: cập nhật bảng tổng hợp thống kê và bộ đếm Dashboard
+    private void onOrderStatusChanged(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        statisticRollupService.onOrderStatusChanged(order.getOrderId(), oldStatus, newStatus);
+        dashboardCounterService.onOrderStatusChanged(oldStatus, newStatus, order.getTotalAmount());
+    }
+
+    // Giỏ hàng trong CartStore đã cũ sau khi transaction này sửa carts/cart_items trực tiếp
+    private void evictCartAfterCommit(long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cartStore.evict(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cartStore.evict(userId);
+            }
+        });
+    }
+
     // Helper map Order Item Entity sang DTO
     private OrderItemDTO mapOrderItemToDTO(OrderItem item) {
         OrderItemDTO dto = new OrderItemDTO();
@@ -71,6 +108,37 @@ public class OrderService {
         return dto;
     }
 
+    // Helper map đơn hàng đã lưu trữ sang cùng OrderDTO
+    public OrderDTO mapArchivedOrderToDTO(ArchivedOrder order) {
+        if (order == null) return null;
+        OrderDTO dto = new OrderDTO();
+        dto.setOrderId(order.getOrderId());
+        dto.setUserId(order.getUserId());
+        dto.setTotalAmount(order.getTotalAmount());
+        dto.setStatus(order.getStatus().name());
+        dto.setPaymentMethod(order.getPaymentMethod().name());
+        dto.setVnpayTransactionId(order.getVnpayTransactionId());
+        dto.setCreatedAt(order.getCreatedAt());
+        dto.setUpdatedAt(order.getUpdatedAt());
+        dto.setFullNameShipping(order.getFullNameShipping());
+        dto.setPhoneShipping(order.getPhoneShipping());
+        dto.setAddressShipping(order.getAddressShipping());
+        dto.setNotes(order.getNotes());
+        dto.setOrderItems(order.getOrderItems().stream().map(item -> {
+            OrderItemDTO itemDTO = new OrderItemDTO();
+            itemDTO.setOrderItemId(item.getOrderItemId());
+            itemDTO.setQuantity(item.getQuantity());
+            itemDTO.setPrice(item.getPrice());
+            if (item.getProduct() != null) {
+                itemDTO.setProductId(item.getProduct().getProductId());
+                itemDTO.setProductName(item.getProduct().getName());
+                itemDTO.setProductImageUrl(item.getProduct().getPrimaryImageUrl());
+            }
+            return itemDTO;
+        }).collect(Collectors.toList()));
+        return dto;
+    }
+
     // Helper map Order Entity sang DTO
     public OrderDTO mapOrderToDTO(Order order) {
         if (order == null) return null;
@@ -107,6 +175,8 @@ public class OrderService {
     // Nếu bạn chỉ dùng createOrderFromSelectedItems, có thể bỏ phương thức này
     @Transactional // Rất quan trọng: đảm bảo toàn vẹn đơn hàng và tồn kho
     public OrderDTO createOrderFromCart(long userId, PaymentMethod paymentMethod, String clientIpAddress) {
+        // Ghi các thay đổi giỏ hàng còn trong bộ nhớ trước khi đọc từ DB (trong cùng transaction này, không mở connection mới)
+        cartStore.flush(userId);
         // Lấy giỏ hàng
         Cart cart = cartRepository.findByUserId(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
@@ -168,10 +238,12 @@ public class OrderService {
         }
         // Lưu order lần cuối với tổng tiền và thông tin thanh toán tạm thời
         Order finalOrder = orderRepository.save(savedOrder);
+        dashboardCounterService.onOrderStatusChanged(null, OrderStatus.PENDING, finalOrder.getTotalAmount());
 
         // Xóa toàn bộ giỏ hàng sau khi tạo đơn từ toàn bộ giỏ hàng (cho cả COD và VNPay ban đầu)
         // Lưu ý: Nếu dùng createOrderFromSelectedItems, việc xóa giỏ hàng sẽ được xử lý khác
         cartRepository.delete(cart);
+        evictCartAfterCommit(userId);
 
         // Trigger loading items trước khi map để đảm bảo DTO có đủ dữ liệu
         finalOrder.getOrderItems().size();
@@ -207,8 +279,7 @@ public class OrderService {
         List<Integer> productIds = request.getItems().stream().map(SelectedItemDTO::getProductId).distinct().collect(Collectors.toList());
         Map<Integer, Product> productMap = productService.findProductsMapByIds(productIds); // Lấy products 1 lần
 
-        // Phí giao hàng, giả định bằng 0 như trong mã frontend
-        BigDecimal shippingFee = BigDecimal.valueOf(0);
+        BigDecimal shippingFee = SHIPPING_FEE;
 
         for (SelectedItemDTO selectedItem : request.getItems()) {
             int productId = selectedItem.getProductId();
@@ -265,6 +336,7 @@ public class OrderService {
 
         // Lưu order lần cuối với tổng tiền và thông tin thanh toán
         Order finalOrder = orderRepository.save(savedOrder);
+        dashboardCounterService.onOrderStatusChanged(null, OrderStatus.PENDING, finalOrder.getTotalAmount());
 
 
         // Đảm bảo order items được load trước khi map sang DTO (tránh LazyInitializationException)
@@ -280,15 +352,29 @@ public class OrderService {
     }
 
     // Tìm Order DTO theo ID (để hiển thị thông tin, cần readOnly transaction)
+    // Nếu đơn đã được chuyển sang bảng lưu trữ thì đọc từ orders_archive
     @Transactional(readOnly = true)
     public OrderDTO findOrderDTOById(int orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
+        Optional<Order> orderOpt = orderRepository.findById(orderId);
+        if (orderOpt.isEmpty()) {
+            return orderArchiveService.findArchivedOrder(orderId)
+                    .map(this::mapArchivedOrderToDTO)
+                    .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
+        }
+        Order order = orderOpt.get();
         // Trigger lazy loading OrderItems bên trong readOnly transaction
         order.getOrderItems().size();
         return mapOrderToDTO(order);
     }
 
+    // Lấy userId chủ đơn hàng (bảng nóng hoặc bảng lưu trữ), dùng để kiểm tra quyền
+    @Transactional(readOnly = true)
+    public long findOrderOwnerId(int orderId) {
+        return orderRepository.findUserIdByOrderId(orderId)
+                .or(() -> orderArchiveService.findArchivedOrder(orderId).map(ArchivedOrder::getUserId))
+                .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
+    }
+
     // Tìm Order Entity theo ID (dùng nội bộ, ví dụ khi cần cập nhật order)
     // Phương thức gọi nó cần có @Transactional
     public Order findOrderEntityById(int orderId) {
@@ -320,8 +406,9 @@ public class OrderService {
     // Hủy đơn hàng
     @Transactional // Quan trọng: đảm bảo toàn vẹn khi hủy, hoàn kho, hoàn tiền
     public boolean cancelOrder(int orderId, String reason) {
-        // Lấy entity order bên trong transaction
-        Order order = findOrderEntityById(orderId);
+        // Lấy và khóa entity order bên trong transaction (số liệu thống kê cộng dồn theo trạng thái cũ)
+        Order order = orderRepository.findByIdForUpdate(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
         OrderStatus currentStatus = order.getStatus();
 
         // *** Áp dụng quy tắc hủy đơn hàng ***
@@ -335,6 +422,7 @@ public class OrderService {
         if (cancellableStatuses.contains(currentStatus)) {
             // Đặt trạng thái thành CANCELED
             order.setStatus(OrderStatus.CANCELED);
+            onOrderStatusChanged(order, currentStatus, OrderStatus.CANCELED);
             // Lưu lý do hủy
             order.setCancellationReason(reason);
             // Không cần save ngay, transaction sẽ commit cuối phương thức nếu không có exception
@@ -372,6 +460,35 @@ public class OrderService {
         }
     }
 
+    // Hủy một lô đơn hàng VNPay PENDING đã quá hạn thanh toán (gọi từ OrderExpiryService)
+    // Đơn được khóa FOR UPDATE và lọc lại theo trạng thái PENDING để không đụng đơn vừa được thanh toán
+    @Transactional
+    public int cancelExpiredVnpayOrders(List<Integer> orderIds, String reason) {
+        if (orderIds == null || orderIds.isEmpty()) return 0;
+
+        List<Order> lockedOrders = orderRepository.lockByIdInAndStatus(orderIds, OrderStatus.PENDING);
+        if (lockedOrders.isEmpty()) return 0;
+
+        List<Integer> canceledIds = new ArrayList<>(lockedOrders.size());
+        for (Order order : lockedOrders) {
+            order.setStatus(OrderStatus.CANCELED);
+            order.setCancellationReason(reason);
+            onOrderStatusChanged(order, OrderStatus.PENDING, OrderStatus.CANCELED);
+            canceledIds.add(order.getOrderId());
+        }
+
+        // Hoàn kho gộp: mỗi sản phẩm chỉ một câu UPDATE cho cả lô
+        List<Object[]> quantities = orderItemRepository.sumQuantityByProductForOrders(canceledIds);
+        for (Object[] row : quantities) {
+            int productId = (Integer) row[0];
+            long totalQuantity = (Long) row[1];
+            productService.increaseStock(productId, (int) totalQuantity);
+        }
+
+        logger.info("Canceled {} expired VNPay orders, restored stock for {} products", canceledIds.size(), quantities.size());
+        return canceledIds.size();
+    }
+
 
     @Transactional // Rất quan trọng: đảm bảo toàn vẹn khi xử lý kết quả VNPay, cập nhật status, xóa giỏ hàng, hoàn kho
     public OrderDTO handleVnpayReturn(Map<String, String> vnpayParams) {
@@ -380,26 +497,55 @@ public class OrderService {
         if (vnPayService == null) {
             throw new OperationFailedException("VNPay Service is not configured.");
         }
-        if (!vnPayService.validateReturnSignature(vnpayParams)) {
+        // validateReturnSignature xóa vnp_SecureHash khỏi map nên truyền bản sao
+        if (!vnPayService.validateReturnSignature(new HashMap<>(vnpayParams))) {
             // Nếu chữ ký không hợp lệ, ném exception để transaction rollback
             throw new BadRequestException("Chữ ký trả về VNPay không hợp lệ.");
         }
 
-        String vnp_TxnRef = vnpayParams.get("vnp_TxnRef"); // Mã đơn hàng (Order ID)
-        String vnp_ResponseCode = vnpayParams.get("vnp_ResponseCode"); // Mã phản hồi từ VNPay
-        String vnp_TransactionNo = vnpayParams.get("vnp_TransactionNo"); // Mã giao dịch VNPay (nếu thành công)
-        // Có thể lấy thêm các tham số khác nếu muốn lưu chi tiết giao dịch (vnp_Amount, vnp_BankCode, vnp_PayDate, vnp_CardType...)
+        return applyVnpayResult(vnpayParams);
+    }
 
-        int orderId;
+    /**
+     * Áp dụng thông báo IPN VNPay (chữ ký đã được xác thực khi nhận).
+     * Được gọi từ worker của PaymentNotificationService, mỗi thông báo tối đa một lần.
+     */
+    @Transactional
+    public OrderDTO applyVnpayNotification(Map<String, String> vnpayParams) {
+        String vnp_Amount = vnpayParams.get("vnp_Amount");
+        if (vnp_Amount != null && "00".equals(vnpayParams.get("vnp_ResponseCode"))) {
+            int orderId = parseVnpayOrderId(vnpayParams.get("vnp_TxnRef"));
+            Order order = orderRepository.findByIdForUpdate(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
+            // VNPay gửi số tiền nhân 100
+            BigDecimal expectedAmount = order.getTotalAmount().multiply(BigDecimal.valueOf(100));
+            if (expectedAmount.compareTo(new BigDecimal(vnp_Amount)) != 0) {
+                throw new BadRequestException("Số tiền VNPay (" + vnp_Amount + ") không khớp với đơn hàng " + orderId);
+            }
+        }
+        return applyVnpayResult(vnpayParams);
+    }
+
+    private int parseVnpayOrderId(String vnp_TxnRef) {
         try {
-            orderId = Integer.parseInt(vnp_TxnRef);
+            return Integer.parseInt(vnp_TxnRef);
         } catch (NumberFormatException e) {
-            // Ném lỗi nếu Order ID không hợp lệ, transaction rollback
             throw new BadRequestException("Định dạng ID đơn hàng không hợp lệ trong phản hồi VNPay: " + vnp_TxnRef);
         }
+    }
 
-        // Lấy entity order bên trong transaction
-        Order order = findOrderEntityById(orderId);
+    // Dùng chung cho return redirect và IPN; khóa dòng đơn hàng để hai luồng không cập nhật chồng nhau
+    private OrderDTO applyVnpayResult(Map<String, String> vnpayParams) {
+        String vnp_TxnRef = vnpayParams.get("vnp_TxnRef"); // Mã đơn hàng (Order ID)
+        String vnp_ResponseCode = vnpayParams.get("vnp_ResponseCode"); // Mã phản hồi từ VNPay
+        String vnp_TransactionNo = vnpayParams.get("vnp_TransactionNo"); // Mã giao dịch VNPay (nếu thành công)
+        // Có thể lấy thêm các tham số khác nếu muốn lưu chi tiết giao dịch (vnp_Amount, vnp_BankCode, vnp_PayDate, vnp_CardType...)
+
+        int orderId = parseVnpayOrderId(vnp_TxnRef);
+
+        // Lấy và khóa entity order bên trong transaction
+        Order order = orderRepository.findByIdForUpdate(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
 
         // Kiểm tra để tránh xử lý lặp lại hoặc xử lý đơn hàng đã ở trạng thái cuối cùng
         // Nếu đơn hàng không ở trạng thái PENDING (trạng thái ban đầu khi tạo đơn VNPay),
@@ -416,12 +562,14 @@ public class OrderService {
             // Giao dịch thành công -> Cập nhật trạng thái thành PAID
             order.setStatus(OrderStatus.PAID);
             order.setVnpayTransactionId(vnp_TransactionNo); // Lưu Mã giao dịch VNPay chính thức
+            onOrderStatusChanged(order, OrderStatus.PENDING, OrderStatus.PAID);
 
             System.out.println("Thanh toán thành công cho đơn hàng: " + orderId);
 
             // --- BƯỚC 3: XÓA SẢN PHẨM KHỎI GIỎ HÀNG KHI THANH TOÁN VNPay THÀNH CÔNG ---
             try {
                 long userId = order.getUserId();
+                cartStore.flush(userId);
                 // Tìm giỏ hàng của người dùng tương ứng
                 Cart userCart = cartRepository.findByUserId(userId).orElse(null); // Giỏ hàng có thể không tồn tại
 
@@ -442,7 +590,9 @@ public class OrderService {
                         // Xóa các entity CartItem khỏi repository (xóa khỏi DB)
                         cartItemRepository.deleteAll(itemsToRemove);
                         // Lưu lại entity Cart đã được cập nhật danh sách items (có thể không cần thiết nếu quan hệ @OneToMany đủ cấu hình Cascade)
+                        userCart.setVersion(Math.max(userCart.getVersion() + 1, System.currentTimeMillis())); // Để ETag cũ của client hết hiệu lực
                         cartRepository.save(userCart);
+                        evictCartAfterCommit(userId);
 
                         System.out.println("Đã xóa " + itemsToRemove.size() + " sản phẩm khỏi giỏ hàng cho đơn hàng thanh toán thành công " + orderId);
                     } else {
@@ -462,6 +612,7 @@ public class OrderService {
         } else {
             // Giao dịch thất bại -> Cập nhật trạng thái thành CANCELED
             order.setStatus(OrderStatus.CANCELED);
+            onOrderStatusChanged(order, OrderStatus.PENDING, OrderStatus.CANCELED);
             // Tùy chọn lưu mã lỗi VNPay hoặc thông tin thất bại
             // order.setVnpayTransactionId("FAILED_VNPAY_" + vnp_ResponseCode); // Ví dụ
 
@@ -503,7 +654,9 @@ public class OrderService {
 
     @Transactional // Quan trọng
     public OrderDTO updateOrderStatus(int orderId, OrderStatus newStatus) {
-        Order order = findOrderEntityById(orderId); // Lấy entity bên trong transaction
+        // Lấy và khóa entity bên trong transaction để hai lần đổi trạng thái đồng thời không cộng thống kê hai lần
+        Order order = orderRepository.findByIdForUpdate(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Đơn hàng", "orderId", orderId));
         OrderStatus currentStatus = order.getStatus();
 
         // Không làm gì nếu trạng thái mới giống trạng thái cũ
@@ -555,6 +708,7 @@ public class OrderService {
 
         // Cập nhật trạng thái mới
         order.setStatus(newStatus);
+        onOrderStatusChanged(order, currentStatus, newStatus);
 
         // Lưu lại order đã cập nhật
         // orderRepository.save(order); // Không cần gọi save() tường minh trong @Transactional nếu entity đã managed
@@ -0,0 +1,204 @@
+package com.graduationproject.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graduationproject.backend.entity.PaymentNotification;
+import com.graduationproject.backend.entity.enums.NotificationStatus;
+import com.graduationproject.backend.repository.PaymentNotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nhận IPN (server-to-server) từ VNPay: xác thực chữ ký, ghi nhận vào bảng payment_notifications
+ * rồi phản hồi ngay; việc cập nhật đơn hàng do pool worker xử lý bất đồng bộ.
+ * Mỗi cặp (vnp_TxnRef, vnp_TransactionNo) được ghi nhận một lần nhờ ràng buộc unique; tại mỗi thời điểm chỉ
+ * một worker xử lý nhờ bước nhận có điều kiện. Thông báo PROCESSING của node đã chết được nhận lại sau thời gian chờ,
+ * FAILED được thử lại tới số lần cấu hình (cập nhật đơn hàng bỏ qua đơn đã rời PENDING nên áp lại là an toàn).
+ */
+@Service
+public class PaymentNotificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentNotificationService.class);
+
+    // Mã phản hồi IPN theo tài liệu VNPay
+    private static final Map<String, String> RESPONSE_CONFIRMED = ipnResponse("00", "Confirm Success");
+    private static final Map<String, String> RESPONSE_ALREADY_CONFIRMED = ipnResponse("02", "Order already confirmed");
+    private static final Map<String, String> RESPONSE_INVALID_CHECKSUM = ipnResponse("97", "Invalid Checksum");
+    private static final Map<String, String> RESPONSE_UNKNOWN_ERROR = ipnResponse("99", "Unknown error");
+
+    @Autowired
+    private PaymentNotificationRepository paymentNotificationRepository;
+
+    @Autowired
+    private VnPayService vnPayService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("paymentNotificationExecutor")
+    private ThreadPoolTaskExecutor executor;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.vnpay.ipn.requeue-after-seconds:30}")
+    private long requeueAfterSeconds;
+
+    @Value("${app.vnpay.ipn.requeue-batch-size:200}")
+    private int requeueBatchSize;
+
+    @Value("${app.vnpay.ipn.processing-timeout-seconds:300}")
+    private long processingTimeoutSeconds;
+
+    @Value("${app.vnpay.ipn.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.vnpay.ipn.retry-after-seconds:60}")
+    private long retryAfterSeconds;
+
+    @Autowired
+    public PaymentNotificationService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Xử lý request IPN: chỉ xác thực, ghi nhận và đưa vào hàng đợi.
+     * @return body JSON phản hồi cho VNPay ({"RspCode": ..., "Message": ...})
+     */
+    public Map<String, String> receiveIpn(Map<String, String> vnpayParams) {
+        // validateReturnSignature xóa vnp_SecureHash khỏi map nên truyền bản sao
+        if (!vnPayService.validateReturnSignature(new HashMap<>(vnpayParams))) {
+            logger.warn("Rejected VNPay IPN with invalid checksum, txnRef={}", vnpayParams.get("vnp_TxnRef"));
+            return RESPONSE_INVALID_CHECKSUM;
+        }
+        String txnRef = vnpayParams.get("vnp_TxnRef");
+        if (txnRef == null || txnRef.isBlank()) {
+            return RESPONSE_UNKNOWN_ERROR;
+        }
+
+        PaymentNotification notification = new PaymentNotification();
+        notification.setTxnRef(txnRef);
+        String transactionNo = vnpayParams.get("vnp_TransactionNo");
+        notification.setTransactionNo(transactionNo != null ? transactionNo : "");
+        notification.setResponseCode(vnpayParams.get("vnp_ResponseCode"));
+        notification.setStatus(NotificationStatus.RECEIVED);
+        try {
+            notification.setRawParams(objectMapper.writeValueAsString(vnpayParams));
+            notification = paymentNotificationRepository.saveAndFlush(notification);
+        } catch (DataIntegrityViolationException e) {
+            // VNPay gửi lại cùng một giao dịch: đã ghi nhận trước đó
+            logger.info("Duplicate VNPay IPN for txnRef={}, transactionNo={}", txnRef, transactionNo);
+            return RESPONSE_ALREADY_CONFIRMED;
+        } catch (JsonProcessingException e) {
+            logger.error("Cannot serialize VNPay IPN params for txnRef={}", txnRef, e);
+            return RESPONSE_UNKNOWN_ERROR;
+        }
+
+        enqueue(notification.getId());
+        return RESPONSE_CONFIRMED;
+    }
+
+    // Hàng đợi đầy: thông báo vẫn ở trạng thái RECEIVED và được requeueStaleNotifications đưa vào sau
+    private void enqueue(long notificationId) {
+        try {
+            executor.execute(() -> process(notificationId));
+        } catch (TaskRejectedException e) {
+            logger.warn("VNPay IPN queue is full, notification {} will be retried by the requeue job", notificationId);
+        }
+    }
+
+    // Chạy trên thread worker
+    void process(long notificationId) {
+        Instant now = Instant.now();
+        Integer claimed = transactionTemplate.execute(status -> paymentNotificationRepository.claim(notificationId,
+                Timestamp.from(now), Timestamp.from(now.minusSeconds(processingTimeoutSeconds)),
+                maxAttempts, Timestamp.from(now.minusSeconds(retryAfterSeconds))));
+        if (claimed == null || claimed == 0) {
+            return; // Worker khác đã nhận, đã xong hoặc hết lượt thử
+        }
+
+        NotificationStatus result = NotificationStatus.PROCESSED;
+        String errorMessage = null;
+        int attempt = 0;
+        try {
+            PaymentNotification notification = paymentNotificationRepository.findById(notificationId).orElseThrow();
+            attempt = notification.getAttempts();
+            Map<String, String> params = objectMapper.readValue(notification.getRawParams(), new TypeReference<LinkedHashMap<String, String>>() {});
+            orderService.applyVnpayNotification(params);
+        } catch (Exception e) {
+            result = NotificationStatus.FAILED;
+            errorMessage = e.getMessage() != null && e.getMessage().length() > 500 ? e.getMessage().substring(0, 500) : e.getMessage();
+            if (attempt >= maxAttempts) {
+                logger.error("Giving up VNPay IPN notification {} after {} attempts: {}", notificationId, attempt, e.getMessage(), e);
+            } else {
+                logger.warn("Failed to apply VNPay IPN notification {} (attempt {}/{}): {}", notificationId, attempt, maxAttempts, e.getMessage(), e);
+            }
+        }
+
+        NotificationStatus finalStatus = result;
+        String finalError = errorMessage;
+        int finalAttempt = attempt;
+        Integer finished = transactionTemplate.execute(status -> paymentNotificationRepository.markFinished(
+                notificationId, finalAttempt, finalStatus, Timestamp.from(Instant.now()), finalError));
+        if (finished == null || finished == 0) {
+            logger.warn("VNPay IPN notification {} was reclaimed by another worker before attempt {} finished", notificationId, finalAttempt);
+        }
+    }
+
+    // Đưa lại các thông báo bị bỏ lại: RECEIVED chưa vào worker (hàng đợi đầy, node restart), PROCESSING của worker đã chết,
+    // FAILED còn lượt thử. Không cần lease: bước claim đã nguyên tử
+    @Scheduled(fixedDelayString = "${app.vnpay.ipn.requeue-interval-ms:30000}",
+            initialDelayString = "${app.vnpay.ipn.requeue-initial-delay-ms:20000}")
+    public void requeueStaleNotifications() {
+        try {
+            Instant now = Instant.now();
+            PageRequest page = PageRequest.of(0, requeueBatchSize);
+            List<Long> received = paymentNotificationRepository.findIdsByStatusReceivedBefore(
+                    NotificationStatus.RECEIVED, Timestamp.from(now.minus(Duration.ofSeconds(requeueAfterSeconds))), page);
+            List<Long> stuck = paymentNotificationRepository.findIdsStuckProcessing(
+                    Timestamp.from(now.minus(Duration.ofSeconds(processingTimeoutSeconds))), page);
+            List<Long> failed = paymentNotificationRepository.findIdsRetryableFailed(
+                    maxAttempts, Timestamp.from(now.minus(Duration.ofSeconds(retryAfterSeconds))), page);
+            received.forEach(this::enqueue);
+            stuck.forEach(this::enqueue);
+            failed.forEach(this::enqueue);
+            if (!received.isEmpty() || !stuck.isEmpty() || !failed.isEmpty()) {
+                logger.info("Requeued VNPay IPN notifications: {} pending, {} stuck in processing, {} failed for retry",
+                        received.size(), stuck.size(), failed.size());
+            }
+        } catch (Exception e) {
+            logger.error("VNPay IPN requeue failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, String> ipnResponse(String rspCode, String message) {
+        Map<String, String> response = new LinkedHashMap<>();
+        response.put("RspCode", rspCode);
+        response.put("Message", message);
+        return Collections.unmodifiableMap(response);
+    }
+}
@@ -0,0 +1,213 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Số liệu đánh giá của sản phẩm (rating_sum, rating_count, average_rating, review_count và phân bố 1-5 sao):
+ * - Mỗi thay đổi đánh giá chỉ cộng dồn delta bằng một câu UPDATE, không quét lại product_reviews.
+ * - Job kiểm tra định kỳ so sánh với đánh giá hiển thị thực tế và sửa sai lệch.
+ * - Lần khởi động đầu sau khi thêm cột (sản phẩm có đánh giá nhưng rating_count còn 0) chạy {@link #rebuildAll()};
+ *   tới lúc đó delta của sản phẩm chưa dựng lại bị bỏ qua để không ghi đè điểm trung bình cũ.
+ * - {@link #rebuildAll()} dựng lại toàn bộ theo từng khoảng productId bằng UPDATE ... JOIN.
+ */
+@Service
+public class ProductRatingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductRatingService.class);
+
+    private static final String VERIFY_JOB_NAME = "product-rating-verifier";
+    private static final String REBUILD_JOB_NAME = "product-rating-rebuild";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.reviews.rating-verifier.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.reviews.rating-verifier.lease-seconds:900}")
+    private long leaseSeconds;
+
+    // Số liệu lưu trên products và số liệu thực tế tính từ product_reviews của một sản phẩm
+    private record RatingRow(int productId, Integer reviewCount, long storedSum, int storedCount, int[] storedBuckets,
+                             long actualSum, int actualCount, int[] actualBuckets) {
+
+        // row theo thứ tự cột của ProductRepository.findRatingAggregatesAfterId
+        static RatingRow of(Object[] row) {
+            int[] stored = new int[5];
+            int[] actual = new int[5];
+            for (int i = 0; i < 5; i++) {
+                stored[i] = toInt(row[4 + i]);
+                actual[i] = toInt(row[11 + i]); // SUM trên LEFT JOIN không có dòng nào trả về null
+            }
+            return new RatingRow(toInt(row[0]), row[1] != null ? toInt(row[1]) : null, toLong(row[2]), toInt(row[3]), stored,
+                    toLong(row[9]), toInt(row[10]), actual);
+        }
+
+        boolean isDrifted() {
+            return storedSum != actualSum || storedCount != actualCount || !Objects.equals(reviewCount, actualCount)
+                    || !Arrays.equals(storedBuckets, actualBuckets);
+        }
+    }
+
+    @Autowired
+    public ProductRatingService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Cộng dồn thay đổi khi một đánh giá chuyển từ (oldVisible, oldRating) sang (newVisible, newRating).
+     * Thêm mới: oldVisible = false; xóa: newVisible = false. Phải chạy trong transaction ghi đánh giá.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyChange(int productId, boolean oldVisible, int oldRating, boolean newVisible, int newRating) {
+        int[] buckets = new int[5];
+        if (oldVisible) buckets[bucketOf(oldRating)]--;
+        if (newVisible) buckets[bucketOf(newRating)]++;
+        long sumDelta = (newVisible ? newRating : 0) - (oldVisible ? oldRating : 0);
+        int countDelta = (newVisible ? 1 : 0) - (oldVisible ? 1 : 0);
+        if (sumDelta == 0 && countDelta == 0 && Arrays.stream(buckets).allMatch(d -> d == 0)) return;
+        int updated = productRepository.applyRatingDelta(productId, sumDelta, countDelta,
+                buckets[0], buckets[1], buckets[2], buckets[3], buckets[4]);
+        if (updated == 0) {
+            logger.debug("Skipped rating delta for Product ID {}: aggregates not backfilled yet", productId);
+            return;
+        }
+        logger.debug("Applied rating delta to Product ID {}: sum {}, count {}", productId, sumDelta, countDelta);
+    }
+
+    // Dữ liệu có từ trước khi thêm các cột cộng dồn: dựng lại một lần bằng UPDATE ... JOIN theo khoảng
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        try {
+            Long needed = transactionTemplate.execute(status -> productRepository.existsProductsNeedingRatingBackfill());
+            if (needed != null && needed > 0) {
+                logger.info("Products have reviews but no rating aggregates, rebuilding rating aggregates");
+                rebuildAll();
+            }
+        } catch (Exception e) {
+            logger.error("Initial rating aggregate backfill failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private static int bucketOf(int rating) {
+        return Math.min(5, Math.max(1, rating)) - 1;
+    }
+
+    /**
+     * Tính lại hoàn toàn từ product_reviews dưới khóa dòng sản phẩm.
+     * Khóa được lấy trước khi đọc nên các đánh giá đã ghi xong (đã cộng delta) đều được tính,
+     * còn đánh giá đang ghi dở sẽ cộng delta của nó sau khi transaction này commit.
+     * @return true nếu số liệu đã lưu bị lệch và đã được sửa
+     */
+    @Transactional
+    public boolean recompute(int productId) {
+        if (productRepository.lockById(productId).isEmpty()) return false;
+        RatingRow row = RatingRow.of(productRepository.findRatingAggregatesAfterId(productId - 1, PageRequest.of(0, 1)).get(0));
+        if (!row.isDrifted()) return false;
+        int[] c = row.actualBuckets();
+        productRepository.setRatingAggregates(productId, row.actualSum(), row.actualCount(), c[0], c[1], c[2], c[3], c[4]);
+        return true;
+    }
+
+    @Scheduled(initialDelayString = "${app.reviews.rating-verifier.initial-delay-ms:60000}",
+            fixedDelayString = "${app.reviews.rating-verifier.interval-ms:21600000}")
+    public void verifyRatingAggregates() {
+        if (!jobLeaseService.tryAcquire(VERIFY_JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.debug("Skip rating verification: lease is held by another node");
+            return;
+        }
+        try {
+            int[] result = runVerification();
+            if (result[1] > 0) {
+                logger.warn("Rating verifier corrected {} of {} products with drifted aggregates", result[1], result[0]);
+            } else {
+                logger.info("Rating verifier checked {} products, no drift found", result[0]);
+            }
+        } catch (Exception e) {
+            logger.error("Rating verification failed: {}", e.getMessage(), e);
+        } finally {
+            jobLeaseService.release(VERIFY_JOB_NAME);
+        }
+    }
+
+    /** @return [số sản phẩm đã kiểm tra, số sản phẩm đã sửa] */
+    public int[] runVerification() {
+        int checked = 0;
+        int corrected = 0;
+        int afterId = 0;
+        while (true) {
+            int cursor = afterId;
+            List<Object[]> page = transactionTemplate.execute(status ->
+                    productRepository.findRatingAggregatesAfterId(cursor, PageRequest.of(0, batchSize)));
+            if (page == null || page.isEmpty()) break;
+            for (Object[] raw : page) {
+                RatingRow row = RatingRow.of(raw);
+                // Lệch khi quét chưa chắc còn lệch: tính lại dưới khóa rồi mới ghi
+                if (row.isDrifted() && Boolean.TRUE.equals(transactionTemplate.execute(status -> recompute(row.productId())))) {
+                    corrected++;
+                }
+                afterId = row.productId();
+            }
+            checked += page.size();
+            if (page.size() < batchSize) break;
+        }
+        return new int[]{checked, corrected};
+    }
+
+    /**
+     * Dựng lại số liệu đánh giá của mọi sản phẩm, mỗi khoảng {@code batchSize} productId một transaction.
+     * Đánh giá commit đúng lúc một khoảng đang được dựng lại có thể bị tính thiếu; job kiểm tra sẽ sửa ở lượt sau.
+     * @return số sản phẩm đã cập nhật, hoặc -1 nếu node khác đang chạy
+     */
+    public int rebuildAll() {
+        if (!jobLeaseService.tryAcquire(REBUILD_JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.info("Skip rating rebuild: lease is held by another node");
+            return -1;
+        }
+        try {
+            int maxProductId = productRepository.findMaxProductId();
+            int updated = 0;
+            for (int fromId = 1; fromId <= maxProductId; fromId += batchSize) {
+                int from = fromId;
+                int to = fromId + batchSize - 1;
+                Integer rows = transactionTemplate.execute(status -> productRepository.rebuildRatingAggregates(from, to));
+                updated += rows != null ? rows : 0;
+            }
+            logger.info("Rebuilt rating aggregates for {} products", updated);
+            return updated;
+        } finally {
+            jobLeaseService.release(REBUILD_JOB_NAME);
+        }
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -1,6 +1,8 @@
 package com.graduationproject.backend.service;
 
 import com.graduationproject.backend.dto.ProductReviewDTO;
+import com.graduationproject.backend.dto.ReviewCursorPageDTO;
+import com.graduationproject.backend.dto.ReviewEligibilityDTO;
 import com.graduationproject.backend.dto.ReviewRequestDTO;
 import com.graduationproject.backend.entity.Order;
 import com.graduationproject.backend.entity.OrderItem;
@@ -10,23 +12,39 @@ import com.graduationproject.backend.entity.User;
 import com.graduationproject.backend.entity.enums.OrderStatus;
 import com.graduationproject.backend.exception.BadRequestException;
 import com.graduationproject.backend.exception.ResourceNotFoundException;
+import com.graduationproject.backend.repository.OrderRepository;
+import com.graduationproject.backend.repository.ProductRepository;
 import com.graduationproject.backend.repository.ProductReviewRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 @Service
 public class ProductReviewService {
@@ -41,6 +59,41 @@ public class ProductReviewService {
     private ProductService productService;
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private ProductRatingService productRatingService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private ReviewSearchService reviewSearchService;
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final TransactionTemplate readTemplate;
+
+    // Cache trang đầu đánh giá hiển thị theo sản phẩm. Node ghi xóa ngay sau khi commit; node khác phát hiện qua
+    // products.reviews_version, kiểm tra lại sau mỗi ttl-seconds (một truy vấn theo khóa chính thay vì nạp lại trang)
+    @Value("${app.reviews.first-page.size:10}")
+    private int firstPageSize;
+
+    @Value("${app.reviews.first-page.ttl-seconds:5}")
+    private long firstPageTtlSeconds;
+
+    @Value("${app.reviews.first-page.max-entries:5000}")
+    private int firstPageMaxEntries;
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 50;
+
+    private record FirstPage(List<ProductReviewDTO> reviews, long totalVisible, long reviewsVersion, long checkedAtMillis) {}
+
+    private final ConcurrentHashMap<Integer, FirstPage> firstPages = new ConcurrentHashMap<>();
+    // Thế hệ theo sản phẩm, tăng mỗi lần xóa cache của sản phẩm đó: trang nạp từ trước lần xóa không được đưa vào cache
+    private final ConcurrentHashMap<Integer, Long> firstPageGenerations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProductReviewService(PlatformTransactionManager transactionManager) {
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
 
     // ... (mapToDTO giữ nguyên) ...
 //    public ProductReviewDTO mapToDTO(ProductReview review) {
@@ -80,25 +133,10 @@ public class ProductReviewService {
                 .orElseThrow(() -> new ResourceNotFoundException("User", "ID", userId));
         Product product = productService.findProductEntityById(requestDTO.getProductId());
 
-        // Bước mới: Tìm một OrderId hợp lệ để gán cho review
-        // Phương thức này cần được tạo trong OrderService
-        List<Order> completedOrdersWithProduct = orderService.findCompletedOrdersByUserAndProduct(userId, product.getProductId());
-
-        Order eligibleOrder = null;
-        for (Order completedOrder : completedOrdersWithProduct) {
-            boolean alreadyReviewedForThisOrder = productReviewRepository
-                    // Sử dụng completedOrder.getOrderId() ở đây để kiểm tra
-                    .findByUserUserIdAndProductProductIdAndOrderOrderId(userId, product.getProductId(), completedOrder.getOrderId())
-                    .isPresent();
-            if (!alreadyReviewedForThisOrder) {
-                eligibleOrder = completedOrder;
-                logger.info("Found eligible Order ID {} for review for product ID {} by user ID {}", eligibleOrder.getOrderId(), product.getProductId(), userId);
-                break; // Tìm thấy một đơn hàng hợp lệ để đánh giá
-            }
-        }
-
-        if (eligibleOrder == null) {
-            if (completedOrdersWithProduct.isEmpty()) {
+        // Tìm đơn COMPLETED mới nhất có sản phẩm này mà chưa được đánh giá (một truy vấn anti-join)
+        Integer eligibleOrderId = findEligibleOrderId(userId, product.getProductId());
+        if (eligibleOrderId == null) {
+            if (!orderRepository.existsCompletedOrderByUserAndProduct(userId, product.getProductId())) {
                 logger.warn("User {} attempted to review product ID {} but has no completed orders with this product.", userId, product.getProductId());
                 throw new BadRequestException("Bạn cần mua và hoàn thành đơn hàng chứa sản phẩm này trước khi đánh giá.");
             } else {
@@ -106,11 +144,8 @@ public class ProductReviewService {
                 throw new BadRequestException("Bạn đã đánh giá sản phẩm này cho tất cả các đơn hàng hợp lệ của mình.");
             }
         }
-
-        // Các kiểm tra khác (như đơn hàng có thuộc user, trạng thái COMPLETED, sản phẩm trong đơn)
-        // đã được bao hàm trong logic tìm eligibleOrder (vì findCompletedOrdersByUserAndProduct chỉ trả về đơn COMPLETED của user đó).
-        // Chỉ cần đảm bảo productInOrder nếu logic tìm eligibleOrder không quá chặt chẽ về sản phẩm cụ thể trong orderItem (mặc dù nên có).
-        // Hiện tại, findCompletedOrdersByUserAndProduct đã ngầm kiểm tra sản phẩm trong đơn.
+        logger.info("Found eligible Order ID {} for review for product ID {} by user ID {}", eligibleOrderId, product.getProductId(), userId);
+        Order eligibleOrder = orderRepository.getReferenceById(eligibleOrderId);
 
         // 6. Tạo và lưu đánh giá
         ProductReview newReview = new ProductReview();
@@ -128,24 +163,190 @@ public class ProductReviewService {
                 savedReview.getUser().getUserId(),
                 savedReview.getOrder().getOrderId());
 
-        // 7. Cập nhật điểm đánh giá trung bình và số lượng đánh giá cho sản phẩm
-        updateProductAverageRatingAndCount(requestDTO.getProductId());
+        // 7. Cộng dồn điểm và số lượng đánh giá cho sản phẩm (đánh giá mới luôn hiển thị)
+        onReviewChanged(product.getProductId(), false, 0, true, savedReview.getRating());
+        reviewSearchService.indexReview(savedReview.getReviewId(), savedReview.getComment());
 
         return mapToDTO(savedReview);
     }
 
-    // ... (các phương thức khác như getVisibleReviewsByProductId, getAllReviewsByProductIdForAdmin, v.v... giữ nguyên)
+    /**
+     * Đơn hàng COMPLETED mới nhất của user có chứa sản phẩm và chưa được đánh giá, null nếu không có.
+     */
+    @Transactional(readOnly = true)
+    public Integer findEligibleOrderId(Long userId, int productId) {
+        List<Integer> orderIds = productReviewRepository.findReviewableOrderIds(userId, productId, PageRequest.of(0, 1));
+        return orderIds.isEmpty() ? null : orderIds.get(0);
+    }
 
+    /** Tất cả sản phẩm user đã mua (đơn COMPLETED) mà còn có thể đánh giá, trong một truy vấn. */
     @Transactional(readOnly = true)
+    public List<ReviewEligibilityDTO> getReviewableProducts(Long userId) {
+        return productReviewRepository.findReviewableProducts(userId).stream()
+                .map(row -> new ReviewEligibilityDTO(
+                        ((Number) row[0]).intValue(),
+                        (String) row[1],
+                        ((Number) row[2]).intValue(),
+                        ((Number) row[3]).longValue(),
+                        (Timestamp) row[4]))
+                .collect(Collectors.toList());
+    }
+
+    // ... (các phương thức khác như getVisibleReviewsByProductId, getAllReviewsByProductIdForAdmin, v.v... giữ nguyên)
+
+    // Trang đầu (đủ nhỏ) lấy từ cache; các trang khác vẫn phân trang offset như cũ
     public Page<ProductReviewDTO> getVisibleReviewsByProductId(int productId, Pageable pageable) {
-        productService.findProductEntityById(productId);
-        Page<ProductReview> reviewsPage = productReviewRepository.findVisibleByProductProductIdOrderByReviewDateDesc(productId, pageable);
-        return reviewsPage.map(this::mapToDTO);
+        if (pageable.getPageNumber() == 0 && pageable.getPageSize() <= firstPageSize) {
+            FirstPage firstPage = getFirstPage(productId);
+            List<ProductReviewDTO> content = firstPage.reviews().subList(0, Math.min(pageable.getPageSize(), firstPage.reviews().size()));
+            return new PageImpl<>(content, pageable, firstPage.totalVisible());
+        }
+        productService.requireProductExists(productId);
+        return readTemplate.execute(status -> productReviewRepository
+                .findVisibleByProductProductIdOrderByReviewDateDesc(productId, pageable)
+                .map(this::mapToDTO));
+    }
+
+    /**
+     * Phân trang theo con trỏ (reviewDate, reviewId) giảm dần, không cần COUNT/OFFSET.
+     * @param cursor null cho trang đầu, hoặc nextCursor của trang trước
+     */
+    public ReviewCursorPageDTO getVisibleReviewsByCursor(int productId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        FirstPage firstPage = getFirstPage(productId);
+        List<ProductReviewDTO> items;
+        boolean hasMore;
+        if (cursor == null || cursor.isBlank()) {
+            if (pageSize <= firstPage.reviews().size() || firstPage.reviews().size() < firstPageSize) {
+                items = firstPage.reviews().subList(0, Math.min(pageSize, firstPage.reviews().size()));
+                hasMore = firstPage.totalVisible() > items.size();
+            } else {
+                List<ProductReviewDTO> page = readTemplate.execute(status -> productReviewRepository
+                        .findVisibleFirstPage(productId, PageRequest.of(0, pageSize + 1))
+                        .stream().map(this::mapToDTO).collect(Collectors.toList()));
+                hasMore = page.size() > pageSize;
+                items = hasMore ? page.subList(0, pageSize) : page;
+            }
+        } else {
+            String[] position = decodeCursor(cursor);
+            Timestamp reviewDate = Timestamp.from(Instant.parse(position[0]));
+            Long reviewId = Long.valueOf(position[1]);
+            List<ProductReviewDTO> page = readTemplate.execute(status -> productReviewRepository
+                    .findVisibleBefore(productId, reviewDate, reviewId, PageRequest.of(0, pageSize + 1))
+                    .stream().map(this::mapToDTO).collect(Collectors.toList()));
+            hasMore = page.size() > pageSize;
+            items = hasMore ? page.subList(0, pageSize) : page;
+        }
+        String nextCursor = hasMore && !items.isEmpty() ? encodeCursor(items.get(items.size() - 1)) : null;
+        return new ReviewCursorPageDTO(items, nextCursor, firstPage.totalVisible());
+    }
+
+    private FirstPage getFirstPage(int productId) {
+        long now = System.currentTimeMillis();
+        FirstPage cached = firstPages.get(productId);
+        if (cached != null && now - cached.checkedAtMillis() < firstPageTtlSeconds * 1000) {
+            return cached;
+        }
+        long generation = firstPageGenerations.getOrDefault(productId, 0L);
+        if (cached != null) {
+            // Hết hạn: chỉ nạp lại khi đánh giá của sản phẩm đã đổi (có thể do node khác ghi)
+            Long version = readTemplate.execute(status -> productRepository.findReviewsVersion(productId).orElse(null));
+            if (version != null && version == cached.reviewsVersion()) {
+                FirstPage rechecked = new FirstPage(cached.reviews(), cached.totalVisible(), version, now);
+                putFirstPage(productId, generation, rechecked);
+                return rechecked;
+            }
+        }
+        productService.requireProductExists(productId);
+        FirstPage loaded = readTemplate.execute(status -> {
+            // Đọc phiên bản trước trang trong cùng transaction: trang không bao giờ mới hơn phiên bản ghi kèm
+            long version = productRepository.findReviewsVersion(productId).orElse(0L);
+            List<ProductReviewDTO> reviews = productReviewRepository
+                    .findVisibleFirstPage(productId, PageRequest.of(0, firstPageSize))
+                    .stream().map(this::mapToDTO).toList();
+            long total = reviews.size() < firstPageSize ? reviews.size() : productReviewRepository.countVisibleByProductProductId(productId);
+            return new FirstPage(reviews, total, version, now);
+        });
+        putFirstPage(productId, generation, loaded);
+        return loaded;
+    }
+
+    private void putFirstPage(int productId, long generation, FirstPage page) {
+        if (firstPages.size() >= firstPageMaxEntries) {
+            long now = System.currentTimeMillis();
+            firstPages.values().removeIf(p -> now - p.checkedAtMillis() >= firstPageTtlSeconds * 1000);
+            if (firstPages.size() >= firstPageMaxEntries) firstPages.clear();
+        }
+        // Kiểm tra thế hệ và ghi cùng một thao tác nguyên tử theo khóa, không để lần xóa chen vào giữa
+        firstPageGenerations.compute(productId, (id, current) -> {
+            if ((current != null ? current : 0L) == generation) firstPages.put(productId, page);
+            return current;
+        });
+    }
+
+    private void evictFirstPageAfterCommit(int productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictFirstPage(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictFirstPage(productId);
+            }
+        });
+    }
+
+    private void evictFirstPage(int productId) {
+        firstPageGenerations.compute(productId, (id, current) -> {
+            firstPages.remove(productId);
+            return (current != null ? current : 0L) + 1;
+        });
+    }
+
+    /**
+     * Đánh dấu đánh giá của các sản phẩm đã thay đổi (tăng products.reviews_version) để cache trang đầu
+     * ở mọi node nạp lại. Phải chạy trong transaction ghi đánh giá.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markReviewsChanged(Collection<Integer> productIds) {
+        if (!productIds.isEmpty()) productRepository.incrementReviewsVersion(productIds);
+    }
+
+    // Gọi sau khi các thay đổi hàng loạt (ngoài luồng đánh giá đơn lẻ) đã commit
+    public void evictFirstPages(Collection<Integer> productIds) {
+        productIds.forEach(this::evictFirstPage);
+    }
+
+    // Con trỏ dạng base64url của "<reviewDate ISO-8601>|<reviewId>"
+    private static String encodeCursor(ProductReviewDTO review) {
+        String raw = review.getReviewDate().toInstant() + "|" + review.getReviewId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 2);
+            if (parts.length != 2) throw new IllegalArgumentException("Malformed cursor");
+            Instant.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException("Invalid review cursor.");
+        }
+    }
+
+    // Mọi thay đổi đánh giá: cộng dồn số liệu sản phẩm, tăng reviews_version và xóa cache trang đầu sau khi commit
+    private void onReviewChanged(int productId, boolean oldVisible, int oldRating, boolean newVisible, int newRating) {
+        productRatingService.applyChange(productId, oldVisible, oldRating, newVisible, newRating);
+        productRepository.incrementReviewsVersion(List.of(productId));
+        evictFirstPageAfterCommit(productId);
     }
 
     @Transactional(readOnly = true)
     public Page<ProductReviewDTO> getAllReviewsByProductIdForAdmin(int productId, Pageable pageable) {
-        productService.findProductEntityById(productId);
+        productService.requireProductExists(productId);
         Page<ProductReview> reviewsPage = productReviewRepository.findAllByProductProductIdOrderByReviewDateDesc(productId, pageable);
         return reviewsPage.map(this::mapToDTO);
     }
@@ -156,18 +357,36 @@ public class ProductReviewService {
         return reviewsPage.map(this::mapToDTO);
     }
 
+    /**
+     * Tìm kiếm toàn văn trong nội dung đánh giá (cả đánh giá đang ẩn) qua chỉ mục của {@link ReviewSearchService}.
+     * Không phân biệt hoa thường và dấu tiếng Việt; xếp theo số từ khóa khớp rồi số lần xuất hiện.
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductReviewDTO> searchReviewsForAdmin(String query, Pageable pageable) {
+        Set<String> terms = reviewSearchService.toQueryTerms(query);
+        if (terms.isEmpty()) {
+            throw new BadRequestException("Search query must contain at least one word of 2 or more characters.");
+        }
+        ReviewSearchService.RankedIds ranked = reviewSearchService.search(terms, pageable);
+        if (ranked.reviewIds().isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, ranked.total());
+        }
+        // Nạp một lần rồi sắp lại theo thứ tự xếp hạng
+        Map<Long, ProductReview> reviews = productReviewRepository.findAllWithUserAndProductByIdIn(ranked.reviewIds()).stream()
+                .collect(Collectors.toMap(ProductReview::getReviewId, Function.identity()));
+        List<ProductReviewDTO> content = ranked.reviewIds().stream()
+                .map(reviews::get)
+                .filter(Objects::nonNull)
+                .map(this::mapToDTO)
+                .toList();
+        return new PageImpl<>(content, pageable, ranked.total());
+    }
+
+    // Tính lại toàn bộ từ product_reviews; các thao tác thường ngày dùng delta qua ProductRatingService.applyChange
     @Transactional
     public void updateProductAverageRatingAndCount(int productId) {
-        Double avgRatingDouble = productReviewRepository.getAverageVisibleRatingByProductId(productId);
-        Long reviewCount = productReviewRepository.countVisibleByProductProductId(productId);
-
-        Product product = productService.findProductEntityById(productId);
-
-        product.setAverageRating(avgRatingDouble != null ? BigDecimal.valueOf(avgRatingDouble).setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP)); // Sử dụng HALF_UP hoặc một RoundingMode phù hợp
-        product.setReviewCount(reviewCount != null ? reviewCount.intValue() : 0);
-
-        // productRepository.save(product); // Không cần thiết nếu product là managed và phương thức này @Transactional
-        logger.info("Updated Product ID {} with VISIBLE average rating: {} and VISIBLE review count: {}", productId, product.getAverageRating(), product.getReviewCount());
+        boolean corrected = productRatingService.recompute(productId);
+        logger.info("Recomputed rating aggregates for Product ID {} (corrected: {})", productId, corrected);
     }
 
     @Transactional(readOnly = true)
@@ -179,18 +398,19 @@ public class ProductReviewService {
 
     @Transactional
     public void deleteReviewForAdmin(Long reviewId) {
-        ProductReview review = productReviewRepository.findById(reviewId)
+        ProductReview review = productReviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new ResourceNotFoundException("ProductReview", "reviewId", reviewId));
         int productId = review.getProduct().getProductId();
+        reviewSearchService.removeReviews(List.of(reviewId));
         productReviewRepository.delete(review);
         logger.info("ADMIN action: Review ID {} deleted for Product ID {}", reviewId, productId);
-        updateProductAverageRatingAndCount(productId);
+        onReviewChanged(productId, review.isVisible(), review.getRating(), false, 0);
     }
 
     // Đổi tên hàm này để user tự xóa review của họ
     @Transactional
     public void deleteUserReview(Long reviewId, Long userId) { // << Thêm userId để kiểm tra quyền
-        ProductReview review = productReviewRepository.findById(reviewId)
+        ProductReview review = productReviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new ResourceNotFoundException("ProductReview", "reviewId", reviewId));
 
         // Kiểm tra xem người dùng hiện tại có phải là chủ của đánh giá này không
@@ -199,15 +419,16 @@ public class ProductReviewService {
         }
 
         int productId = review.getProduct().getProductId();
+        reviewSearchService.removeReviews(List.of(reviewId));
         productReviewRepository.delete(review);
         logger.info("User {} deleted their review ID {} for Product ID {}", userId, reviewId, productId);
-        updateProductAverageRatingAndCount(productId);
+        onReviewChanged(productId, review.isVisible(), review.getRating(), false, 0);
     }
 
     // Đổi tên hàm này để user tự cập nhật review của họ
     @Transactional
     public ProductReviewDTO updateUserReview(Long reviewId, Long userId, ReviewRequestDTO requestDTO) { // << Thêm userId
-        ProductReview review = productReviewRepository.findById(reviewId)
+        ProductReview review = productReviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new ResourceNotFoundException("ProductReview", "reviewId", reviewId));
 
         // Kiểm tra xem người dùng hiện tại có phải là chủ của đánh giá này không
@@ -224,7 +445,7 @@ public class ProductReviewService {
             throw new BadRequestException("Không thể thay đổi đơn hàng liên kết với đánh giá này.");
         }
 
-
+        int oldRating = review.getRating();
         review.setRating(requestDTO.getRating());
         review.setComment(requestDTO.getComment());
         // Không cho phép cập nhật visible ở đây, đó là việc của Admin
@@ -232,20 +453,21 @@ public class ProductReviewService {
 
         ProductReview updatedReview = productReviewRepository.save(review);
         logger.info("User {} updated their review ID {} for Product ID {}", userId, updatedReview.getReviewId(), updatedReview.getProduct().getProductId());
-        updateProductAverageRatingAndCount(review.getProduct().getProductId());
+        onReviewChanged(review.getProduct().getProductId(), review.isVisible(), oldRating, review.isVisible(), review.getRating());
+        reviewSearchService.indexReview(updatedReview.getReviewId(), updatedReview.getComment());
         return mapToDTO(updatedReview);
     }
 
     @Transactional
     public ProductReviewDTO setReviewVisibility(Long reviewId, boolean isVisible) {
-        ProductReview review = productReviewRepository.findById(reviewId)
+        ProductReview review = productReviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new ResourceNotFoundException("ProductReview", "reviewId", reviewId));
         boolean oldVisibility = review.isVisible();
         review.setVisible(isVisible);
         ProductReview updatedReview = productReviewRepository.save(review);
         logger.info("ADMIN action: Review ID {} visibility changed from {} to {}.",
                 updatedReview.getReviewId(), oldVisibility, updatedReview.isVisible());
-        updateProductAverageRatingAndCount(review.getProduct().getProductId());
+        onReviewChanged(review.getProduct().getProductId(), oldVisibility, review.getRating(), isVisible, review.getRating());
         return mapToDTO(updatedReview);
     }
 }
@@ -22,6 +22,7 @@ import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -38,6 +39,11 @@ public class ProductService {
     private ProductImageRepository productImageRepository;
     @Autowired
     private FileStorageService fileStorageService;
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
+    // productId đã biết là tồn tại; sản phẩm chỉ bị ẩn chứ không bị xóa nên không cần loại bỏ
+    private final Set<Integer> knownProductIds = ConcurrentHashMap.newKeySet();
 
     // Hàm helper map Entity sang DTO
     public ProductDTO mapToDTO(Product product) {
@@ -58,6 +64,8 @@ public class ProductService {
         dto.setWaterResistance(product.getWaterResistance());
         dto.setAverageRating(product.getAverageRating());
         dto.setReviewCount(product.getReviewCount());
+        dto.setRatingDistribution(List.of(product.getRating1Count(), product.getRating2Count(), product.getRating3Count(),
+                product.getRating4Count(), product.getRating5Count()));
         dto.setVisible(product.isVisible());
         dto.setUpdatedAt(product.getUpdatedAt());
 
@@ -115,6 +123,17 @@ public class ProductService {
         return mapToDTO(product);
     }
 
+    /**
+     * Kiểm tra sản phẩm tồn tại mà không nạp entity/ảnh: tra tập id đã biết, chưa có thì hỏi DB bằng khóa chính.
+     */
+    public void requireProductExists(int id) {
+        if (knownProductIds.contains(id)) return;
+        if (!productRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Product", "productId", id);
+        }
+        knownProductIds.add(id);
+    }
+
     @Transactional(readOnly = true)
     public Product findProductEntityById(int id) {
         Product product = productRepository.findById(id)
@@ -137,6 +156,7 @@ public class ProductService {
         product.setCategory(category);
 
         Product savedProductEntity = productRepository.saveAndFlush(product);
+        dashboardCounterService.onProductCountChanged(1);
 
         updateProductImages(savedProductEntity, dto.getImageUrls(), dto.getPrimaryImageUrl());
 
@@ -248,7 +268,9 @@ public class ProductService {
             });
         }
 
+        boolean isNew = productInput.getProductId() == 0;
         Product savedProduct = productRepository.save(productInput);
+        if (isNew) dashboardCounterService.onProductCountChanged(1);
         Hibernate.initialize(savedProduct.getCategory());
         Hibernate.initialize(savedProduct.getImages());
         return mapToDTO(savedProduct);
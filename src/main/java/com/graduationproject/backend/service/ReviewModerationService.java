@@ -0,0 +1,162 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.BulkModerationResultDTO;
+import com.graduationproject.backend.dto.BulkReviewModerationDTO;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.repository.ProductReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Kiểm duyệt đánh giá hàng loạt (ẩn/hiện/xóa) theo danh sách id hoặc bộ lọc.
+ * - Đánh giá được xử lý theo lô bằng câu lệnh UPDATE/DELETE ... WHERE review_id IN (...), mỗi lô một transaction.
+ * - Không cộng dồn delta cho từng đánh giá: sau khi mọi lô đã commit, số liệu của mỗi sản phẩm bị ảnh hưởng
+ *   được tính lại đúng một lần (song song trên pool riêng) và cache trang đầu đánh giá bị xóa.
+ */
+@Service
+public class ReviewModerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewModerationService.class);
+
+    @Autowired
+    private ProductReviewRepository productReviewRepository;
+
+    @Autowired
+    private ProductReviewService productReviewService;
+
+    @Autowired
+    private ProductRatingService productRatingService;
+
+    @Autowired
+    private ReviewSearchService reviewSearchService;
+
+    @Autowired
+    @Qualifier("reviewAggregateExecutor")
+    private ThreadPoolTaskExecutor reviewAggregateExecutor;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.reviews.moderation.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.reviews.moderation.max-reviews:100000}")
+    private int maxReviews;
+
+    @Autowired
+    public ReviewModerationService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    private record BatchResult(int matched, int changed, long lastReviewId) {}
+
+    public BulkModerationResultDTO moderate(BulkReviewModerationDTO request) {
+        long startedAt = System.currentTimeMillis();
+        BulkReviewModerationDTO.Action action = request.getAction();
+        Set<Integer> affectedProducts = new HashSet<>();
+        long matched = 0;
+        long changed = 0;
+        boolean truncated = false;
+
+        if (request.getReviewIds() != null && !request.getReviewIds().isEmpty()) {
+            List<Long> ids = request.getReviewIds().stream().filter(Objects::nonNull).distinct().toList();
+            if (ids.size() > maxReviews) {
+                throw new BadRequestException("Too many review ids in one request (max " + maxReviews + ").");
+            }
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                BatchResult result = transactionTemplate.execute(status ->
+                        applyBatch(productReviewRepository.findModerationTargetsByIdIn(chunk), action, affectedProducts));
+                matched += result.matched();
+                changed += result.changed();
+            }
+        } else {
+            Long userId = request.getUserId();
+            String keyword = request.getKeyword() != null && !request.getKeyword().isBlank() ? request.getKeyword().trim() : null;
+            Timestamp fromDate = toStartOfDay(request.getFrom());
+            Timestamp toDate = request.getTo() != null ? toStartOfDay(request.getTo().plusDays(1)) : null;
+            if (userId == null && keyword == null && fromDate == null && toDate == null) {
+                throw new BadRequestException("Provide reviewIds or at least one filter (userId, from, to, keyword).");
+            }
+            if (fromDate != null && toDate != null && !fromDate.before(toDate)) {
+                throw new BadRequestException("'from' must not be after 'to'.");
+            }
+            long afterId = 0;
+            while (true) {
+                if (matched >= maxReviews) {
+                    truncated = true;
+                    break;
+                }
+                long cursor = afterId;
+                BatchResult result = transactionTemplate.execute(status -> applyBatch(
+                        productReviewRepository.findModerationTargets(cursor, userId, fromDate, toDate, keyword, PageRequest.of(0, batchSize)),
+                        action, affectedProducts));
+                matched += result.matched();
+                changed += result.changed();
+                if (result.matched() < batchSize) break;
+                afterId = result.lastReviewId();
+            }
+        }
+
+        if (changed > 0) {
+            productReviewService.evictFirstPages(affectedProducts);
+            recomputeInParallel(affectedProducts);
+        }
+        long elapsed = System.currentTimeMillis() - startedAt;
+        logger.info("ADMIN bulk moderation {}: matched {}, changed {}, recomputed {} products in {} ms",
+                action, matched, changed, affectedProducts.size(), elapsed);
+        return new BulkModerationResultDTO(action, matched, changed, changed > 0 ? affectedProducts.size() : 0, truncated, elapsed);
+    }
+
+    // Chạy trong transaction của lô: rows = [reviewId, productId]
+    private BatchResult applyBatch(List<Object[]> rows, BulkReviewModerationDTO.Action action, Set<Integer> affectedProducts) {
+        if (rows.isEmpty()) return new BatchResult(0, 0, 0);
+        List<Long> reviewIds = new ArrayList<>(rows.size());
+        Set<Integer> batchProducts = new HashSet<>();
+        for (Object[] row : rows) {
+            reviewIds.add(((Number) row[0]).longValue());
+            batchProducts.add(((Number) row[1]).intValue());
+        }
+        affectedProducts.addAll(batchProducts);
+        if (action == BulkReviewModerationDTO.Action.DELETE) {
+            reviewSearchService.removeReviews(reviewIds);
+        }
+        int changed = switch (action) {
+            case HIDE -> productReviewRepository.setVisibilityByIdIn(reviewIds, false);
+            case SHOW -> productReviewRepository.setVisibilityByIdIn(reviewIds, true);
+            case DELETE -> productReviewRepository.deleteByReviewIdIn(reviewIds);
+        };
+        if (changed > 0) productReviewService.markReviewsChanged(batchProducts);
+        return new BatchResult(rows.size(), changed, reviewIds.get(reviewIds.size() - 1));
+    }
+
+    // Mỗi sản phẩm tính lại một lần trong transaction riêng (khóa dòng sản phẩm), chạy song song
+    private void recomputeInParallel(Set<Integer> productIds) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(productIds.size());
+        for (Integer productId : productIds) {
+            tasks.add(CompletableFuture.runAsync(() -> productRatingService.recompute(productId), reviewAggregateExecutor));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        } catch (Exception e) {
+            // Sản phẩm tính lại lỗi sẽ được job kiểm tra số liệu sửa ở lượt sau
+            logger.error("Some rating aggregates failed to recompute after bulk moderation: {}", e.getMessage(), e);
+        }
+    }
+
+    private static Timestamp toStartOfDay(LocalDate date) {
+        return date != null ? Timestamp.valueOf(date.atStartOfDay()) : null;
+    }
+}
@@ -0,0 +1,189 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.ReviewSearchTerm;
+import com.graduationproject.backend.repository.ProductReviewRepository;
+import com.graduationproject.backend.repository.ReviewSearchTermRepository;
+import com.graduationproject.backend.util.VietnameseTextFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Chỉ mục ngược cho nội dung đánh giá (bảng review_search_terms), dùng cho tìm kiếm của admin.
+ * - Từ được chuẩn hóa bởi {@link VietnameseTextFolder} (bỏ dấu, chữ thường).
+ * - Được cập nhật trong cùng transaction với thao tác ghi đánh giá; xóa hàng loạt xóa luôn các dòng chỉ mục.
+ * - {@link #rebuildIndex()} dựng lại toàn bộ (tự chạy nền khi khởi động nếu chỉ mục đang trống).
+ * - Các dòng chỉ mục được ghi bằng INSERT nhiều dòng qua JDBC thay vì lưu từng entity.
+ */
+@Service
+public class ReviewSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewSearchService.class);
+
+    private static final String JOB_NAME = "review-search-rebuild";
+    private static final int MAX_QUERY_TERMS = 10;
+    private static final int INSERT_ROWS_PER_STATEMENT = 500;
+
+    @Autowired
+    private ReviewSearchTermRepository reviewSearchTermRepository;
+
+    @Autowired
+    private ProductReviewRepository productReviewRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("reviewSearchIndexExecutor")
+    private SimpleAsyncTaskExecutor reviewSearchIndexExecutor;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.reviews.search.rebuild-batch-size:500}")
+    private int rebuildBatchSize;
+
+    @Value("${app.reviews.search.lease-seconds:1800}")
+    private long leaseSeconds;
+
+    /** Kết quả xếp hạng: reviewId theo thứ tự và tổng số đánh giá khớp. */
+    public record RankedIds(List<Long> reviewIds, long total) {}
+
+    @Autowired
+    public ReviewSearchService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /** Ghi lại các từ của một đánh giá (thêm mới hoặc sửa nội dung). Chạy trong transaction ghi đánh giá. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void indexReview(Long reviewId, String comment) {
+        reviewSearchTermRepository.deleteByReviewIdIn(List.of(reviewId));
+        insertTerms(toTerms(reviewId, comment));
+    }
+
+    /** Xóa chỉ mục của các đánh giá sắp bị xóa. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeReviews(Collection<Long> reviewIds) {
+        if (!reviewIds.isEmpty()) {
+            reviewSearchTermRepository.deleteByReviewIdIn(reviewIds);
+        }
+    }
+
+    /** Chuẩn hóa câu tìm kiếm thành tối đa {@value #MAX_QUERY_TERMS} từ khóa. */
+    public Set<String> toQueryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : VietnameseTextFolder.termFrequencies(query).keySet()) {
+            if (terms.size() == MAX_QUERY_TERMS) break;
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    @Transactional(readOnly = true)
+    public RankedIds search(Set<String> terms, Pageable pageable) {
+        List<Long> reviewIds = reviewSearchTermRepository.searchRanked(terms, pageable).stream()
+                .map(row -> ((Number) row[0]).longValue())
+                .toList();
+        long total = reviewIds.size() < pageable.getPageSize() && pageable.getPageNumber() == 0
+                ? reviewIds.size()
+                : reviewSearchTermRepository.countMatchingReviews(terms);
+        return new RankedIds(reviewIds, total);
+    }
+
+    // Chạy trên luồng nền để không giữ luồng khởi động trong lúc dựng chỉ mục
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        reviewSearchIndexExecutor.execute(() -> {
+            try {
+                if (reviewSearchTermRepository.count() == 0 && productReviewRepository.count() > 0) {
+                    logger.info("Review search index is empty, building it from existing reviews");
+                    rebuildIndex();
+                }
+            } catch (Exception e) {
+                logger.error("Initial review search index build failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Dựng lại chỉ mục theo từng lô reviewId, mỗi lô một transaction.
+     * @return số đánh giá đã xử lý, hoặc -1 nếu node khác đang dựng lại
+     */
+    public int rebuildIndex() {
+        if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.info("Skip review search rebuild: lease is held by another node");
+            return -1;
+        }
+        try {
+            int processed = 0;
+            long afterId = 0;
+            while (true) {
+                long cursor = afterId;
+                List<Object[]> rows = transactionTemplate.execute(status -> {
+                    List<Object[]> page = productReviewRepository.findCommentsAfterId(cursor, PageRequest.of(0, rebuildBatchSize));
+                    if (page.isEmpty()) return page;
+                    List<Long> reviewIds = new ArrayList<>(page.size());
+                    List<ReviewSearchTerm> terms = new ArrayList<>();
+                    for (Object[] row : page) {
+                        Long reviewId = ((Number) row[0]).longValue();
+                        reviewIds.add(reviewId);
+                        terms.addAll(toTerms(reviewId, (String) row[1]));
+                    }
+                    reviewSearchTermRepository.deleteByReviewIdIn(reviewIds);
+                    insertTerms(terms);
+                    return page;
+                });
+                if (rows == null || rows.isEmpty()) break;
+                processed += rows.size();
+                afterId = ((Number) rows.get(rows.size() - 1)[0]).longValue();
+                if (rows.size() < rebuildBatchSize) break;
+            }
+            logger.info("Rebuilt review search index for {} reviews", processed);
+            return processed;
+        } finally {
+            jobLeaseService.release(JOB_NAME);
+        }
+    }
+
+    // INSERT ... VALUES (...), (...) theo từng khối, không cần rewriteBatchedStatements
+    private void insertTerms(List<ReviewSearchTerm> terms) {
+        for (int from = 0; from < terms.size(); from += INSERT_ROWS_PER_STATEMENT) {
+            List<ReviewSearchTerm> chunk = terms.subList(from, Math.min(terms.size(), from + INSERT_ROWS_PER_STATEMENT));
+            StringBuilder sql = new StringBuilder("INSERT INTO review_search_terms (term, review_id, tf) VALUES ");
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                ReviewSearchTerm term = chunk.get(i);
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                args[i * 3] = term.getTerm();
+                args[i * 3 + 1] = term.getReviewId();
+                args[i * 3 + 2] = term.getTf();
+            }
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    private static List<ReviewSearchTerm> toTerms(Long reviewId, String comment) {
+        Map<String, Integer> frequencies = VietnameseTextFolder.termFrequencies(comment);
+        List<ReviewSearchTerm> terms = new ArrayList<>(frequencies.size());
+        frequencies.forEach((term, tf) -> terms.add(new ReviewSearchTerm(term, reviewId, tf)));
+        return terms;
+    }
+}
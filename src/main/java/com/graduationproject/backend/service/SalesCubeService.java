@@ -0,0 +1,465 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.SalesCubeResultDTO;
+import com.graduationproject.backend.dto.SalesCubeResultDTO.Dimension;
+import com.graduationproject.backend.dto.SalesCubeRowDTO;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Khối dữ liệu bán hàng trong bộ nhớ cho phân tích chéo danh mục × thương hiệu × phương thức thanh toán
+ * × trạng thái × tháng, mỗi dòng order_items (kể cả bảng lưu trữ) là một dòng của khối.
+ * - Lưu theo cột: chiều được mã hóa bằng từ điển thành int, số lượng và doanh thu (đơn vị xu) là mảng nguyên thủy.
+ * - Truy vấn group by/lọc bất kỳ được trả lời bằng cách quét song song từng đoạn dòng rồi gộp kết quả.
+ * - Dựng bất đồng bộ khi khởi động (nếu bật) hoặc ở lần truy vấn đầu tiên; trong lúc dựng truy vấn trả 503 kèm Retry-After.
+ *   Job định kỳ đọc lại các đơn có updated_at mới (từ mọi node) và cập nhật tại chỗ,
+ *   job hằng đêm dựng lại toàn bộ để cập nhật tên danh mục/thương hiệu đã đổi và dọn các dòng bị thay thế.
+ * - Tháng được tính theo múi giờ thống kê (app.statistics.zone), giống các báo cáo khác.
+ * Mỗi node giữ một khối riêng, khoảng 36 byte cho mỗi dòng hàng.
+ */
+@Service
+public class SalesCubeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesCubeService.class);
+
+    private static final int DIMENSIONS = Dimension.values().length;
+    private static final int MAX_LIMIT = 1000;
+    private static final int SCAN_CHUNK_ROWS = 64 * 1024;
+    private static final String NONE = "(none)";
+
+    private static final String LINES_SQL_TEMPLATE = """
+            SELECT oi.order_id, o.status, o.payment_method, o.created_at, c.name AS category_name, p.brand,
+                   oi.quantity, oi.price
+            FROM %s o
+            JOIN %s oi ON oi.order_id = o.order_id
+            LEFT JOIN products p ON p.product_id = oi.product_id
+            LEFT JOIN categories c ON c.category_id = p.category_id
+            %s
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("salesCubeExecutor")
+    private SimpleAsyncTaskExecutor salesCubeExecutor;
+
+    @Value("${app.statistics.cube.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${app.statistics.zone:Asia/Ho_Chi_Minh}")
+    private String zoneId;
+
+    @Value("${app.statistics.cube.build-on-startup:false}")
+    private boolean buildOnStartup;
+
+    @Value("${app.statistics.cube.retry-after-seconds:10}")
+    private long retryAfterSeconds;
+
+    // Đọc lại cả các đơn cập nhật trước mốc này vài phút: bù cho transaction commit chậm và lệch đồng hồ giữa các node
+    @Value("${app.statistics.cube.refresh-overlap-seconds:120}")
+    private long refreshOverlapSeconds;
+
+    private volatile Cube cube;
+    private Timestamp watermark; // Chỉ đọc/ghi trong các phương thức synchronized
+    // Lần dựng đang chạy (null nếu không có); request không bao giờ chờ lần dựng
+    private final AtomicReference<CompletableFuture<Integer>> building = new AtomicReference<>();
+
+    // Một dòng hàng đọc từ DB, values theo thứ tự Dimension
+    record Line(int orderId, String[] values, int quantity, long revenueCents) {}
+
+    static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        Integer find(String value) {
+            return codes.get(value);
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    static final class Cube {
+        private final Dictionary[] dictionaries = new Dictionary[DIMENSIONS];
+        private final int[][] columns = new int[DIMENSIONS][];
+        private int[] orderIds;
+        private int[] quantities;
+        private long[] revenueCents;
+        private final BitSet replaced = new BitSet(); // Dòng đã được thay bằng dòng mới ở cuối khối
+        private int size;
+        private volatile Instant refreshedAt;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Cube(int capacity) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                dictionaries[d] = new Dictionary();
+                columns[d] = new int[capacity];
+            }
+            orderIds = new int[capacity];
+            quantities = new int[capacity];
+            revenueCents = new long[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        Dictionary dictionary(Dimension dimension) {
+            return dictionaries[dimension.ordinal()];
+        }
+
+        boolean isReplaced(int row) {
+            return replaced.get(row);
+        }
+
+        void append(Line line) {
+            if (size == orderIds.length) {
+                int capacity = Math.max(1024, size + (size >> 1));
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    columns[d] = Arrays.copyOf(columns[d], capacity);
+                }
+                orderIds = Arrays.copyOf(orderIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                revenueCents = Arrays.copyOf(revenueCents, capacity);
+            }
+            set(size++, line);
+        }
+
+        void set(int row, Line line) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                columns[d][row] = dictionaries[d].encode(line.values()[d]);
+            }
+            orderIds[row] = line.orderId();
+            quantities[row] = line.quantity();
+            revenueCents[row] = line.revenueCents();
+        }
+
+        // Thay các dòng của những đơn đã đổi; cùng số dòng thì ghi đè tại chỗ, khác thì đánh dấu dòng cũ và thêm mới
+        void applyOrders(Map<Integer, List<Line>> changed) {
+            BitSet changedIds = new BitSet();
+            changed.keySet().forEach(changedIds::set);
+            Map<Integer, List<Integer>> existingRows = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (changedIds.get(orderIds[i]) && !replaced.get(i)) {
+                    existingRows.computeIfAbsent(orderIds[i], k -> new ArrayList<>()).add(i);
+                }
+            }
+            changed.forEach((orderId, lines) -> {
+                List<Integer> rows = existingRows.getOrDefault(orderId, List.of());
+                if (rows.size() == lines.size()) {
+                    for (int j = 0; j < rows.size(); j++) {
+                        set(rows.get(j), lines.get(j));
+                    }
+                } else {
+                    rows.forEach(replaced::set);
+                    lines.forEach(this::append);
+                }
+            });
+        }
+
+        // Gộp các dòng trong [from, to) thỏa bộ lọc theo khóa nhóm; giá trị = [số lượng, doanh thu (xu), số dòng]
+        Map<Long, long[]> scan(int from, int to, boolean[][] allowed, int[] groupDimensions, long[] radix) {
+            Map<Long, long[]> groups = new HashMap<>();
+            rows:
+            for (int i = from; i < to; i++) {
+                if (replaced.get(i)) continue;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    if (allowed[d] != null && !allowed[d][columns[d][i]]) continue rows;
+                }
+                long key = 0;
+                for (int g = 0; g < groupDimensions.length; g++) {
+                    key = key * radix[g] + columns[groupDimensions[g]][i];
+                }
+                long[] totals = groups.computeIfAbsent(key, k -> new long[3]);
+                totals[0] += quantities[i];
+                totals[1] += revenueCents[i];
+                totals[2]++;
+            }
+            return groups;
+        }
+    }
+
+    /**
+     * Group by theo {@code groupBy} (rỗng: một nhóm tổng), lọc theo giá trị của từng chiều và khoảng tháng [fromMonth, toMonth].
+     * @param filters chiều -> các giá trị được giữ lại; danh sách rỗng nghĩa là không lọc theo chiều đó
+     */
+    public SalesCubeResultDTO query(List<Dimension> groupBy, Map<Dimension, List<String>> filters,
+                                    YearMonth fromMonth, YearMonth toMonth, int limit) {
+        long startedAt = System.currentTimeMillis();
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        if (fromMonth != null && toMonth != null && fromMonth.isAfter(toMonth)) {
+            throw new BadRequestException("'fromMonth' must not be after 'toMonth'.");
+        }
+        List<Dimension> dimensions = groupBy != null ? List.copyOf(new LinkedHashSet<>(groupBy)) : List.of();
+        Cube current = cube;
+        if (current == null) {
+            requestRebuild();
+            throw new ServiceUnavailableException("Sales cube is being built, please retry shortly.", retryAfterSeconds);
+        }
+
+        current.lock.readLock().lock();
+        try {
+            int size = current.size;
+            boolean[][] allowed = new boolean[DIMENSIONS][];
+            filters.forEach((dimension, values) -> {
+                if (values == null || values.isEmpty()) return;
+                Dictionary dictionary = current.dictionaries[dimension.ordinal()];
+                boolean[] keep = new boolean[dictionary.size()];
+                for (String value : values) {
+                    Integer code = dictionary.find(value);
+                    if (code != null) keep[code] = true;
+                }
+                allowed[dimension.ordinal()] = keep;
+            });
+            if (fromMonth != null || toMonth != null) {
+                Dictionary months = current.dictionaries[Dimension.MONTH.ordinal()];
+                boolean[] keep = allowed[Dimension.MONTH.ordinal()];
+                boolean[] inRange = new boolean[months.size()];
+                for (int code = 0; code < inRange.length; code++) {
+                    YearMonth month = YearMonth.parse(months.decode(code));
+                    inRange[code] = (keep == null || keep[code])
+                            && (fromMonth == null || !month.isBefore(fromMonth))
+                            && (toMonth == null || !month.isAfter(toMonth));
+                }
+                allowed[Dimension.MONTH.ordinal()] = inRange;
+            }
+
+            int[] groupDimensions = dimensions.stream().mapToInt(Dimension::ordinal).toArray();
+            long[] radix = new long[groupDimensions.length];
+            long combinations = 1;
+            for (int g = 0; g < groupDimensions.length; g++) {
+                radix[g] = Math.max(1, current.dictionaries[groupDimensions[g]].size());
+                try {
+                    combinations = Math.multiplyExact(combinations, radix[g]);
+                } catch (ArithmeticException e) {
+                    throw new BadRequestException("Too many dimension combinations, group by fewer dimensions.");
+                }
+            }
+
+            // Mỗi đoạn được quét trên một luồng của ForkJoinPool; luồng gọi giữ read lock suốt quá trình quét
+            int chunks = (size + SCAN_CHUNK_ROWS - 1) / SCAN_CHUNK_ROWS;
+            Map<Long, long[]> groups = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> current.scan(chunk * SCAN_CHUNK_ROWS, Math.min(size, (chunk + 1) * SCAN_CHUNK_ROWS),
+                            allowed, groupDimensions, radix))
+                    .reduce(SalesCubeService::merge)
+                    .orElseGet(HashMap::new);
+
+            long totalQuantity = 0;
+            long totalCents = 0;
+            List<SalesCubeRowDTO> rows = new ArrayList<>(groups.size());
+            for (Map.Entry<Long, long[]> entry : groups.entrySet()) {
+                long[] totals = entry.getValue();
+                totalQuantity += totals[0];
+                totalCents += totals[1];
+                rows.add(new SalesCubeRowDTO(decodeKey(current, entry.getKey(), dimensions, radix),
+                        totals[0], BigDecimal.valueOf(totals[1], 2), totals[2]));
+            }
+            rows.sort(Comparator.comparing(SalesCubeRowDTO::getRevenue).reversed()
+                    .thenComparing(row -> row.getDimensions().toString()));
+            return new SalesCubeResultDTO(dimensions, rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows,
+                    rows.size(), totalQuantity, BigDecimal.valueOf(totalCents, 2), size,
+                    OffsetDateTime.ofInstant(current.refreshedAt, ZoneId.of(zoneId)),
+                    System.currentTimeMillis() - startedAt);
+        } finally {
+            current.lock.readLock().unlock();
+        }
+    }
+
+    static Map<Long, long[]> merge(Map<Long, long[]> left, Map<Long, long[]> right) {
+        Map<Long, long[]> target = left.size() >= right.size() ? left : right;
+        Map<Long, long[]> source = target == left ? right : left;
+        source.forEach((key, totals) -> target.merge(key, totals, (a, b) -> {
+            a[0] += b[0];
+            a[1] += b[1];
+            a[2] += b[2];
+            return a;
+        }));
+        return target;
+    }
+
+    static Map<String, String> decodeKey(Cube cube, long key, List<Dimension> dimensions, long[] radix) {
+        String[] values = new String[dimensions.size()];
+        for (int g = dimensions.size() - 1; g >= 0; g--) {
+            values[g] = cube.dictionaries[dimensions.get(g).ordinal()].decode((int) (key % radix[g]));
+            key /= radix[g];
+        }
+        Map<String, String> decoded = new LinkedHashMap<>();
+        for (int g = 0; g < values.length; g++) {
+            decoded.put(dimensions.get(g).name(), values[g]);
+        }
+        return decoded;
+    }
+
+    /**
+     * Bắt đầu dựng lại khối trên luồng nền nếu chưa có lần dựng nào đang chạy.
+     * @return lần dựng đang chạy (kết quả là số dòng hàng của khối mới)
+     */
+    public CompletableFuture<Integer> requestRebuild() {
+        CompletableFuture<Integer> created = new CompletableFuture<>();
+        CompletableFuture<Integer> running = building.compareAndExchange(null, created);
+        if (running != null) return running;
+        try {
+            salesCubeExecutor.execute(() -> {
+                try {
+                    created.complete(rebuild());
+                } catch (Throwable e) {
+                    logger.error("Sales cube build failed: {}", e.getMessage(), e);
+                    created.completeExceptionally(e);
+                } finally {
+                    building.compareAndSet(created, null);
+                }
+            });
+        } catch (RuntimeException e) {
+            building.compareAndSet(created, null);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (buildOnStartup) requestRebuild();
+    }
+
+    /**
+     * Dựng lại toàn bộ khối từ orders và orders_archive, rồi thay khối cũ (truy vấn đang chạy vẫn dùng khối cũ).
+     * Chạy đồng bộ trên luồng gọi; request HTTP dùng {@link #requestRebuild()}.
+     * @return số dòng hàng trong khối mới
+     */
+    synchronized int rebuild() {
+        long startedAt = System.currentTimeMillis();
+        Timestamp nextWatermark = Timestamp.from(Instant.now().minusSeconds(refreshOverlapSeconds));
+        Cube fresh = new Cube(cube != null ? cube.size : 1024);
+        // Đọc orders trước orders_archive: đơn được lưu trữ giữa hai lần đọc sẽ xuất hiện ở cả hai và chỉ được lấy một lần
+        BitSet seenOrders = new BitSet();
+        streamLines("orders", "order_items", null, line -> {
+            seenOrders.set(line.orderId());
+            fresh.append(line);
+        });
+        streamLines("orders_archive", "order_items_archive", null, line -> {
+            if (!seenOrders.get(line.orderId())) fresh.append(line);
+        });
+        fresh.refreshedAt = Instant.now();
+        cube = fresh;
+        watermark = nextWatermark;
+        logger.info("Built sales cube with {} order lines in {} ms", fresh.size, System.currentTimeMillis() - startedAt);
+        return fresh.size;
+    }
+
+    /**
+     * Đọc lại các đơn có updated_at từ lần làm mới trước (đơn mới, đổi trạng thái) và cập nhật khối.
+     * Đơn chuyển sang bảng lưu trữ không đổi dữ liệu nên không cần đọc lại.
+     * @return số đơn đã cập nhật
+     */
+    public synchronized int refreshChanges() {
+        Cube current = cube;
+        if (current == null) return 0;
+        Timestamp nextWatermark = Timestamp.from(Instant.now().minusSeconds(refreshOverlapSeconds));
+        Map<Integer, List<Line>> changed = new LinkedHashMap<>();
+        streamLines("orders", "order_items", watermark,
+                line -> changed.computeIfAbsent(line.orderId(), k -> new ArrayList<>()).add(line));
+        if (!changed.isEmpty()) {
+            current.lock.writeLock().lock();
+            try {
+                current.applyOrders(changed);
+            } finally {
+                current.lock.writeLock().unlock();
+            }
+        }
+        current.refreshedAt = Instant.now();
+        watermark = nextWatermark;
+        return changed.size();
+    }
+
+    @Scheduled(initialDelayString = "${app.statistics.cube.refresh-interval-ms:60000}",
+            fixedDelayString = "${app.statistics.cube.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        if (cube == null) return; // Chưa ai truy vấn: không giữ khối trong bộ nhớ
+        try {
+            int orders = refreshChanges();
+            if (orders > 0) logger.debug("Refreshed {} changed orders in sales cube", orders);
+        } catch (Exception e) {
+            logger.error("Sales cube refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(cron = "${app.statistics.cube.rebuild-cron:0 0 4 * * *}")
+    public void scheduledRebuild() {
+        if (cube == null) return;
+        requestRebuild();
+    }
+
+    private void streamLines(String ordersTable, String itemsTable, Timestamp updatedSince, Consumer<Line> consumer) {
+        String sql = String.format(LINES_SQL_TEMPLATE, ordersTable, itemsTable,
+                updatedSince != null ? "WHERE o.updated_at >= ?" : "");
+        ZoneId zone = ZoneId.of(zoneId);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            String url = connection.getMetaData().getURL();
+            boolean cursorFetch = url != null && url.contains("useCursorFetch=true");
+            ps.setFetchSize(cursorFetch ? fetchSize : Integer.MIN_VALUE);
+            if (updatedSince != null) ps.setTimestamp(1, updatedSince);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            String[] values = new String[DIMENSIONS];
+            values[Dimension.CATEGORY.ordinal()] = orNone(rs.getString("category_name"));
+            values[Dimension.BRAND.ordinal()] = orNone(rs.getString("brand"));
+            values[Dimension.PAYMENT_METHOD.ordinal()] = rs.getString("payment_method");
+            values[Dimension.STATUS.ordinal()] = rs.getString("status");
+            values[Dimension.MONTH.ordinal()] = YearMonth.from(rs.getTimestamp("created_at").toInstant().atZone(zone)).toString();
+            int quantity = rs.getInt("quantity");
+            BigDecimal price = rs.getBigDecimal("price");
+            long priceCents = price != null ? price.movePointRight(2).longValue() : 0;
+            consumer.accept(new Line(rs.getInt("order_id"), values, quantity, priceCents * quantity));
+        });
+    }
+
+    private static String orNone(String value) {
+        return value == null || value.isBlank() ? NONE : value;
+    }
+}
@@ -0,0 +1,159 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.StatisticCacheStatsDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả thống kê theo tên truy vấn + khoảng ngày đã chuẩn hóa + tham số.
+ * - Khoảng có chứa hôm nay (hoặc truy vấn không theo ngày) hết hạn nhanh; khoảng đã qua hẳn được giữ lâu.
+ * - Các request giống nhau đến cùng lúc chờ chung một lần tính (single-flight) thay vì cùng chạy truy vấn nặng.
+ * - Bị xóa toàn bộ khi bảng tổng hợp được dựng lại. Giá trị trả về được dùng chung, nơi gọi không được sửa.
+ * Mỗi node giữ cache riêng; số liệu hit/miss theo từng truy vấn xem qua {@link #getStats()}.
+ */
+@Service
+public class StatisticCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticCacheService.class);
+
+    @Value("${app.statistics.cache.live-ttl-seconds:30}")
+    private long liveTtlSeconds;
+
+    @Value("${app.statistics.cache.history-ttl-seconds:3600}")
+    private long historyTtlSeconds;
+
+    @Value("${app.statistics.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // expiresAtMillis = Long.MAX_VALUE khi đang tính
+    private static final class Entry {
+        final String name;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        volatile long expiresAtMillis = Long.MAX_VALUE;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAtMillis <= now;
+        }
+    }
+
+    private static final class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong sharedLoads = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Trả về kết quả đã cache hoặc tính bằng {@code loader} (một lần cho mọi request cùng khóa đến cùng lúc).
+     * @param from ngày đầu của khoảng, null nếu truy vấn không theo ngày
+     * @param to   ngày cuối của khoảng (đã chuẩn hóa), null nếu truy vấn không theo ngày (luôn dùng TTL ngắn)
+     * @param params các tham số khác thuộc khóa (ví dụ limit đã chuẩn hóa)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, LocalDate from, LocalDate to, Object params, Supplier<T> loader) {
+        String key = name + '|' + from + '|' + to + '|' + params;
+        Counters stats = counters.computeIfAbsent(name, k -> new Counters());
+        long now = System.currentTimeMillis();
+        Entry created = new Entry(name);
+        Entry entry = entries.compute(key, (k, existing) -> existing != null && !existing.isExpired(now) ? existing : created);
+
+        if (entry != created) {
+            if (entry.future.isDone()) stats.hits.incrementAndGet();
+            else stats.sharedLoads.incrementAndGet();
+            try {
+                return (T) entry.future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+
+        stats.misses.incrementAndGet();
+        if (entries.size() > maxEntries) evictOverflow();
+        try {
+            T value = loader.get();
+            boolean live = to == null || !to.isBefore(LocalDate.now());
+            created.expiresAtMillis = System.currentTimeMillis() + (live ? liveTtlSeconds : historyTtlSeconds) * 1000;
+            created.future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            // Không cache lỗi: các request đang chờ nhận cùng lỗi, request sau sẽ tính lại
+            stats.failures.incrementAndGet();
+            entries.remove(key, created);
+            created.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Xóa mọi kết quả đã cache (các lần tính đang chạy vẫn trả kết quả cho request đang chờ). */
+    public void invalidateAll() {
+        entries.forEach((key, entry) -> {
+            if (entry.future.isDone() && entries.remove(key, entry)) countEviction(entry);
+        });
+    }
+
+    public List<StatisticCacheStatsDTO> getStats() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        entries.values().forEach(entry -> sizes.merge(entry.name, 1, Integer::sum));
+        List<StatisticCacheStatsDTO> result = new ArrayList<>();
+        new TreeMap<>(counters).forEach((name, stats) -> {
+            long hits = stats.hits.get() + stats.sharedLoads.get();
+            long requests = hits + stats.misses.get();
+            result.add(new StatisticCacheStatsDTO(name, stats.hits.get(), stats.misses.get(), stats.sharedLoads.get(),
+                    stats.failures.get(), stats.evictions.get(), sizes.getOrDefault(name, 0),
+                    requests > 0 ? (double) hits / requests : null));
+        });
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${app.statistics.cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.forEach((key, entry) -> {
+            if (entry.isExpired(now) && entries.remove(key, entry)) countEviction(entry);
+        });
+        logger.debug("Statistics cache stats: {}", getStats());
+    }
+
+    // Quá số phần tử cho phép: bỏ hết phần tử hết hạn, nếu vẫn đầy thì bỏ các phần tử sắp hết hạn nhất
+    private synchronized void evictOverflow() {
+        purgeExpired();
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) return;
+        entries.entrySet().stream()
+                .filter(e -> e.getValue().future.isDone())
+                .sorted(Comparator.comparingLong(e -> e.getValue().expiresAtMillis))
+                .limit(excess)
+                .toList()
+                .forEach(e -> {
+                    if (entries.remove(e.getKey(), e.getValue())) countEviction(e.getValue());
+                });
+    }
+
+    private void countEviction(Entry entry) {
+        counters.computeIfAbsent(entry.name, k -> new Counters()).evictions.incrementAndGet();
+    }
+}
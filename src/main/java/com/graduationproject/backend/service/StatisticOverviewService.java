@@ -0,0 +1,110 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.StatisticsOverviewDTO;
+import com.graduationproject.backend.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Trang tổng quan Dashboard: chạy song song các truy vấn thống kê trên virtual thread rồi gộp thành một kết quả.
+ * Không mở transaction ở đây: chỉ lần tính thật trong StatisticService (không trúng cache) mới lấy connection,
+ * với timeout bằng hạn chót của trang; request chờ chung kết quả đang tính không giữ connection.
+ * Thời gian phản hồi bằng truy vấn chậm nhất thay vì tổng các truy vấn; phần bị lỗi hoặc quá hạn
+ * được trả về null kèm lý do thay vì làm hỏng cả trang.
+ */
+@Service
+public class StatisticOverviewService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticOverviewService.class);
+
+    private static final int MAX_RANGE_DAYS = 366;
+
+    @Autowired
+    private StatisticService statisticService;
+
+    @Autowired
+    @Qualifier("statisticsOverviewExecutor")
+    private SimpleAsyncTaskExecutor statisticsOverviewExecutor;
+
+    @Value("${app.statistics.overview.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    public StatisticsOverviewDTO getOverview(LocalDate from, LocalDate to, int limit) {
+        if (to == null) to = LocalDate.now();
+        if (from == null) from = to.minusDays(29);
+        if (from.isAfter(to)) {
+            throw new BadRequestException("'from' must not be after 'to'.");
+        }
+        if (to.toEpochDay() - from.toEpochDay() >= MAX_RANGE_DAYS) {
+            throw new BadRequestException("Date range must not exceed " + MAX_RANGE_DAYS + " days.");
+        }
+        String fromStr = from.toString();
+        String toStr = to.toString();
+        long startedAt = System.currentTimeMillis();
+        // Timeout của transaction tính thật được Spring áp dụng làm query timeout cho các câu lệnh JDBC bên trong
+        int txTimeoutSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999));
+
+        // Tóm tắt đọc từ bộ đếm trong bộ nhớ, không cần DB
+        CompletableFuture<?> summary = CompletableFuture.supplyAsync(statisticService::getDashboardSummary, statisticsOverviewExecutor);
+        CompletableFuture<?> dailyRevenue = submit(() -> statisticService.getDailyRevenueStatistics(fromStr, toStr), txTimeoutSeconds);
+        CompletableFuture<?> dailyOrders = submit(() -> statisticService.getDailyOrderCountStatistics(fromStr, toStr), txTimeoutSeconds);
+        CompletableFuture<?> categoryRevenue = submit(() -> statisticService.getRevenueStatisticsByCategory(fromStr, toStr), txTimeoutSeconds);
+        CompletableFuture<?> topProducts = submit(() -> statisticService.getTopSellingProducts(limit), txTimeoutSeconds);
+        CompletableFuture<?> topCustomers = submit(() -> statisticService.getRevenueStatisticsByCustomer(fromStr, toStr, limit), txTimeoutSeconds);
+
+        // Mọi phần dùng chung một hạn chót tính từ lúc bắt đầu
+        long deadline = startedAt + timeoutMillis;
+        Map<String, String> errors = new LinkedHashMap<>();
+        StatisticsOverviewDTO overview = new StatisticsOverviewDTO();
+        overview.setSummary(await("summary", summary, deadline, errors));
+        overview.setDailyRevenue(await("dailyRevenue", dailyRevenue, deadline, errors));
+        overview.setDailyOrders(await("dailyOrders", dailyOrders, deadline, errors));
+        overview.setCategoryRevenue(await("categoryRevenue", categoryRevenue, deadline, errors));
+        overview.setTopProducts(await("topProducts", topProducts, deadline, errors));
+        overview.setTopCustomers(await("topCustomers", topCustomers, deadline, errors));
+        overview.setErrors(errors);
+        overview.setElapsedMillis(System.currentTimeMillis() - startedAt);
+        if (!errors.isEmpty()) {
+            logger.warn("Statistics overview {}..{} returned partial results: {}", fromStr, toStr, errors);
+        }
+        return overview;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> query, int txTimeoutSeconds) {
+        return CompletableFuture.supplyAsync(() -> statisticService.withQueryTimeout(txTimeoutSeconds, query),
+                statisticsOverviewExecutor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(String part, CompletableFuture<?> future, long deadline, Map<String, String> errors) {
+        try {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            return (T) future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            errors.put(part, "Timed out after " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.error("Statistics overview part '{}' failed: {}", part, cause.getMessage(), cause);
+            errors.put(part, cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.put(part, "Interrupted");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,250 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.repository.DailyCategorySalesStatRepository;
+import com.graduationproject.backend.repository.DailyCustomerSalesStatRepository;
+import com.graduationproject.backend.repository.DailySalesStatRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Bảng tổng hợp thống kê theo ngày (stat_daily_sales), ngày + danh mục (stat_daily_category_sales)
+ * và ngày + khách hàng (stat_daily_customer_sales) cho các đơn PAID/COMPLETED.
+ * - Cộng/trừ một đơn hàng trong cùng transaction khi đơn vào hoặc rời nhóm trạng thái được tính.
+ * - {@link #backfill(LocalDate, LocalDate)} dựng lại theo từng khoảng ngày từ orders và orders_archive.
+ * - Job kiểm tra định kỳ so sánh tổng theo ngày với đơn hàng gốc và dựng lại những ngày bị lệch.
+ */
+@Service
+public class StatisticRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticRollupService.class);
+
+    private static final String BACKFILL_JOB_NAME = "statistics-rollup-backfill";
+    private static final String CHECK_JOB_NAME = "statistics-rollup-checker";
+
+    // Cùng điều kiện với các truy vấn thống kê cũ
+    public static final EnumSet<OrderStatus> COUNTED_STATUSES = EnumSet.of(OrderStatus.PAID, OrderStatus.COMPLETED);
+
+    @Autowired
+    private DailySalesStatRepository dailySalesStatRepository;
+
+    @Autowired
+    private DailyCategorySalesStatRepository dailyCategorySalesStatRepository;
+
+    @Autowired
+    private DailyCustomerSalesStatRepository dailyCustomerSalesStatRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
+    @Autowired
+    private StatisticCacheService statisticCacheService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.statistics.rollup.backfill-chunk-days:31}")
+    private int chunkDays;
+
+    @Value("${app.statistics.rollup.checker-days:90}")
+    private int checkerDays;
+
+    @Value("${app.statistics.rollup.lease-seconds:1800}")
+    private long leaseSeconds;
+
+    @Autowired
+    public StatisticRollupService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Gọi mỗi khi đổi trạng thái đơn hàng, trong transaction đổi trạng thái.
+     * Chỉ ghi khi đơn vào hoặc rời nhóm PAID/COMPLETED (PAID -> COMPLETED không đổi số liệu).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrderStatusChanged(int orderId, OrderStatus oldStatus, OrderStatus newStatus) {
+        boolean wasCounted = oldStatus != null && COUNTED_STATUSES.contains(oldStatus);
+        boolean isCounted = newStatus != null && COUNTED_STATUSES.contains(newStatus);
+        if (wasCounted == isCounted) return;
+        int sign = isCounted ? 1 : -1;
+        dailySalesStatRepository.applyOrderDelta(orderId, sign);
+        dailyCategorySalesStatRepository.applyOrderDelta(orderId, sign);
+        dailyCustomerSalesStatRepository.applyOrderDelta(orderId, sign);
+        logger.debug("Applied statistics rollup delta {} for Order ID {} ({} -> {})", sign, orderId, oldStatus, newStatus);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (dailySalesStatRepository.count() == 0 && dailySalesStatRepository.findFirstCountedOrderAt() != null) {
+                logger.info("Statistics rollup tables are empty, backfilling from orders");
+                backfill(null, null);
+            }
+        } catch (Exception e) {
+            logger.error("Initial statistics rollup backfill failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Dựng lại ba bảng tổng hợp cho [from, to], mỗi {@code chunkDays} ngày một transaction.
+     * from = null: từ ngày có đơn được tính đầu tiên; to = null: hôm nay.
+     * @return số ngày đã dựng lại, hoặc -1 nếu node khác đang chạy
+     */
+    public int backfill(LocalDate from, LocalDate to) {
+        if (!jobLeaseService.tryAcquire(BACKFILL_JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.info("Skip statistics rollup backfill: lease is held by another node");
+            return -1;
+        }
+        try {
+            if (from == null) {
+                Timestamp first = dailySalesStatRepository.findFirstCountedOrderAt();
+                if (first == null) return 0;
+                from = first.toLocalDateTime().toLocalDate();
+            }
+            if (to == null) to = LocalDate.now();
+            int days = 0;
+            for (LocalDate chunkStart = from; !chunkStart.isAfter(to); chunkStart = chunkStart.plusDays(chunkDays)) {
+                LocalDate chunkEnd = chunkStart.plusDays(chunkDays - 1L);
+                if (chunkEnd.isAfter(to)) chunkEnd = to;
+                rebuildDays(chunkStart, chunkEnd);
+                days += (int) (chunkEnd.toEpochDay() - chunkStart.toEpochDay() + 1);
+            }
+            logger.info("Backfilled statistics rollups for {} days from {} to {}", days, from, to);
+            dashboardCounterService.reload(); // Tổng doanh thu trên Dashboard đọc từ bảng tổng hợp
+            statisticCacheService.invalidateAll();
+            return days;
+        } finally {
+            jobLeaseService.release(BACKFILL_JOB_NAME);
+        }
+    }
+
+    // Xóa rồi tổng hợp lại trong một transaction; INSERT ... SELECT khóa các dòng đơn hàng đã đọc
+    // nên đơn đổi trạng thái đồng thời sẽ cộng delta sau khi lô này commit
+    private void rebuildDays(LocalDate from, LocalDate to) {
+        Timestamp fromTs = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTs = Timestamp.valueOf(to.plusDays(1).atStartOfDay());
+        transactionTemplate.executeWithoutResult(status -> {
+            dailySalesStatRepository.deleteByStatDateBetween(from, to);
+            dailyCategorySalesStatRepository.deleteByStatDateBetween(from, to);
+            dailyCustomerSalesStatRepository.deleteByStatDateBetween(from, to);
+            dailySalesStatRepository.rebuildRange(fromTs, toTs);
+            dailyCategorySalesStatRepository.rebuildRange(fromTs, toTs);
+            dailyCustomerSalesStatRepository.rebuildRange(fromTs, toTs);
+        });
+    }
+
+    @Scheduled(cron = "${app.statistics.rollup.checker-cron:0 30 3 * * *}")
+    public void verifyRollups() {
+        if (!jobLeaseService.tryAcquire(CHECK_JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+            logger.debug("Skip statistics rollup check: lease is held by another node");
+            return;
+        }
+        try {
+            LocalDate to = LocalDate.now();
+            int[] result = runCheck(to.minusDays(checkerDays - 1L), to);
+            if (result[1] > 0) {
+                logger.warn("Statistics rollup checker rebuilt {} of {} days with drifted totals", result[1], result[0]);
+            } else {
+                logger.info("Statistics rollup checker checked {} days, no drift found", result[0]);
+            }
+        } catch (Exception e) {
+            logger.error("Statistics rollup check failed: {}", e.getMessage(), e);
+        } finally {
+            jobLeaseService.release(CHECK_JOB_NAME);
+        }
+    }
+
+    /**
+     * So sánh tổng theo ngày (bảng theo danh mục: theo ngày và danh mục) của ba bảng tổng hợp với đơn hàng gốc
+     * trong [from, to] và dựng lại những ngày bị lệch.
+     * @return [số ngày đã kiểm tra, số ngày đã dựng lại]
+     */
+    public int[] runCheck(LocalDate from, LocalDate to) {
+        Timestamp fromTs = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTs = Timestamp.valueOf(to.plusDays(1).atStartOfDay());
+        Set<LocalDate> drifted = new TreeSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<LocalDate, DayTotals> sourceOrders = toTotals(dailySalesStatRepository.findSourceDailyTotals(fromTs, toTs));
+            Map<DayCategory, DayTotals> sourceItems = toCategoryTotals(dailyCategorySalesStatRepository.findSourceCategoryTotals(fromTs, toTs));
+            collectDrift(sourceOrders, toTotals(dailySalesStatRepository.findDailyTotals(from, to)), day -> day, drifted);
+            collectDrift(sourceOrders, toTotals(dailyCustomerSalesStatRepository.findDailyTotals(from, to)), day -> day, drifted);
+            collectDrift(sourceItems, toCategoryTotals(dailyCategorySalesStatRepository.findCategoryTotals(from, to)),
+                    DayCategory::day, drifted);
+        });
+        // Lệch khi so sánh có thể do đơn vừa đổi trạng thái; dựng lại ngày đó cũng cho kết quả đúng
+        for (LocalDate day : drifted) {
+            rebuildDays(day, day);
+        }
+        if (!drifted.isEmpty()) {
+            dashboardCounterService.reload();
+            statisticCacheService.invalidateAll();
+        }
+        return new int[]{(int) (to.toEpochDay() - from.toEpochDay() + 1), drifted.size()};
+    }
+
+    private record DayTotals(long count, BigDecimal amount) {
+        boolean sameAs(DayTotals other) {
+            return count == other.count && amount.compareTo(other.amount) == 0;
+        }
+    }
+
+    private record DayCategory(LocalDate day, int categoryId) {}
+
+    private static final DayTotals ZERO = new DayTotals(0, BigDecimal.ZERO);
+
+    // rows = [ngày, số lượng, tổng tiền]
+    private static Map<LocalDate, DayTotals> toTotals(List<Object[]> rows) {
+        Map<LocalDate, DayTotals> totals = new HashMap<>();
+        for (Object[] row : rows) {
+            LocalDate day = row[0] instanceof LocalDate date ? date : ((java.sql.Date) row[0]).toLocalDate();
+            long count = row[1] != null ? ((Number) row[1]).longValue() : 0;
+            BigDecimal amount = row[2] != null ? new BigDecimal(row[2].toString()) : BigDecimal.ZERO;
+            totals.put(day, new DayTotals(count, amount));
+        }
+        return totals;
+    }
+
+    // rows = [ngày, danh mục, số lượng, doanh thu]
+    private static Map<DayCategory, DayTotals> toCategoryTotals(List<Object[]> rows) {
+        Map<DayCategory, DayTotals> totals = new HashMap<>();
+        for (Object[] row : rows) {
+            LocalDate day = row[0] instanceof LocalDate date ? date : ((java.sql.Date) row[0]).toLocalDate();
+            long count = row[2] != null ? ((Number) row[2]).longValue() : 0;
+            BigDecimal amount = row[3] != null ? new BigDecimal(row[3].toString()) : BigDecimal.ZERO;
+            totals.merge(new DayCategory(day, ((Number) row[1]).intValue()), new DayTotals(count, amount),
+                    (a, b) -> new DayTotals(a.count() + b.count(), a.amount().add(b.amount())));
+        }
+        return totals;
+    }
+
+    // Khóa không có dòng nào được coi là 0 (ví dụ dòng tổng hợp còn lại sau khi mọi đơn của ngày bị hủy)
+    private static <K> void collectDrift(Map<K, DayTotals> expected, Map<K, DayTotals> actual,
+                                         Function<K, LocalDate> dayOf, Set<LocalDate> drifted) {
+        Set<K> keys = new HashSet<>(expected.keySet());
+        keys.addAll(actual.keySet());
+        for (K key : keys) {
+            if (!expected.getOrDefault(key, ZERO).sameAs(actual.getOrDefault(key, ZERO))) {
+                drifted.add(dayOf.apply(key));
+            }
+        }
+    }
+}
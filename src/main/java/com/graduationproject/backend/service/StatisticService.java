@@ -1,27 +1,26 @@
 package com.graduationproject.backend.service;
 
 import com.graduationproject.backend.dto.*; // Import tất cả DTO thống kê mới
-import com.graduationproject.backend.entity.enums.OrderStatus; // Import OrderStatus
-import com.graduationproject.backend.entity.enums.Role;
+import com.graduationproject.backend.repository.DailyCategorySalesStatRepository;
+import com.graduationproject.backend.repository.DailyCustomerSalesStatRepository;
+import com.graduationproject.backend.repository.DailySalesStatRepository;
 import com.graduationproject.backend.repository.OrderItemRepository; // Inject OrderItemRepository
 import com.graduationproject.backend.repository.OrderRepository; // Inject OrderRepository
 import com.graduationproject.backend.repository.ProductRepository; // Inject ProductRepository
-import com.graduationproject.backend.repository.UserRepository; // Inject UserRepository
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional; // Import Transactional
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.LinkedHashMap; // Dùng LinkedHashMap để giữ thứ tự
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,71 +34,94 @@ public class StatisticService {
     private OrderItemRepository orderItemRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private ProductRepository productRepository;
 
+    // Bảng tổng hợp theo ngày, được StatisticRollupService cập nhật khi đơn đổi trạng thái
     @Autowired
-    private ProductRepository productRepository;
+    private DailySalesStatRepository dailySalesStatRepository;
+
+    @Autowired
+    private DailyCategorySalesStatRepository dailyCategorySalesStatRepository;
+
+    @Autowired
+    private DailyCustomerSalesStatRepository dailyCustomerSalesStatRepository;
+
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
+    @Autowired
+    private StatisticCacheService statisticCacheService;
 
-    // Hàm helper chuyển đổi String ngày (YYYY-MM-DD) sang Timestamp (bắt đầu ngày)
-    private Timestamp getStartOfDayTimestamp(String dateStr) {
-        if (dateStr == null || dateStr.isEmpty()) return null;
+    private final TransactionTemplate readTemplate;
+
+    @Autowired
+    public StatisticService(PlatformTransactionManager transactionManager) {
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
+
+    // Timeout (giây) cho transaction của lần tính thật trên thread hiện tại, đặt qua withQueryTimeout
+    private static final ThreadLocal<Integer> QUERY_TIMEOUT_SECONDS = new ThreadLocal<>();
+
+    /**
+     * Chạy {@code call} với giới hạn thời gian cho các truy vấn thống kê mà nó phải tính thật (không trúng cache).
+     * Spring áp dụng timeout của transaction làm query timeout JDBC; request chờ chung kết quả không mở transaction.
+     */
+    public <T> T withQueryTimeout(int timeoutSeconds, Supplier<T> call) {
+        Integer previous = QUERY_TIMEOUT_SECONDS.get();
+        QUERY_TIMEOUT_SECONDS.set(timeoutSeconds);
         try {
-            LocalDate date = LocalDate.parse(dateStr);
-            LocalDateTime startOfDay = date.atStartOfDay();
-            return Timestamp.valueOf(startOfDay);
-        } catch (Exception e) {
-            // Xử lý lỗi parse ngày nếu cần
-            return null;
+            return call.get();
+        } finally {
+            if (previous != null) QUERY_TIMEOUT_SECONDS.set(previous);
+            else QUERY_TIMEOUT_SECONDS.remove();
         }
     }
 
-    // Hàm helper chuyển đổi String ngày (YYYY-MM-DD) sang Timestamp (cuối ngày)
-    private Timestamp getEndOfDayTimestamp(String dateStr) {
-        if (dateStr == null || dateStr.isEmpty()) return null;
+    // Đọc qua cache; chỉ lần tính thật mới mở transaction chỉ đọc (và lấy connection),
+    // request chờ chung kết quả không giữ connection. range = null: truy vấn không theo ngày
+    private <T> T cached(String name, LocalDate[] range, Object params, Supplier<T> query) {
+        return statisticCacheService.get(name, range != null ? range[0] : null, range != null ? range[1] : null, params,
+                () -> readTemplateForCurrentThread().execute(status -> query.get()));
+    }
+
+    private TransactionTemplate readTemplateForCurrentThread() {
+        Integer timeoutSeconds = QUERY_TIMEOUT_SECONDS.get();
+        if (timeoutSeconds == null) return readTemplate;
+        TransactionTemplate template = new TransactionTemplate(readTemplate.getTransactionManager(), readTemplate);
+        template.setTimeout(timeoutSeconds);
+        return template;
+    }
+
+    // Giới hạn trên cho mọi truy vấn Top N: LIMIT luôn được đẩy xuống SQL, không lấy hết rồi cắt trong Java
+    private static final int MAX_TOP_LIMIT = 100;
+
+    private Pageable topN(int limit, int defaultLimit) {
+        int size = limit <= 0 ? defaultLimit : Math.min(limit, MAX_TOP_LIMIT);
+        return PageRequest.of(0, size);
+    }
+
+    // Hàm helper chuyển đổi khoảng ngày (YYYY-MM-DD) cho các bảng tổng hợp theo ngày
+    private LocalDate[] parseDateRange(String fromDateStr, String toDateStr, String statisticName) {
         try {
-            LocalDate date = LocalDate.parse(dateStr);
-            LocalDateTime endOfDay = date.atTime(LocalTime.MAX);
-            return Timestamp.valueOf(endOfDay);
+            LocalDate from = LocalDate.parse(fromDateStr);
+            LocalDate to = LocalDate.parse(toDateStr);
+            // Chưa có đơn ở tương lai: cắt về hôm nay để các khoảng cho cùng kết quả dùng chung một khóa cache
+            LocalDate today = LocalDate.now();
+            return new LocalDate[]{from, to.isAfter(today) ? today : to};
         } catch (Exception e) {
-            // Xử lý lỗi parse ngày nếu cần
-            return null;
+            throw new IllegalArgumentException("Invalid date format for " + statisticName + " statistics.");
         }
     }
 
-
     /**
      * [ADMIN] Lấy dữ liệu tóm tắt nhanh cho Dashboard.
      * Số liệu tổng quan (tổng đơn, user, sản phẩm, doanh thu...).
      * @return DashboardSummaryDTO
      */
-    @Transactional(readOnly = true)
     public DashboardSummaryDTO getDashboardSummary() {
-        // Lấy các số liệu tổng từ các Repository
-        long totalOrders = orderRepository.count();
-        long pendingOrders = orderRepository.countByStatus(OrderStatus.PENDING);
-        long completedOrders = orderRepository.countByStatus(OrderStatus.COMPLETED);
-        long totalCustomers = userRepository.countByRole(Role.BUYER); // Chỉ đếm role BUYER
-        long totalProducts = productRepository.count();
-
-        // Tính tổng doanh thu toàn bộ (từ các đơn PAID/COMPLETED)
-        // Bạn có thể giới hạn trong 1 tháng/năm nếu muốn, hoặc lấy tổng từ trước đến nay
-        // Ví dụ lấy tổng từ trước đến nay, cần khoảng thời gian rất rộng
-        LocalDateTime startOfTime = LocalDateTime.of(2000, 1, 1, 0, 0); // Giả định bắt đầu từ năm 2000
-        LocalDateTime endOfTime = LocalDateTime.now().plusYears(1); // Giả định đến 1 năm sau
-        Timestamp startDate = Timestamp.valueOf(startOfTime);
-        Timestamp endDate = Timestamp.valueOf(endOfTime);
-        BigDecimal totalRevenue = orderRepository.sumTotalAmountByCreatedAtBetweenAndStatusIn(startDate, endDate);
-
-        // TODO: Có thể thêm tính số liệu "mới trong tháng/tuần" nếu cần chi tiết hơn cho dashboard
-
-        return new DashboardSummaryDTO(
-                totalOrders,
-                pendingOrders,
-                completedOrders,
-                totalCustomers,
-                totalProducts,
-                totalRevenue != null ? totalRevenue : BigDecimal.ZERO
-        );
+        // Đọc từ bộ đếm trong bộ nhớ, được cập nhật theo sự kiện và đối chiếu định kỳ với DB
+        return dashboardCounterService.getSummary();
     }
 
 
@@ -109,27 +131,13 @@ public class StatisticService {
      * @param toDateStr   Ngày kết thúc (YYYY-MM-DD)
      * @return List<DailyRevenueDTO>
      */
-    @Transactional(readOnly = true)
     public List<DailyRevenueDTO> getDailyRevenueStatistics(String fromDateStr, String toDateStr) {
-        Timestamp startDate = getStartOfDayTimestamp(fromDateStr);
-        Timestamp endDate = getEndOfDayTimestamp(toDateStr);
-
-        if (startDate == null || endDate == null) {
-            // Xử lý lỗi ngày không hợp lệ
-            throw new IllegalArgumentException("Invalid date format for revenue statistics.");
-        }
+        LocalDate[] range = parseDateRange(fromDateStr, toDateStr, "revenue");
 
-        List<Object[]> results = orderRepository.sumRevenueByDay(startDate, endDate);
-
-        // Chuyển đổi kết quả từ Object[] sang List<DailyRevenueDTO>
-        return results.stream()
-                .map(row -> {
-                    // row[0] là Date, row[1] là BigDecimal
-                    Date date = (Date) row[0];
-                    BigDecimal revenue = (BigDecimal) row[1];
-                    return new DailyRevenueDTO(date, revenue != null ? revenue : BigDecimal.ZERO);
-                })
-                .collect(Collectors.toList());
+        // Đọc một dòng mỗi ngày từ bảng tổng hợp thay vì gom nhóm lại toàn bộ đơn hàng
+        return cached("dailyRevenue", range, null, () -> dailySalesStatRepository.findActiveDays(range[0], range[1]).stream()
+                .map(stat -> new DailyRevenueDTO(java.sql.Date.valueOf(stat.getStatDate()), stat.getRevenue()))
+                .collect(Collectors.toList()));
     }
 
     /**
@@ -138,26 +146,12 @@ public class StatisticService {
      * @param toDateStr   Ngày kết thúc (YYYY-MM-DD)
      * @return List<DailyOrderCountDTO>
      */
-    @Transactional(readOnly = true)
     public List<DailyOrderCountDTO> getDailyOrderCountStatistics(String fromDateStr, String toDateStr) {
-        Timestamp startDate = getStartOfDayTimestamp(fromDateStr);
-        Timestamp endDate = getEndOfDayTimestamp(toDateStr);
-
-        if (startDate == null || endDate == null) {
-            throw new IllegalArgumentException("Invalid date format for order count statistics.");
-        }
+        LocalDate[] range = parseDateRange(fromDateStr, toDateStr, "order count");
 
-        List<Object[]> results = orderRepository.countCompletedOrdersByDay(startDate, endDate);
-
-        // Chuyển đổi kết quả từ Object[] sang List<DailyOrderCountDTO>
-        return results.stream()
-                .map(row -> {
-                    // row[0] là Date, row[1] là Long
-                    Date date = (Date) row[0];
-                    Long count = (Long) row[1];
-                    return new DailyOrderCountDTO(date, count != null ? count : 0);
-                })
-                .collect(Collectors.toList());
+        return cached("dailyOrderCount", range, null, () -> dailySalesStatRepository.findActiveDays(range[0], range[1]).stream()
+                .map(stat -> new DailyOrderCountDTO(java.sql.Date.valueOf(stat.getStatDate()), stat.getOrderCount()))
+                .collect(Collectors.toList()));
     }
 
 
@@ -167,26 +161,22 @@ public class StatisticService {
      * @param toDateStr   Ngày kết thúc (YYYY-MM-DD)
      * @return List<CategoryRevenueDTO>
      */
-    @Transactional(readOnly = true)
     public List<CategoryRevenueDTO> getRevenueStatisticsByCategory(String fromDateStr, String toDateStr) {
-        Timestamp startDate = getStartOfDayTimestamp(fromDateStr);
-        Timestamp endDate = getEndOfDayTimestamp(toDateStr);
-
-        if (startDate == null || endDate == null) {
-            throw new IllegalArgumentException("Invalid date format for category revenue statistics.");
-        }
-
-        List<Object[]> results = orderRepository.sumRevenueByCategory(startDate, endDate);
-
-        // Chuyển đổi kết quả từ Object[] sang List<CategoryRevenueDTO>
-        return results.stream()
-                .map(row -> {
-                    // row[0] là String (categoryName), row[1] là BigDecimal
-                    String categoryName = (String) row[0];
-                    BigDecimal revenue = (BigDecimal) row[1];
-                    return new CategoryRevenueDTO(categoryName, revenue != null ? revenue : BigDecimal.ZERO);
-                })
-                .collect(Collectors.toList());
+        LocalDate[] range = parseDateRange(fromDateStr, toDateStr, "category revenue");
+
+        return cached("categoryRevenue", range, null, () -> {
+            List<Object[]> results = dailyCategorySalesStatRepository.sumRevenueByCategory(range[0], range[1]);
+
+            // Chuyển đổi kết quả từ Object[] sang List<CategoryRevenueDTO>
+            return results.stream()
+                    .map(row -> {
+                        // row[0] là String (categoryName), row[1] là BigDecimal
+                        String categoryName = (String) row[0];
+                        BigDecimal revenue = (BigDecimal) row[1];
+                        return new CategoryRevenueDTO(categoryName, revenue != null ? revenue : BigDecimal.ZERO);
+                    })
+                    .collect(Collectors.toList());
+        });
     }
 
     /**
@@ -196,29 +186,21 @@ public class StatisticService {
      * @param limit Giới hạn số lượng khách hàng (ví dụ: top 10)
      * @return List<CustomerRevenueDTO>
      */
-    @Transactional(readOnly = true)
     public List<CustomerRevenueDTO> getRevenueStatisticsByCustomer(String fromDateStr, String toDateStr, int limit) {
-         Timestamp startDate = getStartOfDayTimestamp(fromDateStr);
-         Timestamp endDate = getEndOfDayTimestamp(toDateStr);
-
-         if (startDate == null || endDate == null) {
-             throw new IllegalArgumentException("Invalid date format for customer revenue statistics.");
-         }
-         if (limit <= 0) limit = 10; // Mặc định top 10
-
-         // Query sumRevenueByCustomer không có limit, cần lấy tất cả rồi giới hạn sau
-         // Hoặc viết query native có LIMIT nếu cần tối ưu
-         List<Object[]> results = orderRepository.sumRevenueByCustomer(startDate, endDate);
-
-         // Chuyển đổi kết quả và giới hạn số lượng
-         return results.stream()
-                 .map(row -> new CustomerRevenueDTO(
-                         (Long) row[0], // userId
-                         (String) row[1], // customerName
-                         (BigDecimal) row[2] // customerRevenue
-                 ))
-                 .limit(limit) // Giới hạn số lượng
-                 .collect(Collectors.toList());
+         LocalDate[] range = parseDateRange(fromDateStr, toDateStr, "customer revenue");
+         Pageable pageable = topN(limit, 10); // Mặc định top 10
+
+         return cached("customerRevenue", range, pageable.getPageSize(), () -> {
+             List<Object[]> results = dailyCustomerSalesStatRepository.sumRevenueByCustomer(range[0], range[1], pageable);
+
+             return results.stream()
+                     .map(row -> new CustomerRevenueDTO(
+                             (Long) row[0], // userId
+                             (String) row[1], // customerName
+                             (BigDecimal) row[2] // customerRevenue
+                     ))
+                     .collect(Collectors.toList());
+         });
     }
 
 
@@ -227,21 +209,42 @@ public class StatisticService {
      * @param limit Giới hạn số lượng sản phẩm (ví dụ: top 5)
      * @return List<TopProductDTO>
      */
-    @Transactional(readOnly = true)
     public List<TopProductDTO> getTopSellingProducts(int limit) {
-        if (limit <= 0) limit = 5; // Mặc định top 5
-        Pageable pageable = PageRequest.of(0, limit); // Lấy từ trang 0 với limit
-
-        List<Object[]> results = orderItemRepository.findTopSellingProducts(pageable);
-
-        // Chuyển đổi kết quả từ Object[] sang List<TopProductDTO>
-        return results.stream()
-                .map(row -> new TopProductDTO(
-                        (int) row[0], // productId (cast từ Integer)
-                        (String) row[1], // productName
-                        (Long) row[2] // totalQuantity
-                ))
-                .collect(Collectors.toList());
+        Pageable pageable = topN(limit, 5); // Mặc định top 5
+
+        return cached("topSellingProducts", null, pageable.getPageSize(), () -> {
+            List<Object[]> results = orderItemRepository.findTopSellingProducts(pageable);
+
+            // Chuyển đổi kết quả từ Object[] sang List<TopProductDTO>
+            return results.stream()
+                    .map(row -> new TopProductDTO(
+                            (int) row[0], // productId (cast từ Integer)
+                            (String) row[1], // productName
+                            (Long) row[2] // totalQuantity
+                    ))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * [ADMIN] Lấy Top N sản phẩm có doanh thu cao nhất.
+     * @param limit Giới hạn số lượng sản phẩm (ví dụ: top 5)
+     * @return List<TopProductDTO>
+     */
+    public List<TopProductDTO> getTopRevenueProducts(int limit) {
+        Pageable pageable = topN(limit, 5); // Mặc định top 5
+
+        return cached("topRevenueProducts", null, pageable.getPageSize(), () -> {
+            List<Object[]> results = orderItemRepository.findTopRevenueProducts(pageable);
+
+            return results.stream()
+                    .map(row -> new TopProductDTO(
+                            (int) row[0], // productId
+                            (String) row[1], // productName
+                            (BigDecimal) row[2] // totalRevenue
+                    ))
+                    .collect(Collectors.toList());
+        });
     }
 
      /**
@@ -249,20 +252,20 @@ public class StatisticService {
       * @param limit Giới hạn số lượng khách hàng
       * @return List<CustomerStatisticDTO>
       */
-     @Transactional(readOnly = true)
      public List<CustomerStatisticDTO> getTopCustomersByCompletedOrders(int limit) {
-         if (limit <= 0) limit = 5; // Mặc định top 5
-         Pageable pageable = PageRequest.of(0, limit);
-
-         List<Object[]> results = orderRepository.countCompletedOrdersByCustomer(pageable);
-
-         return results.stream()
-                 .map(row -> new CustomerStatisticDTO(
-                         (Long) row[0], // userId
-                         (String) row[1], // customerName
-                         (Long) row[2] // orderCount
-                 ))
-                 .collect(Collectors.toList());
+         Pageable pageable = topN(limit, 5); // Mặc định top 5
+
+         return cached("topCustomersByCompletedOrders", null, pageable.getPageSize(), () -> {
+             List<Object[]> results = orderRepository.countCompletedOrdersByCustomer(pageable);
+
+             return results.stream()
+                     .map(row -> new CustomerStatisticDTO(
+                             (Long) row[0], // userId
+                             (String) row[1], // customerName
+                             (Long) row[2] // orderCount
+                     ))
+                     .collect(Collectors.toList());
+         });
      }
 
      /**
@@ -270,20 +273,20 @@ public class StatisticService {
       * @param limit Giới hạn số lượng khách hàng
       * @return List<CustomerStatisticDTO>
       */
-     @Transactional(readOnly = true)
      public List<CustomerStatisticDTO> getTopCustomersByCanceledOrders(int limit) {
-         if (limit <= 0) limit = 5; // Mặc định top 5
-         Pageable pageable = PageRequest.of(0, limit);
-
-         List<Object[]> results = orderRepository.countCanceledOrdersByCustomer(pageable);
-
-         return results.stream()
-                 .map(row -> new CustomerStatisticDTO(
-                         (Long) row[0], // userId
-                         (String) row[1], // customerName
-                         (Long) row[2] // cancelCount
-                 ))
-                 .collect(Collectors.toList());
+         Pageable pageable = topN(limit, 5); // Mặc định top 5
+
+         return cached("topCustomersByCanceledOrders", null, pageable.getPageSize(), () -> {
+             List<Object[]> results = orderRepository.countCanceledOrdersByCustomer(pageable);
+
+             return results.stream()
+                     .map(row -> new CustomerStatisticDTO(
+                             (Long) row[0], // userId
+                             (String) row[1], // customerName
+                             (Long) row[2] // cancelCount
+                     ))
+                     .collect(Collectors.toList());
+         });
      }
 
 
@@ -291,20 +294,21 @@ public class StatisticService {
      * [ADMIN] Lấy thống kê tồn kho (từ logic cũ, giữ nguyên).
      * Trong thực tế cần truy vấn từ bảng Product.
      */
-    @Transactional(readOnly = true)
     public Map<String, Integer> getInventoryStatistics() {
         // TODO: Implement real logic using ProductRepository
         // Ví dụ: countByProductStock() hoặc findByStockLessThan()
         // Tạm thời vẫn trả về dữ liệu giả hoặc danh sách sản phẩm với stock
-         List<Object[]> inventoryData = productRepository.getInventorySummary(); // Cần thêm query này vào ProductRepository
-         Map<String, Integer> inventoryMap = new LinkedHashMap<>(); // Dùng LinkedHashMap để giữ thứ tự nếu query có ORDER BY
-         if (inventoryData != null) {
-              for (Object[] row : inventoryData) {
-                   String productName = (String) row[0];
-                  Integer stock = (Integer) row[1]; // Lấy về dưới dạng Integer
-                   inventoryMap.put(productName, stock != null ? stock.intValue() : 0);
-              }
-         }
-         return inventoryMap;
+         return cached("inventory", null, null, () -> {
+             List<Object[]> inventoryData = productRepository.getInventorySummary(); // Cần thêm query này vào ProductRepository
+             Map<String, Integer> inventoryMap = new LinkedHashMap<>(); // Dùng LinkedHashMap để giữ thứ tự nếu query có ORDER BY
+             if (inventoryData != null) {
+                  for (Object[] row : inventoryData) {
+                       String productName = (String) row[0];
+                      Integer stock = (Integer) row[1]; // Lấy về dưới dạng Integer
+                       inventoryMap.put(productName, stock != null ? stock.intValue() : 0);
+                  }
+             }
+             return inventoryMap;
+         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.TimeSeriesDTO;
+import com.graduationproject.backend.dto.TimeSeriesDTO.Granularity;
+import com.graduationproject.backend.dto.TimeSeriesPointDTO;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.repository.DailySalesStatRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chuỗi thời gian doanh thu/số đơn (PAID/COMPLETED) theo giờ, ngày, tuần, tháng, quý trong múi giờ thống kê
+ * (mặc định Asia/Ho_Chi_Minh), có điền 0 cho khoảng trống và so sánh với kỳ liền trước cùng độ dài.
+ * - Khoảng đầu và cuối được cắt theo [from, to] (không lấy dữ liệu ngoài khoảng yêu cầu); kỳ trước cắt y hệt
+ *   nên khoảng cuối chưa đủ chỉ so với phần tương ứng của kỳ trước.
+ * - Kỳ hiện tại và kỳ trước được đọc trong một lượt và cộng vào mảng khoảng theo tìm kiếm nhị phân.
+ * - Từ ngày trở lên đọc bảng tổng hợp stat_daily_sales (theo khoảng khóa chính) khi ngày của DB trùng múi giờ thống kê;
+ *   theo giờ (hoặc khi múi giờ lệch) đọc từng dòng đơn hàng bằng điều kiện khoảng created_at, không dùng DATE().
+ */
+@Service
+public class StatisticTimeSeriesService {
+
+    private static final int MAX_POINTS = 2000;
+    private static final int MAX_HOURLY_DAYS = 31;
+
+    private static final String ORDER_ROWS_SQL_TEMPLATE = """
+            SELECT created_at, total_amount FROM %s
+            WHERE status IN ('PAID', 'COMPLETED') AND created_at >= ? AND created_at < ?
+            """;
+
+    @Autowired
+    private DailySalesStatRepository dailySalesStatRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.statistics.zone:Asia/Ho_Chi_Minh}")
+    private String zoneId;
+
+    @Value("${app.statistics.series.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Các khoảng của kỳ trước (chỉ số 0..n-1) và kỳ hiện tại (n..2n-1), mỗi khoảng [starts[i], ends[i]).
+     * Khoảng đầu/cuối của kỳ hiện tại bị cắt theo [from, to] nên có thể ngắn hơn một khoảng đầy đủ;
+     * kỳ trước là kỳ hiện tại lùi đúng n khoảng nên bị cắt tương ứng. Giữa hai kỳ có thể có khe không thuộc khoảng nào.
+     */
+    record Buckets(int n, LocalDateTime[] starts, LocalDateTime[] ends) {
+        LocalDateTime previousStart() {
+            return starts[0];
+        }
+
+        LocalDateTime currentStart() {
+            return starts[n];
+        }
+
+        LocalDateTime end() {
+            return ends[2 * n - 1];
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public TimeSeriesDTO getRevenueSeries(Granularity granularity, LocalDate from, LocalDate to) {
+        if (granularity == null) granularity = Granularity.DAY;
+        if (from == null || to == null) {
+            throw new BadRequestException("'from' and 'to' are required.");
+        }
+        if (from.isAfter(to)) {
+            throw new BadRequestException("'from' must not be after 'to'.");
+        }
+        if (granularity == Granularity.HOUR && ChronoUnit.DAYS.between(from, to) >= MAX_HOURLY_DAYS) {
+            throw new BadRequestException("Hourly series are limited to " + MAX_HOURLY_DAYS + " days.");
+        }
+        ZoneId zone = ZoneId.of(zoneId);
+        Buckets buckets = buildBuckets(granularity, from, to);
+        int n = buckets.n();
+        long[] counts = new long[2 * n];
+        BigDecimal[] revenues = new BigDecimal[2 * n];
+        Arrays.fill(revenues, BigDecimal.ZERO);
+
+        // Một lượt đọc cho cả [đầu kỳ trước, cuối kỳ hiện tại); dòng rơi vào khe giữa hai kỳ bị bỏ qua
+        LocalDateTime scanStart = buckets.previousStart();
+        LocalDateTime scanEnd = buckets.end();
+        if (granularity != Granularity.HOUR && isDatabaseDayAligned(zone, scanStart, scanEnd)) {
+            for (Object[] row : dailySalesStatRepository.findDailyTotals(scanStart.toLocalDate(), to)) {
+                LocalDate day = row[0] instanceof LocalDate date ? date : ((java.sql.Date) row[0]).toLocalDate();
+                long count = row[1] != null ? ((Number) row[1]).longValue() : 0;
+                BigDecimal amount = row[2] != null ? new BigDecimal(row[2].toString()) : null;
+                addToBucket(buckets, counts, revenues, day.atStartOfDay(), count, amount);
+            }
+        } else {
+            Timestamp fromTs = Timestamp.from(scanStart.atZone(zone).toInstant());
+            Timestamp toTs = Timestamp.from(scanEnd.atZone(zone).toInstant());
+            RowCallbackHandler handler = rs -> {
+                LocalDateTime local = LocalDateTime.ofInstant(rs.getTimestamp(1).toInstant(), zone);
+                addToBucket(buckets, counts, revenues, local, 1, rs.getBigDecimal(2));
+            };
+            streamOrderRows("orders", fromTs, toTs, handler);
+            streamOrderRows("orders_archive", fromTs, toTs, handler);
+        }
+
+        LocalDateTime[] starts = buckets.starts();
+        List<TimeSeriesPointDTO> points = new ArrayList<>(n);
+        long totalOrders = 0;
+        long previousTotalOrders = 0;
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        BigDecimal previousTotalRevenue = BigDecimal.ZERO;
+        for (int i = 0; i < n; i++) {
+            points.add(new TimeSeriesPointDTO(
+                    starts[n + i].atZone(zone).toOffsetDateTime(), counts[n + i], revenues[n + i],
+                    starts[i].atZone(zone).toOffsetDateTime(), counts[i], revenues[i]));
+            totalOrders += counts[n + i];
+            totalRevenue = totalRevenue.add(revenues[n + i]);
+            previousTotalOrders += counts[i];
+            previousTotalRevenue = previousTotalRevenue.add(revenues[i]);
+        }
+        return new TimeSeriesDTO(granularity, zone.getId(),
+                buckets.currentStart().atZone(zone).toOffsetDateTime(), scanEnd.atZone(zone).toOffsetDateTime(), points,
+                totalOrders, totalRevenue, previousTotalOrders, previousTotalRevenue,
+                changePercent(BigDecimal.valueOf(totalOrders), BigDecimal.valueOf(previousTotalOrders)),
+                changePercent(totalRevenue, previousTotalRevenue));
+    }
+
+    // Khoảng căn theo lịch (đầu giờ/ngày/thứ Hai/đầu tháng/đầu quý) rồi cắt khoảng đầu và cuối theo [from, to]
+    static Buckets buildBuckets(Granularity granularity, LocalDate from, LocalDate to) {
+        LocalDateTime rangeStart = from.atStartOfDay();
+        LocalDateTime rangeEnd = to.plusDays(1).atStartOfDay();
+        LocalDateTime alignedStart = alignToBucket(rangeStart, granularity);
+        List<LocalDateTime> aligned = new ArrayList<>();
+        for (LocalDateTime t = alignedStart; t.isBefore(rangeEnd); t = step(t, granularity, 1)) {
+            aligned.add(t);
+            if (aligned.size() > MAX_POINTS) {
+                throw new BadRequestException("Too many points in one series (max " + MAX_POINTS + "), use a coarser granularity.");
+            }
+        }
+        int n = aligned.size();
+        LocalDateTime[] starts = new LocalDateTime[2 * n];
+        LocalDateTime[] ends = new LocalDateTime[2 * n];
+        for (int i = 0; i < n; i++) {
+            LocalDateTime start = i == 0 ? rangeStart : aligned.get(i);
+            LocalDateTime end = i == n - 1 ? rangeEnd : aligned.get(i + 1);
+            starts[n + i] = start;
+            ends[n + i] = end;
+            // Kỳ trước: cùng khoảng lùi n bước, nên phần bị cắt ở kỳ hiện tại cũng bị cắt ở kỳ trước
+            starts[i] = step(start, granularity, -n);
+            ends[i] = step(end, granularity, -n);
+        }
+        return new Buckets(n, starts, ends);
+    }
+
+    // Cộng một dòng vào khoảng chứa t (chỉ số < n: kỳ trước, >= n: kỳ hiện tại); bỏ qua nếu t không thuộc khoảng nào
+    private static void addToBucket(Buckets buckets, long[] counts, BigDecimal[] revenues,
+                                    LocalDateTime t, long count, BigDecimal amount) {
+        int index = findBucket(buckets, t);
+        if (index < 0) return;
+        counts[index] += count;
+        if (amount != null) revenues[index] = revenues[index].add(amount);
+    }
+
+    // Tìm nhị phân khoảng có điểm bắt đầu lớn nhất <= t, rồi kiểm tra t còn trước điểm kết thúc của khoảng đó
+    static int findBucket(Buckets buckets, LocalDateTime t) {
+        int index = Arrays.binarySearch(buckets.starts(), t);
+        if (index < 0) index = -index - 2;
+        if (index < 0 || !t.isBefore(buckets.ends()[index])) return -1;
+        return index;
+    }
+
+    static LocalDateTime alignToBucket(LocalDateTime t, Granularity granularity) {
+        return switch (granularity) {
+            case HOUR -> t.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> t.toLocalDate().atStartOfDay();
+            case WEEK -> t.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case MONTH -> t.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            case QUARTER -> t.toLocalDate().withDayOfMonth(1)
+                    .withMonth(((t.getMonthValue() - 1) / 3) * 3 + 1).atStartOfDay();
+        };
+    }
+
+    private static LocalDateTime step(LocalDateTime t, Granularity granularity, long amount) {
+        return switch (granularity) {
+            case HOUR -> t.plusHours(amount);
+            case DAY -> t.plusDays(amount);
+            case WEEK -> t.plusWeeks(amount);
+            case MONTH -> t.plusMonths(amount);
+            case QUARTER -> t.plusMonths(3 * amount);
+        };
+    }
+
+    // Ngày trong bảng tổng hợp là DATE(created_at) theo múi giờ của server; chỉ dùng được khi trùng độ lệch với múi giờ thống kê
+    private static boolean isDatabaseDayAligned(ZoneId zone, LocalDateTime from, LocalDateTime to) {
+        ZoneId serverZone = ZoneId.systemDefault();
+        for (LocalDateTime t : new LocalDateTime[]{from, to}) {
+            Instant instant = t.atZone(zone).toInstant();
+            if (!serverZone.getRules().getOffset(instant).equals(zone.getRules().getOffset(instant))) return false;
+        }
+        return true;
+    }
+
+    private void streamOrderRows(String table, Timestamp from, Timestamp to, RowCallbackHandler handler) {
+        String sql = String.format(ORDER_ROWS_SQL_TEMPLATE, table);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            String url = connection.getMetaData().getURL();
+            boolean cursorFetch = url != null && url.contains("useCursorFetch=true");
+            ps.setFetchSize(cursorFetch ? fetchSize : Integer.MIN_VALUE);
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            return ps;
+        }, handler);
+    }
+
+    private static BigDecimal changePercent(BigDecimal current, BigDecimal previous) {
+        if (previous.signum() == 0) return null;
+        return current.subtract(previous).multiply(BigDecimal.valueOf(100)).divide(previous.abs(), 2, RoundingMode.HALF_UP);
+    }
+}
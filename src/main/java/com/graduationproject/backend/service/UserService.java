@@ -40,6 +40,9 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private DashboardCounterService dashboardCounterService;
+
     // Hàm helper để map User Entity sang UserDTO
     public UserDTO mapToDTO(User user) {
         if (user == null) return null;
@@ -84,7 +87,9 @@ public class UserService {
         newUser.setRole(Role.BUYER);
         newUser.setProvider(AuthProvider.LOCAL);
 
-        return userRepository.save(newUser);
+        User savedUser = userRepository.save(newUser);
+        dashboardCounterService.onUserRoleChanged(null, savedUser.getRole());
+        return savedUser;
     }
 
     // Giữ nguyên phương thức này để CustomUserDetailsService sử dụng
@@ -262,6 +267,7 @@ public class UserService {
             logger.info("Final User object before save: {}", user.toString()); // Log toàn bộ user object
             try {
                 user = userRepository.save(user);
+                dashboardCounterService.onUserRoleChanged(null, user.getRole());
                 logger.info("Successfully SAVED NEW OAuth2 user! ID: {}, Username: {}", user.getUserId(), user.getUsername());
             } catch (DataIntegrityViolationException e) {
                 logger.error("DataIntegrityViolationException while saving new user for email {}. Username attempted: {}. Message: {}. Root cause: {}",
@@ -321,6 +327,7 @@ public class UserService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "userId", userId));
         userRepository.delete(user);
+        dashboardCounterService.onUserRoleChanged(user.getRole(), null);
     }
 
     @Transactional
@@ -361,6 +368,7 @@ public class UserService {
 
         // Lưu người dùng vào database
         User savedUser = userRepository.save(user);
+        dashboardCounterService.onUserRoleChanged(null, savedUser.getRole());
 
         // Trả về thông tin người dùng đã được tạo
         return mapToDTO(savedUser); // Hoặc modelMapper.map(savedUser, UserDTO.class)
@@ -432,7 +440,9 @@ public Page<UserDTO> getUsersByRoleAndSearch(String role, String search, int pag
     public UserDTO updateUserRole(Long userId, String newRole) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "userId", userId));
+        Role oldRole = user.getRole();
         user.setRole(Role.valueOf(newRole.toUpperCase()));
+        dashboardCounterService.onUserRoleChanged(oldRole, user.getRole());
         return mapToDTO(userRepository.save(user));
     }
 }
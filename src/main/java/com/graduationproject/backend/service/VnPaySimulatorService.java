@@ -0,0 +1,284 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.entity.Order;
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.repository.OrderRepository;
+import com.graduationproject.backend.util.VnPaySigner;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulator cổng VNPay chạy trong cùng ứng dụng (chỉ bật với profile "vnpay-sim").
+ * Nhận URL thanh toán do {@link VnPayService#createPaymentUrl} tạo, kiểm tra chữ ký HMAC-SHA512,
+ * chọn mã kết quả theo phân bố cấu hình rồi gọi lại return URL và IPN với độ trễ ngẫu nhiên,
+ * giới hạn số callback đồng thời bằng pool cố định.
+ */
+@Service
+@Profile("vnpay-sim")
+public class VnPaySimulatorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VnPaySimulatorService.class);
+
+    private static final DateTimeFormatter VNPAY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final ZoneId VNPAY_ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private VnPayService vnPayService;
+
+    @Value("${app.vnpay.hashSecret}")
+    private String hashSecret;
+
+    @Value("${app.vnpay.sim.ipn-url:http://localhost:8080/api/vnpay/ipn}")
+    private String ipnUrl;
+
+    @Value("${app.vnpay.sim.send-ipn:true}")
+    private boolean sendIpn;
+
+    @Value("${app.vnpay.sim.latency-min-ms:50}")
+    private long latencyMinMs;
+
+    @Value("${app.vnpay.sim.latency-max-ms:300}")
+    private long latencyMaxMs;
+
+    @Value("${app.vnpay.sim.failure-codes:24:0.05,51:0.02}")
+    private String failureCodes;
+
+    @Value("${app.vnpay.sim.concurrency:32}")
+    private int concurrency;
+
+    private VnPaySigner signer;
+    private ExecutorService callbackExecutor;
+    private RestClient restClient;
+    private String[] failureCodeTable;
+    private double[] failureCumulative;
+
+    private final AtomicLong transactionSequence = new AtomicLong(System.currentTimeMillis() % 100_000_000L);
+
+    // Số liệu đo
+    private final LongAdder paymentsAccepted = new LongAdder();
+    private final LongAdder paymentsRejected = new LongAdder();
+    private final LongAdder returnCallbacksOk = new LongAdder();
+    private final LongAdder returnCallbacksFailed = new LongAdder();
+    private final LongAdder ipnCallbacksOk = new LongAdder();
+    private final LongAdder ipnCallbacksFailed = new LongAdder();
+    private final LongAdder callbackNanos = new LongAdder();
+    private volatile long runStartedAtNanos = System.nanoTime();
+
+    @PostConstruct
+    void init() {
+        signer = new VnPaySigner(hashSecret);
+        callbackExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "vnpay-sim-" + UUID.randomUUID().toString().substring(0, 6));
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Không tự theo redirect: return URL redirect về frontend, chỉ cần đo phản hồi của backend
+        HttpClient httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        restClient = RestClient.builder().requestFactory(new JdkClientHttpRequestFactory(httpClient)).build();
+        parseFailureCodes();
+        logger.warn("VNPay simulator is ACTIVE: payments are NOT sent to the real gateway");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        callbackExecutor.shutdownNow();
+    }
+
+    // "24:0.05,51:0.02" -> bảng tra tích lũy, phần còn lại là "00"
+    private void parseFailureCodes() {
+        List<String> codes = new ArrayList<>();
+        List<Double> cumulative = new ArrayList<>();
+        double total = 0;
+        if (failureCodes != null && !failureCodes.isBlank()) {
+            for (String entry : failureCodes.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) continue;
+                total += Double.parseDouble(parts[1].trim());
+                codes.add(parts[0].trim());
+                cumulative.add(total);
+            }
+        }
+        if (total > 1.0) {
+            throw new IllegalStateException("app.vnpay.sim.failure-codes probabilities exceed 1.0: " + failureCodes);
+        }
+        failureCodeTable = codes.toArray(new String[0]);
+        failureCumulative = cumulative.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * Xử lý một yêu cầu thanh toán như trang vpcpay.html của VNPay.
+     * @param scheduleReturn true nếu simulator tự gọi return URL (chế độ test tải);
+     *                       false khi trình duyệt sẽ được redirect tới URL trả về
+     * @return URL trả về đã ký (returnUrl + tham số kết quả)
+     */
+    public String processPayment(Map<String, String> paymentParams, boolean scheduleReturn) {
+        Map<String, String> params = new HashMap<>(paymentParams);
+        String secureHash = params.remove("vnp_SecureHash");
+        params.remove("vnp_SecureHashType");
+        if (!signer.verify(params, secureHash)) {
+            paymentsRejected.increment();
+            throw new BadRequestException("Chữ ký yêu cầu thanh toán không hợp lệ.");
+        }
+        String returnUrl = params.get("vnp_ReturnUrl");
+        if (returnUrl == null || returnUrl.isBlank()) {
+            paymentsRejected.increment();
+            throw new BadRequestException("Thiếu vnp_ReturnUrl.");
+        }
+        paymentsAccepted.increment();
+
+        String query = buildSignedResult(params);
+        String signedReturnUrl = returnUrl + (returnUrl.contains("?") ? "&" : "?") + query;
+        if (scheduleReturn) {
+            submitCallback(signedReturnUrl, returnCallbacksOk, returnCallbacksFailed);
+        }
+        if (sendIpn) {
+            submitCallback(ipnUrl + (ipnUrl.contains("?") ? "&" : "?") + query, ipnCallbacksOk, ipnCallbacksFailed);
+        }
+        return signedReturnUrl;
+    }
+
+    // Tham số kết quả giống VNPay trả về, đã ký bằng hash secret của merchant
+    private String buildSignedResult(Map<String, String> request) {
+        String responseCode = pickResponseCode();
+        Map<String, String> result = new TreeMap<>();
+        result.put("vnp_Amount", request.get("vnp_Amount"));
+        result.put("vnp_BankCode", "NCB");
+        result.put("vnp_CardType", "ATM");
+        result.put("vnp_OrderInfo", request.get("vnp_OrderInfo"));
+        result.put("vnp_PayDate", VNPAY_DATE_FORMAT.format(ZonedDateTime.now(VNPAY_ZONE)));
+        result.put("vnp_ResponseCode", responseCode);
+        result.put("vnp_TmnCode", request.get("vnp_TmnCode"));
+        result.put("vnp_TransactionNo", String.valueOf(transactionSequence.incrementAndGet()));
+        result.put("vnp_TransactionStatus", "00".equals(responseCode) ? "00" : "02");
+        result.put("vnp_TxnRef", request.get("vnp_TxnRef"));
+        if ("00".equals(responseCode)) {
+            result.put("vnp_BankTranNo", "VNPSIM" + result.get("vnp_TransactionNo"));
+        }
+
+        String[] names = result.keySet().toArray(new String[0]);
+        String[] values = result.values().toArray(new String[0]);
+        StringBuilder query = signer.buildHashData(names, values, new StringBuilder(512));
+        String secureHash = signer.sign(query);
+        return query.append("&vnp_SecureHash=").append(secureHash).toString();
+    }
+
+    private String pickResponseCode() {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        for (int i = 0; i < failureCumulative.length; i++) {
+            if (roll < failureCumulative[i]) return failureCodeTable[i];
+        }
+        return "00";
+    }
+
+    private void submitCallback(String url, LongAdder ok, LongAdder failed) {
+        callbackExecutor.execute(() -> {
+            try {
+                long latency = latencyMaxMs > latencyMinMs
+                        ? ThreadLocalRandom.current().nextLong(latencyMinMs, latencyMaxMs + 1)
+                        : latencyMinMs;
+                if (latency > 0) Thread.sleep(latency);
+                long start = System.nanoTime();
+                int status = restClient.get().uri(URI.create(url)).retrieve()
+                        .onStatus(code -> true, (request, response) -> { })
+                        .toBodilessEntity().getStatusCode().value();
+                callbackNanos.add(System.nanoTime() - start);
+                if (status < 400) ok.increment(); else failed.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failed.increment();
+                logger.debug("VNPay simulator callback failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Test tải: tạo URL thanh toán cho tối đa {@code limit} đơn VNPay PENDING hiện có và đưa qua simulator.
+     * Kết quả theo dõi bằng {@link #getStats()}.
+     */
+    public int drivePendingOrders(int limit) {
+        resetStats();
+        Timestamp until = Timestamp.from(Instant.now().plus(Duration.ofDays(1)));
+        List<Integer> orderIds = orderRepository.findIdsByStatusAndPaymentMethodCreatedBefore(
+                OrderStatus.PENDING, PaymentMethod.VN_PAY, until, PageRequest.of(0, limit));
+        int submitted = 0;
+        for (Order order : orderRepository.findAllById(orderIds)) {
+            String paymentUrl = vnPayService.createPaymentUrl(order, "127.0.0.1");
+            Map<String, String> params = UriComponentsBuilder.fromUriString(paymentUrl).build(true)
+                    .getQueryParams().toSingleValueMap();
+            processPayment(decodeAll(params), true);
+            submitted++;
+        }
+        logger.info("VNPay simulator driving {} pending orders", submitted);
+        return submitted;
+    }
+
+    private static Map<String, String> decodeAll(Map<String, String> encoded) {
+        Map<String, String> decoded = new HashMap<>();
+        encoded.forEach((key, value) -> decoded.put(key,
+                URLDecoder.decode(value, StandardCharsets.US_ASCII)));
+        return decoded;
+    }
+
+    public void resetStats() {
+        paymentsAccepted.reset();
+        paymentsRejected.reset();
+        returnCallbacksOk.reset();
+        returnCallbacksFailed.reset();
+        ipnCallbacksOk.reset();
+        ipnCallbacksFailed.reset();
+        callbackNanos.reset();
+        runStartedAtNanos = System.nanoTime();
+    }
+
+    public Map<String, Object> getStats() {
+        long completed = returnCallbacksOk.sum() + returnCallbacksFailed.sum() + ipnCallbacksOk.sum() + ipnCallbacksFailed.sum();
+        double elapsedSeconds = (System.nanoTime() - runStartedAtNanos) / 1_000_000_000.0;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("paymentsAccepted", paymentsAccepted.sum());
+        stats.put("paymentsRejected", paymentsRejected.sum());
+        stats.put("returnCallbacksOk", returnCallbacksOk.sum());
+        stats.put("returnCallbacksFailed", returnCallbacksFailed.sum());
+        stats.put("ipnCallbacksOk", ipnCallbacksOk.sum());
+        stats.put("ipnCallbacksFailed", ipnCallbacksFailed.sum());
+        stats.put("avgCallbackMillis", completed > 0 ? callbackNanos.sum() / 1_000_000.0 / completed : 0);
+        stats.put("elapsedSeconds", elapsedSeconds);
+        stats.put("callbacksPerSecond", elapsedSeconds > 0 ? completed / elapsedSeconds : 0);
+        return stats;
+    }
+}
@@ -0,0 +1,303 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.ReconciliationIssueDTO;
+import com.graduationproject.backend.dto.ReconciliationIssueDTO.IssueType;
+import com.graduationproject.backend.dto.ReconciliationReportDTO;
+import com.graduationproject.backend.entity.enums.OrderStatus;
+import com.graduationproject.backend.entity.enums.PaymentMethod;
+import com.graduationproject.backend.exception.BadRequestException;
+import com.graduationproject.backend.repository.ArchivedOrderRepository;
+import com.graduationproject.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Đối soát file quyết toán VNPay (CSV) với đơn hàng thanh toán VNPay.
+ * - Pha 1: đọc file theo luồng, gom từng khối giao dịch vào bảng băm theo orderId (vnp_TxnRef)
+ *   rồi nạp snapshot các đơn tương ứng bằng một truy vấn IN và so khớp (hash join).
+ * - Pha 2: duyệt các đơn đã thanh toán trong khoảng thời gian theo khối orderId tăng dần (keyset)
+ *   để tìm đơn không có trong file.
+ * Bộ nhớ chỉ gồm một khối giao dịch, một BitSet các orderId đã gặp và danh sách sai lệch có giới hạn.
+ */
+@Service
+public class VnpayReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VnpayReconciliationService.class);
+
+    // Các trạng thái mà VNPay đã phải quyết toán tiền cho đơn
+    private static final EnumSet<OrderStatus> PAID_STATUSES =
+            EnumSet.of(OrderStatus.PAID, OrderStatus.PROCESSING, OrderStatus.SHIPPED, OrderStatus.COMPLETED);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ArchivedOrderRepository archivedOrderRepository;
+
+    @Value("${app.vnpay.reconciliation.chunk-size:2000}")
+    private int chunkSize;
+
+    @Value("${app.vnpay.reconciliation.max-issues:1000}")
+    private int maxIssues;
+
+    private record SettlementRow(int orderId, String transactionNo, BigDecimal amount) {}
+
+    // Cột file quyết toán: chấp nhận tên cột thường hoặc tên tham số VNPay
+    private static final class Columns {
+        int txnRef = -1;
+        int transactionNo = -1;
+        int amount = -1;
+        int responseCode = -1;
+        boolean amountTimes100; // Cột vnp_amount tính theo đơn vị x100 như tham số VNPay
+    }
+
+    /**
+     * Đối soát file quyết toán với các đơn VNPay tạo trong [from, to).
+     * File cần có header với các cột txn_ref, transaction_no, amount và tùy chọn response_code.
+     */
+    @Transactional(readOnly = true)
+    public ReconciliationReportDTO reconcile(InputStream settlementCsv, Timestamp from, Timestamp to) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        ReconciliationReportDTO report = new ReconciliationReportDTO();
+        BitSet seenOrderIds = new BitSet();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(settlementCsv, StandardCharsets.UTF_8), 64 * 1024);
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            throw new BadRequestException("File quyết toán rỗng.");
+        }
+        Columns columns = parseHeader(headerLine);
+
+        // --- Pha 1: stream file, hash join theo khối ---
+        Map<Integer, SettlementRow> chunk = new HashMap<>(chunkSize * 2);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            report.setSettlementRows(report.getSettlementRows() + 1);
+            List<String> fields = parseCsvLine(line);
+
+            String responseCode = field(fields, columns.responseCode);
+            if (responseCode != null && !responseCode.isEmpty() && !"00".equals(responseCode)) {
+                report.setSkippedRows(report.getSkippedRows() + 1);
+                continue;
+            }
+            String txnRef = field(fields, columns.txnRef);
+            String transactionNo = field(fields, columns.transactionNo);
+            BigDecimal amount;
+            try {
+                amount = new BigDecimal(field(fields, columns.amount));
+                if (columns.amountTimes100) amount = amount.movePointLeft(2);
+            } catch (NumberFormatException | NullPointerException e) {
+                report.setSkippedRows(report.getSkippedRows() + 1);
+                continue;
+            }
+            report.setSettledTransactions(report.getSettledTransactions() + 1);
+
+            int orderId;
+            try {
+                orderId = Integer.parseInt(txnRef);
+                if (orderId <= 0) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                addIssue(report, new ReconciliationIssueDTO(IssueType.ORPHAN_TRANSACTION, null, transactionNo, amount,
+                        null, null, "vnp_TxnRef không phải mã đơn hàng: " + txnRef));
+                continue;
+            }
+            if (seenOrderIds.get(orderId)) {
+                addIssue(report, new ReconciliationIssueDTO(IssueType.DUPLICATE_SETTLEMENT, orderId, transactionNo, amount,
+                        null, null, "Đơn hàng xuất hiện nhiều lần trong file quyết toán"));
+                continue;
+            }
+            seenOrderIds.set(orderId);
+            chunk.put(orderId, new SettlementRow(orderId, transactionNo, amount));
+            if (chunk.size() >= chunkSize) {
+                matchChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            matchChunk(chunk, report);
+        }
+
+        // --- Pha 2: đơn đã thanh toán nhưng không có trong file ---
+        findUnsettledOrders(seenOrderIds, from, to, report);
+
+        report.setElapsedMillis(System.currentTimeMillis() - startedAt);
+        logger.info("VNPay reconciliation [{}, {}): {} rows, {} matched, issues {} in {} ms",
+                from, to, report.getSettlementRows(), report.getMatched(), report.getIssueCounts(), report.getElapsedMillis());
+        return report;
+    }
+
+    private void matchChunk(Map<Integer, SettlementRow> chunk, ReconciliationReportDTO report) {
+        Map<Integer, Object[]> snapshots = new HashMap<>(chunk.size() * 2);
+        for (Object[] row : orderRepository.findPaymentSnapshotsByIdIn(chunk.keySet())) {
+            snapshots.put((Integer) row[0], row);
+        }
+        if (snapshots.size() < chunk.size()) {
+            List<Integer> missingIds = new ArrayList<>();
+            for (Integer orderId : chunk.keySet()) {
+                if (!snapshots.containsKey(orderId)) missingIds.add(orderId);
+            }
+            for (Object[] row : archivedOrderRepository.findPaymentSnapshotsByIdIn(missingIds)) {
+                snapshots.put((Integer) row[0], row);
+            }
+        }
+
+        for (SettlementRow settlement : chunk.values()) {
+            Object[] snapshot = snapshots.get(settlement.orderId());
+            if (snapshot == null) {
+                addIssue(report, new ReconciliationIssueDTO(IssueType.ORPHAN_TRANSACTION, settlement.orderId(),
+                        settlement.transactionNo(), settlement.amount(), null, null, "Không tìm thấy đơn hàng"));
+                continue;
+            }
+            compare(settlement, snapshot, report);
+        }
+    }
+
+    private void compare(SettlementRow settlement, Object[] snapshot, ReconciliationReportDTO report) {
+        OrderStatus status = (OrderStatus) snapshot[1];
+        BigDecimal orderAmount = (BigDecimal) snapshot[2];
+        String storedTransactionNo = (String) snapshot[3];
+        PaymentMethod paymentMethod = (PaymentMethod) snapshot[4];
+        String statusName = status != null ? status.name() : null;
+
+        if (paymentMethod != PaymentMethod.VN_PAY) {
+            addIssue(report, new ReconciliationIssueDTO(IssueType.ORPHAN_TRANSACTION, settlement.orderId(),
+                    settlement.transactionNo(), settlement.amount(), orderAmount, statusName,
+                    "Đơn hàng không thanh toán qua VNPay (" + paymentMethod + ")"));
+            return;
+        }
+
+        boolean hasIssue = false;
+        if (status == OrderStatus.PENDING || status == OrderStatus.CANCELED) {
+            addIssue(report, new ReconciliationIssueDTO(IssueType.MISSING_CALLBACK, settlement.orderId(),
+                    settlement.transactionNo(), settlement.amount(), orderAmount, statusName,
+                    "VNPay đã quyết toán nhưng đơn chưa được xác nhận thanh toán"));
+            hasIssue = true;
+        }
+        if (orderAmount == null || orderAmount.compareTo(settlement.amount()) != 0) {
+            addIssue(report, new ReconciliationIssueDTO(IssueType.AMOUNT_MISMATCH, settlement.orderId(),
+                    settlement.transactionNo(), settlement.amount(), orderAmount, statusName, null));
+            hasIssue = true;
+        }
+        if (PAID_STATUSES.contains(status) && !Objects.equals(storedTransactionNo, settlement.transactionNo())) {
+            addIssue(report, new ReconciliationIssueDTO(IssueType.TRANSACTION_ID_MISMATCH, settlement.orderId(),
+                    settlement.transactionNo(), settlement.amount(), orderAmount, statusName,
+                    "Mã giao dịch trên đơn: " + storedTransactionNo));
+            hasIssue = true;
+        }
+        if (!hasIssue) {
+            report.setMatched(report.getMatched() + 1);
+        }
+    }
+
+    // Lượt 2: đơn đã thanh toán VNPay trong kỳ mà file quyết toán không có, ở cả bảng nóng và bảng lưu trữ
+    private void findUnsettledOrders(BitSet seenOrderIds, Timestamp from, Timestamp to, ReconciliationReportDTO report) {
+        scanUnsettled(seenOrderIds, report, afterId -> orderRepository.findPaymentSnapshotsAfterId(
+                PaymentMethod.VN_PAY, PAID_STATUSES, from, to, afterId, PageRequest.of(0, chunkSize)));
+        scanUnsettled(seenOrderIds, report, afterId -> archivedOrderRepository.findPaymentSnapshotsAfterId(
+                PaymentMethod.VN_PAY, PAID_STATUSES, from, to, afterId, PageRequest.of(0, chunkSize)));
+    }
+
+    private void scanUnsettled(BitSet seenOrderIds, ReconciliationReportDTO report, IntFunction<List<Object[]>> pageAfter) {
+        int afterId = 0;
+        while (true) {
+            List<Object[]> page = pageAfter.apply(afterId);
+            for (Object[] row : page) {
+                int orderId = (Integer) row[0];
+                if (!seenOrderIds.get(orderId)) {
+                    addIssue(report, new ReconciliationIssueDTO(IssueType.NOT_SETTLED, orderId, (String) row[3],
+                            null, (BigDecimal) row[2], ((OrderStatus) row[1]).name(), "Không có giao dịch trong file quyết toán"));
+                    // Đơn đang được chuyển sang bảng lưu trữ có thể xuất hiện ở cả hai bảng: chỉ báo một lần
+                    seenOrderIds.set(orderId);
+                }
+                afterId = orderId;
+            }
+            if (page.size() < chunkSize) break;
+        }
+    }
+
+    private void addIssue(ReconciliationReportDTO report, ReconciliationIssueDTO issue) {
+        report.getIssueCounts().merge(issue.getType(), 1L, Long::sum);
+        if (report.getIssues().size() < maxIssues) {
+            report.getIssues().add(issue);
+        } else {
+            report.setIssuesTruncated(true);
+        }
+    }
+
+    private static Columns parseHeader(String headerLine) {
+        if (!headerLine.isEmpty() && headerLine.charAt(0) == '\uFEFF') {
+            headerLine = headerLine.substring(1);
+        }
+        Columns columns = new Columns();
+        List<String> names = parseCsvLine(headerLine);
+        for (int i = 0; i < names.size(); i++) {
+            switch (names.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "txn_ref", "vnp_txnref", "order_id" -> columns.txnRef = i;
+                case "transaction_no", "vnp_transactionno" -> columns.transactionNo = i;
+                case "amount" -> columns.amount = i;
+                case "vnp_amount" -> {
+                    columns.amount = i;
+                    columns.amountTimes100 = true;
+                }
+                case "response_code", "vnp_responsecode" -> columns.responseCode = i;
+                default -> { }
+            }
+        }
+        if (columns.txnRef < 0 || columns.transactionNo < 0 || columns.amount < 0) {
+            throw new BadRequestException("File quyết toán cần có các cột txn_ref, transaction_no và amount.");
+        }
+        return columns;
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size()) return null;
+        return fields.get(index).trim();
+    }
+
+    // Tách một dòng CSV theo RFC 4180 (hỗ trợ trường bọc dấu " và "" bên trong)
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,44 @@
+package com.graduationproject.backend.util;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa văn bản tiếng Việt cho tìm kiếm: chữ thường, bỏ dấu (kể cả đ -> d), tách từ theo ký tự
+ * không phải chữ/số. Nhờ đó "Đẹp", "dep" và "ĐẸP" cho cùng một từ khóa "dep".
+ */
+public final class VietnameseTextFolder {
+
+    public static final int MIN_TERM_LENGTH = 2;
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private VietnameseTextFolder() {
+    }
+
+    // "Đồng hồ rất ĐẸP!" -> "dong ho rat dep!"
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String lower = text.toLowerCase().replace('đ', 'd');
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    /**
+     * Tách từ đã chuẩn hóa kèm số lần xuất hiện, giữ thứ tự xuất hiện đầu tiên.
+     * Bỏ từ ngắn hơn {@link #MIN_TERM_LENGTH}, cắt từ dài hơn {@link #MAX_TERM_LENGTH}.
+     */
+    public static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String token : NON_WORD.split(fold(text))) {
+            if (token.length() < MIN_TERM_LENGTH) continue;
+            String term = token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token;
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+}
@@ -0,0 +1,162 @@
+package com.graduationproject.backend.util;
+
+import com.graduationproject.backend.exception.OperationFailedException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Bộ ký/xác thực HMAC-SHA512 cho VNPay, tối ưu cấp phát bộ nhớ:
+ * - Mỗi thread giữ sẵn một {@link Mac} đã init khóa và một buffer byte dùng lại.
+ * - Mã hóa hex bằng bảng tra thay vì String.format.
+ * - URL-encode ký tự ASCII trực tiếp, cho kết quả giống hệt URLEncoder.encode(value, US_ASCII).
+ * - Chuỗi ký được dựng từ mảng tên tham số đã sắp xếp sẵn; với tham số VNPay (tên chỉ gồm ký tự an toàn)
+ *   chuỗi ký cũng chính là query string.
+ */
+public final class VnPaySigner {
+
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    // Ký tự URLEncoder giữ nguyên: a-z A-Z 0-9 . - * _
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) UNRESERVED[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) UNRESERVED[c] = true;
+        for (char c = '0'; c <= '9'; c++) UNRESERVED[c] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final SecretKeySpec secretKey;
+    private final ThreadLocal<ThreadState> threadState;
+
+    public VnPaySigner(String hashSecret) {
+        this.secretKey = new SecretKeySpec(hashSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.threadState = ThreadLocal.withInitial(this::newThreadState);
+    }
+
+    private ThreadState newThreadState() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return new ThreadState(mac);
+        } catch (GeneralSecurityException e) {
+            throw new OperationFailedException("Error initializing VNPay HMAC", e);
+        }
+    }
+
+    /**
+     * Dựng chuỗi "name=value&..." theo thứ tự {@code sortedNames}, bỏ qua giá trị rỗng.
+     * @param sortedNames tên tham số đã sắp xếp tăng dần (tên không được encode, giống cách ký cũ)
+     * @param values giá trị tương ứng theo cùng chỉ số
+     */
+    public StringBuilder buildHashData(String[] sortedNames, String[] values, StringBuilder out) {
+        boolean first = true;
+        for (int i = 0; i < sortedNames.length; i++) {
+            String value = values[i];
+            if (value == null || value.isEmpty()) continue;
+            if (!first) out.append('&');
+            out.append(sortedNames[i]).append('=');
+            appendUrlEncoded(out, value);
+            first = false;
+        }
+        return out;
+    }
+
+    // HMAC-SHA512 dạng hex chữ thường của nội dung ASCII trong builder
+    public String sign(CharSequence data) {
+        ThreadState state = threadState.get();
+        state.update(data);
+        byte[] digest = state.mac.doFinal();
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            int b = digest[i] & 0xFF;
+            hex[i * 2] = HEX[b >>> 4];
+            hex[i * 2 + 1] = HEX[b & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Xác thực chữ ký của bộ tham số trả về (không chứa vnp_SecureHash).
+     * So sánh không phân biệt hoa thường và không dừng sớm theo vị trí khác biệt.
+     */
+    public boolean verify(Map<String, String> params, String secureHash) {
+        if (secureHash == null || secureHash.isEmpty()) return false;
+        String[] names = params.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = params.get(names[i]);
+        }
+        String expected = sign(buildHashData(names, values, new StringBuilder(512)));
+        if (expected.length() != secureHash.length()) return false;
+        int diff = 0;
+        for (int i = 0; i < expected.length(); i++) {
+            diff |= expected.charAt(i) ^ Character.toLowerCase(secureHash.charAt(i));
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Tương đương URLEncoder.encode(value, US_ASCII). Ký tự ngoài ASCII (VNPay không dùng)
+     * được chuyển cho URLEncoder để giữ đúng hành vi thay thế '?'.
+     */
+    public static StringBuilder appendUrlEncoded(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 128) {
+                return out.append(URLEncoder.encode(value, StandardCharsets.US_ASCII));
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (UNRESERVED[c]) {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else {
+                out.append('%').append(HEX_UPPER[c >>> 4]).append(HEX_UPPER[c & 0x0F]);
+            }
+        }
+        return out;
+    }
+
+    private static final class ThreadState {
+        private final Mac mac;
+        private byte[] buffer = new byte[1024];
+
+        private ThreadState(Mac mac) {
+            this.mac = mac;
+        }
+
+        // Value đã URL-encode nên gần như luôn là ASCII: chuyển 1 char -> 1 byte.
+        // Tên tham số lạ (ngoài ASCII) từ request trả về thì quay lại mã hóa UTF-8 như cách cũ
+        private void update(CharSequence data) {
+            int length = data.length();
+            for (int i = 0; i < length; i++) {
+                if (data.charAt(i) >= 128) {
+                    mac.update(data.toString().getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[i] = (byte) data.charAt(i);
+            }
+            mac.update(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.SalesCubeResultDTO.Dimension;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SalesCubeServiceTest {
+
+    private static final int DIMENSIONS = Dimension.values().length;
+
+    // Giá trị theo thứ tự Dimension: CATEGORY, BRAND, PAYMENT_METHOD, STATUS, MONTH
+    private static SalesCubeService.Line line(int orderId, String category, String brand, String status,
+                                              String month, int quantity, long revenueCents) {
+        return new SalesCubeService.Line(orderId, new String[]{category, brand, "COD", status, month}, quantity, revenueCents);
+    }
+
+    private static SalesCubeService.Cube sampleCube() {
+        SalesCubeService.Cube cube = new SalesCubeService.Cube(2);
+        cube.append(line(1, "Phone", "Apple", "DELIVERED", "2026-09", 1, 2_000_000));
+        cube.append(line(1, "Case", "Apple", "DELIVERED", "2026-09", 2, 50_000));
+        cube.append(line(2, "Phone", "Samsung", "DELIVERED", "2026-10", 1, 1_500_000));
+        cube.append(line(3, "Phone", "Apple", "CANCELED", "2026-10", 3, 6_000_000));
+        return cube;
+    }
+
+    private static long[] radixFor(SalesCubeService.Cube cube, List<Dimension> dimensions) {
+        long[] radix = new long[dimensions.size()];
+        for (int g = 0; g < radix.length; g++) {
+            radix[g] = Math.max(1, cube.dictionary(dimensions.get(g)).size());
+        }
+        return radix;
+    }
+
+    private static Map<Map<String, String>, long[]> decoded(SalesCubeService.Cube cube, Map<Long, long[]> groups,
+                                                           List<Dimension> dimensions, long[] radix) {
+        Map<Map<String, String>, long[]> result = new HashMap<>();
+        groups.forEach((key, totals) -> result.put(SalesCubeService.decodeKey(cube, key, dimensions, radix), totals));
+        return result;
+    }
+
+    @Test
+    void dictionaryAssignsDenseCodesInFirstSeenOrder() {
+        SalesCubeService.Dictionary dictionary = new SalesCubeService.Dictionary();
+
+        assertEquals(0, dictionary.encode("Apple"));
+        assertEquals(1, dictionary.encode("Samsung"));
+        assertEquals(0, dictionary.encode("Apple"));
+        assertEquals(2, dictionary.size());
+        assertEquals(1, dictionary.find("Samsung"));
+        assertNull(dictionary.find("Xiaomi"));
+        assertEquals("Samsung", dictionary.decode(1));
+    }
+
+    @Test
+    void appendGrowsColumnsAndEncodesEachDimension() {
+        SalesCubeService.Cube cube = sampleCube();
+
+        assertEquals(4, cube.size());
+        assertEquals(2, cube.dictionary(Dimension.CATEGORY).size());
+        assertEquals(2, cube.dictionary(Dimension.BRAND).size());
+        assertEquals(1, cube.dictionary(Dimension.PAYMENT_METHOD).size());
+        assertEquals(2, cube.dictionary(Dimension.MONTH).size());
+    }
+
+    @Test
+    void scanWithoutGroupingTotalsAllRows() {
+        SalesCubeService.Cube cube = sampleCube();
+
+        Map<Long, long[]> groups = cube.scan(0, cube.size(), new boolean[DIMENSIONS][], new int[0], new long[0]);
+
+        assertEquals(1, groups.size());
+        assertArrayEquals(new long[]{7, 9_550_000, 4}, groups.get(0L));
+    }
+
+    @Test
+    void scanAppliesFiltersAndGroupsByDimensions() {
+        SalesCubeService.Cube cube = sampleCube();
+        boolean[][] allowed = new boolean[DIMENSIONS][];
+        boolean[] delivered = new boolean[cube.dictionary(Dimension.STATUS).size()];
+        delivered[cube.dictionary(Dimension.STATUS).find("DELIVERED")] = true;
+        allowed[Dimension.STATUS.ordinal()] = delivered;
+        List<Dimension> dimensions = List.of(Dimension.CATEGORY, Dimension.BRAND);
+        int[] groupDimensions = {Dimension.CATEGORY.ordinal(), Dimension.BRAND.ordinal()};
+        long[] radix = radixFor(cube, dimensions);
+
+        Map<Map<String, String>, long[]> groups = decoded(cube,
+                cube.scan(0, cube.size(), allowed, groupDimensions, radix), dimensions, radix);
+
+        assertEquals(3, groups.size());
+        assertArrayEquals(new long[]{1, 2_000_000, 1}, groups.get(Map.of("CATEGORY", "Phone", "BRAND", "Apple")));
+        assertArrayEquals(new long[]{2, 50_000, 1}, groups.get(Map.of("CATEGORY", "Case", "BRAND", "Apple")));
+        assertArrayEquals(new long[]{1, 1_500_000, 1}, groups.get(Map.of("CATEGORY", "Phone", "BRAND", "Samsung")));
+    }
+
+    @Test
+    void applyOrdersOverwritesInPlaceOrReplacesRows() {
+        SalesCubeService.Cube cube = sampleCube();
+
+        // Đơn 2: cùng số dòng -> ghi đè tại chỗ; đơn 1: thêm một dòng -> đánh dấu dòng cũ và thêm dòng mới
+        cube.applyOrders(Map.of(
+                2, List.of(line(2, "Phone", "Samsung", "CANCELED", "2026-10", 1, 1_500_000)),
+                1, List.of(line(1, "Phone", "Apple", "DELIVERED", "2026-09", 1, 2_000_000),
+                        line(1, "Case", "Apple", "DELIVERED", "2026-09", 2, 50_000),
+                        line(1, "Charger", "Apple", "DELIVERED", "2026-09", 1, 300_000))));
+
+        assertEquals(7, cube.size());
+        for (int row = 0; row < cube.size(); row++) {
+            assertEquals(row < 2, cube.isReplaced(row));
+        }
+
+        List<Dimension> dimensions = List.of(Dimension.STATUS);
+        int[] groupDimensions = {Dimension.STATUS.ordinal()};
+        long[] radix = radixFor(cube, dimensions);
+        Map<Map<String, String>, long[]> groups = decoded(cube,
+                cube.scan(0, cube.size(), new boolean[DIMENSIONS][], groupDimensions, radix), dimensions, radix);
+
+        assertArrayEquals(new long[]{4, 2_350_000, 3}, groups.get(Map.of("STATUS", "DELIVERED")));
+        assertArrayEquals(new long[]{4, 7_500_000, 2}, groups.get(Map.of("STATUS", "CANCELED")));
+    }
+
+    @Test
+    void chunkedScansMergeToFullScan() {
+        SalesCubeService.Cube cube = sampleCube();
+        List<Dimension> dimensions = List.of(Dimension.MONTH);
+        int[] groupDimensions = {Dimension.MONTH.ordinal()};
+        long[] radix = radixFor(cube, dimensions);
+        boolean[][] allowed = new boolean[DIMENSIONS][];
+
+        Map<Long, long[]> full = cube.scan(0, cube.size(), allowed, groupDimensions, radix);
+        Map<Long, long[]> left = cube.scan(0, 1, allowed, groupDimensions, radix);
+        Map<Long, long[]> right = cube.scan(1, cube.size(), allowed, groupDimensions, radix);
+        Map<Long, long[]> merged = SalesCubeService.merge(left, right);
+
+        // Gộp vào map lớn hơn
+        assertSame(right, merged);
+        assertEquals(full.keySet(), merged.keySet());
+        full.forEach((key, totals) -> assertArrayEquals(totals, merged.get(key)));
+    }
+}
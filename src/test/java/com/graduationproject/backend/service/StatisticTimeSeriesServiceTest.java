@@ -0,0 +1,102 @@
+package com.graduationproject.backend.service;
+
+import com.graduationproject.backend.dto.TimeSeriesDTO.Granularity;
+import com.graduationproject.backend.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StatisticTimeSeriesServiceTest {
+
+    private static LocalDateTime day(int year, int month, int dayOfMonth) {
+        return LocalDate.of(year, month, dayOfMonth).atStartOfDay();
+    }
+
+    @Test
+    void weekBucketsAreClampedToRangeAndMirroredInPreviousPeriod() {
+        // Thứ Tư 14/10 đến thứ Ba 27/10: ba tuần lịch, tuần đầu và tuần cuối bị cắt
+        StatisticTimeSeriesService.Buckets buckets = StatisticTimeSeriesService.buildBuckets(
+                Granularity.WEEK, LocalDate.of(2026, 10, 14), LocalDate.of(2026, 10, 27));
+
+        assertEquals(3, buckets.n());
+        assertArrayEquals(new LocalDateTime[]{
+                day(2026, 9, 23), day(2026, 9, 28), day(2026, 10, 5),
+                day(2026, 10, 14), day(2026, 10, 19), day(2026, 10, 26)}, buckets.starts());
+        assertArrayEquals(new LocalDateTime[]{
+                day(2026, 9, 28), day(2026, 10, 5), day(2026, 10, 7),
+                day(2026, 10, 19), day(2026, 10, 26), day(2026, 10, 28)}, buckets.ends());
+        assertEquals(day(2026, 9, 23), buckets.previousStart());
+        assertEquals(day(2026, 10, 14), buckets.currentStart());
+        assertEquals(day(2026, 10, 28), buckets.end());
+    }
+
+    @Test
+    void monthBucketsClampFirstAndLastMonth() {
+        StatisticTimeSeriesService.Buckets buckets = StatisticTimeSeriesService.buildBuckets(
+                Granularity.MONTH, LocalDate.of(2026, 1, 31), LocalDate.of(2026, 3, 15));
+
+        assertEquals(3, buckets.n());
+        assertArrayEquals(new LocalDateTime[]{
+                day(2025, 10, 31), day(2025, 11, 1), day(2025, 12, 1),
+                day(2026, 1, 31), day(2026, 2, 1), day(2026, 3, 1)}, buckets.starts());
+        assertArrayEquals(new LocalDateTime[]{
+                day(2025, 11, 1), day(2025, 12, 1), day(2025, 12, 16),
+                day(2026, 2, 1), day(2026, 3, 1), day(2026, 3, 16)}, buckets.ends());
+    }
+
+    @Test
+    void singleDayRangeHasOneBucketPerPeriod() {
+        StatisticTimeSeriesService.Buckets buckets = StatisticTimeSeriesService.buildBuckets(
+                Granularity.DAY, LocalDate.of(2026, 10, 19), LocalDate.of(2026, 10, 19));
+
+        assertEquals(1, buckets.n());
+        assertArrayEquals(new LocalDateTime[]{day(2026, 10, 18), day(2026, 10, 19)}, buckets.starts());
+        assertArrayEquals(new LocalDateTime[]{day(2026, 10, 19), day(2026, 10, 20)}, buckets.ends());
+    }
+
+    @Test
+    void findBucketLocatesTimestampsAndSkipsGapsAndOutOfRange() {
+        StatisticTimeSeriesService.Buckets buckets = StatisticTimeSeriesService.buildBuckets(
+                Granularity.WEEK, LocalDate.of(2026, 10, 14), LocalDate.of(2026, 10, 27));
+
+        assertEquals(0, StatisticTimeSeriesService.findBucket(buckets, day(2026, 9, 23)));
+        assertEquals(0, StatisticTimeSeriesService.findBucket(buckets, day(2026, 9, 27).withHour(23)));
+        assertEquals(2, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 6).withHour(12)));
+        assertEquals(3, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 14)));
+        assertEquals(4, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 19)));
+        assertEquals(5, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 27).withHour(23).withMinute(59)));
+
+        // Trước kỳ trước, khe giữa hai kỳ và sau ngày cuối
+        assertEquals(-1, StatisticTimeSeriesService.findBucket(buckets, day(2026, 9, 22).withHour(23)));
+        assertEquals(-1, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 7)));
+        assertEquals(-1, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 13).withHour(23)));
+        assertEquals(-1, StatisticTimeSeriesService.findBucket(buckets, day(2026, 10, 28)));
+    }
+
+    @Test
+    void alignToBucketUsesCalendarBoundaries() {
+        LocalDateTime t = LocalDateTime.of(2026, 8, 15, 10, 42, 7);
+
+        assertEquals(LocalDateTime.of(2026, 8, 15, 10, 0), StatisticTimeSeriesService.alignToBucket(t, Granularity.HOUR));
+        assertEquals(day(2026, 8, 15), StatisticTimeSeriesService.alignToBucket(t, Granularity.DAY));
+        assertEquals(day(2026, 8, 10), StatisticTimeSeriesService.alignToBucket(t, Granularity.WEEK));
+        assertEquals(day(2026, 8, 1), StatisticTimeSeriesService.alignToBucket(t, Granularity.MONTH));
+        assertEquals(day(2026, 7, 1), StatisticTimeSeriesService.alignToBucket(t, Granularity.QUARTER));
+
+        // Thứ Hai thuộc chính tuần đó; tháng đầu quý thuộc chính quý đó
+        assertEquals(day(2026, 10, 19), StatisticTimeSeriesService.alignToBucket(day(2026, 10, 19), Granularity.WEEK));
+        assertEquals(day(2026, 10, 1), StatisticTimeSeriesService.alignToBucket(day(2026, 12, 31), Granularity.QUARTER));
+        assertEquals(day(2026, 1, 1), StatisticTimeSeriesService.alignToBucket(day(2026, 3, 31), Granularity.QUARTER));
+    }
+
+    @Test
+    void tooManyPointsIsRejected() {
+        assertThrows(BadRequestException.class, () -> StatisticTimeSeriesService.buildBuckets(
+                Granularity.DAY, LocalDate.of(2000, 1, 1), LocalDate.of(2026, 1, 1)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.graduationproject.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VietnameseTextFolderTest {
+
+    @Test
+    void foldLowercasesAndStripsDiacritics() {
+        assertEquals("dong ho rat dep!", VietnameseTextFolder.fold("Đồng hồ rất ĐẸP!"));
+        assertEquals("dep", VietnameseTextFolder.fold("Đẹp"));
+        assertEquals("dep", VietnameseTextFolder.fold("ĐẸP"));
+        assertEquals("dep", VietnameseTextFolder.fold("dep"));
+        assertEquals("thuy tien uong nuoc", VietnameseTextFolder.fold("Thủy Tiên uống nước"));
+    }
+
+    @Test
+    void foldHandlesPrecomposedAndDecomposedInput() {
+        String precomposed = "Việt";
+        String decomposed = Normalizer.normalize(precomposed, Normalizer.Form.NFD);
+        assertEquals("viet", VietnameseTextFolder.fold(precomposed));
+        assertEquals("viet", VietnameseTextFolder.fold(decomposed));
+    }
+
+    @Test
+    void foldOfEmptyInputIsEmpty() {
+        assertEquals("", VietnameseTextFolder.fold(null));
+        assertEquals("", VietnameseTextFolder.fold(""));
+    }
+
+    @Test
+    void termFrequenciesCountsFoldedTermsInFirstSeenOrder() {
+        Map<String, Integer> terms = VietnameseTextFolder.termFrequencies("Áo đẹp, ÁO rẻ; áo-đẹp 100%!");
+        assertEquals(List.of("ao", "dep", "re", "100"), List.copyOf(terms.keySet()));
+        assertEquals(3, terms.get("ao"));
+        assertEquals(2, terms.get("dep"));
+        assertEquals(1, terms.get("re"));
+        assertEquals(1, terms.get("100"));
+    }
+
+    @Test
+    void termFrequenciesSkipsShortTermsAndTruncatesLongOnes() {
+        String longToken = "a".repeat(VietnameseTextFolder.MAX_TERM_LENGTH + 10);
+        Map<String, Integer> terms = VietnameseTextFolder.termFrequencies("a b Đ ok " + longToken);
+        assertEquals(2, terms.size());
+        assertEquals(1, terms.get("ok"));
+        assertEquals(1, terms.get("a".repeat(VietnameseTextFolder.MAX_TERM_LENGTH)));
+    }
+
+    @Test
+    void termFrequenciesOfBlankInputIsEmpty() {
+        assertTrue(VietnameseTextFolder.termFrequencies(null).isEmpty());
+        assertTrue(VietnameseTextFolder.termFrequencies("  ,.! ").isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package com.graduationproject.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// VnPaySigner phải cho đúng vnp_SecureHash như cách ký cũ trong VnPayService (trước khi tối ưu)
+class VnPaySignerTest {
+
+    private static final String SECRET = "SECRETKEY123";
+
+    // HMAC-SHA512 của chuỗi ký dựng từ PARAMS, tính độc lập ngoài Java
+    private static final String EXPECTED_HASH_DATA = "vnp_Amount=1806000&vnp_Command=pay&vnp_CreateDate=20261019183000"
+            + "&vnp_CurrCode=VND&vnp_ExpireDate=20261019184500&vnp_IpAddr=127.0.0.1&vnp_Locale=vn"
+            + "&vnp_OrderInfo=Thanh+toan+don+hang%3A12345&vnp_OrderType=other"
+            + "&vnp_ReturnUrl=http%3A%2F%2Flocalhost%3A8080%2Fapi%2Fvnpay%2Freturn"
+            + "&vnp_TmnCode=DEMOV210&vnp_TxnRef=12345&vnp_Version=2.1.0";
+    private static final String EXPECTED_SECURE_HASH = "0c529a3141314ecc63d0c3891be60825dc1da65b860db08966645dbefaca4925"
+            + "f98187c7de1238cf58b2eb4184e15ecbd91900a10faf113203a0b5faabe59ec9";
+
+    private static Map<String, String> params() {
+        Map<String, String> params = new HashMap<>();
+        params.put("vnp_Version", "2.1.0");
+        params.put("vnp_Command", "pay");
+        params.put("vnp_TmnCode", "DEMOV210");
+        params.put("vnp_Amount", "1806000");
+        params.put("vnp_CurrCode", "VND");
+        params.put("vnp_BankCode", ""); // Giá trị rỗng không được ký
+        params.put("vnp_TxnRef", "12345");
+        params.put("vnp_OrderInfo", "Thanh toan don hang:12345");
+        params.put("vnp_OrderType", "other");
+        params.put("vnp_Locale", "vn");
+        params.put("vnp_ReturnUrl", "http://localhost:8080/api/vnpay/return");
+        params.put("vnp_IpAddr", "127.0.0.1");
+        params.put("vnp_CreateDate", "20261019183000");
+        params.put("vnp_ExpireDate", "20261019184500");
+        return params;
+    }
+
+    @Test
+    void signMatchesLegacyImplementationAndKnownHash() {
+        Map<String, String> params = params();
+        String[] names = params.keySet().stream().sorted().toArray(String[]::new);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = params.get(names[i]);
+        }
+        VnPaySigner signer = new VnPaySigner(SECRET);
+        StringBuilder hashData = signer.buildHashData(names, values, new StringBuilder());
+
+        assertEquals(EXPECTED_HASH_DATA, hashData.toString());
+        assertEquals(EXPECTED_SECURE_HASH, signer.sign(hashData));
+        assertEquals(legacySecureHash(SECRET, params), signer.sign(hashData));
+        // Dùng lại Mac/buffer của thread không làm đổi kết quả
+        assertEquals(EXPECTED_SECURE_HASH, signer.sign(hashData));
+    }
+
+    @Test
+    void verifyAcceptsLegacyHashInAnyCaseAndRejectsTampering() {
+        VnPaySigner signer = new VnPaySigner(SECRET);
+        Map<String, String> params = params();
+        String legacyHash = legacySecureHash(SECRET, params);
+
+        assertTrue(signer.verify(params, legacyHash));
+        assertTrue(signer.verify(params, legacyHash.toUpperCase()));
+        params.put("vnp_Amount", "1806100");
+        assertFalse(signer.verify(params, legacyHash));
+        assertFalse(signer.verify(params(), null));
+    }
+
+    @Test
+    void urlEncodingMatchesUrlEncoder() {
+        String value = "a-z A_Z.0*9~!@#$%^&()+=/?:;,'\"<>[]{}|\\`";
+        assertEquals(URLEncoder.encode(value, StandardCharsets.US_ASCII),
+                VnPaySigner.appendUrlEncoded(new StringBuilder(), value).toString());
+        String vietnamese = "Thanh toán đơn hàng";
+        assertEquals(URLEncoder.encode(vietnamese, StandardCharsets.US_ASCII),
+                VnPaySigner.appendUrlEncoded(new StringBuilder(), vietnamese).toString());
+    }
+
+    // Cách ký cũ của VnPayService.createPaymentUrl, giữ nguyên để đối chiếu
+    private static String legacySecureHash(String key, Map<String, String> vnpParams) {
+        List<String> fieldNames = new ArrayList<>(vnpParams.keySet());
+        Collections.sort(fieldNames);
+        StringBuilder hashData = new StringBuilder();
+        Iterator<String> itr = fieldNames.iterator();
+        while (itr.hasNext()) {
+            String fieldName = itr.next();
+            String fieldValue = vnpParams.get(fieldName);
+            if ((fieldValue != null) && (fieldValue.length() > 0)) {
+                hashData.append(fieldName);
+                hashData.append('=');
+                hashData.append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII));
+                if (itr.hasNext()) {
+                    hashData.append('&');
+                }
+            }
+        }
+        try {
+            Mac hmac = Mac.getInstance("HmacSHA512");
+            hmac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+            byte[] hash = hmac.doFinal(hashData.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : hash) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}